@@ -0,0 +1,199 @@
+package net.canarymod.benchmark;
+
+import net.canarymod.Canary;
+import net.canarymod.api.entity.living.humanoid.Player;
+import net.canarymod.api.world.World;
+import net.canarymod.commandsys.CommandManager;
+import net.canarymod.commandsys.CommandOwner;
+import net.canarymod.help.HelpManager;
+import net.canarymod.hook.HookExecutor;
+import net.canarymod.permissionsystem.PermissionProvider;
+import net.canarymod.plugin.Plugin;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Stand-ins for the server side objects, so the benchmarks run without a server.
+ * Interfaces are stubbed with dynamic proxies that answer the few methods a benchmark needs
+ * and return default values for everything else.
+ */
+public final class BenchmarkStubs {
+
+    private BenchmarkStubs() {
+    }
+
+    /** Installs a {@link Canary} instance with hook, command and help managers */
+    public static synchronized void installCanary() {
+        if (Canary.instance() == null) {
+            Canary.setCanary(new BenchmarkCanary());
+        }
+    }
+
+    /**
+     * Creates a {@link World} stub
+     *
+     * @param name
+     *         the world name
+     *
+     * @return the stub
+     */
+    public static World world(final String name) {
+        return stub(World.class, new Answer() {
+            @Override
+            public Object answer(String method, Object[] args) {
+                if (method.equals("getName") || method.equals("getFqName")) {
+                    return name;
+                }
+                return NO_ANSWER;
+            }
+        });
+    }
+
+    /**
+     * Creates a {@link Player} stub whose permission checks go to the given provider
+     *
+     * @param name
+     *         the player name
+     * @param permissions
+     *         the {@link PermissionProvider} answering hasPermission
+     *
+     * @return the stub
+     */
+    public static Player player(final String name, final PermissionProvider permissions) {
+        final World world = world("default_NORMAL");
+        return stub(Player.class, new Answer() {
+            @Override
+            public Object answer(String method, Object[] args) {
+                if (method.equals("getName") || method.equals("getDisplayName")) {
+                    return name;
+                }
+                if (method.equals("hasPermission") || method.equals("safeHasPermission")) {
+                    return permissions.queryPermission((String) args[0]);
+                }
+                if (method.equals("getWorld")) {
+                    return world;
+                }
+                return NO_ANSWER;
+            }
+        });
+    }
+
+    /**
+     * Creates an annotation instance with the given values, anything else uses the declared defaults
+     *
+     * @param type
+     *         the annotation type
+     * @param values
+     *         member name to value
+     *
+     * @return the annotation
+     */
+    public static <T extends Annotation> T annotation(final Class<T> type, final Map<String, Object> values) {
+        return stub(type, new Answer() {
+            @Override
+            public Object answer(String method, Object[] args) {
+                if (values.containsKey(method)) {
+                    return values.get(method);
+                }
+                if (method.equals("annotationType")) {
+                    return type;
+                }
+                return NO_ANSWER;
+            }
+        });
+    }
+
+    private static final Object NO_ANSWER = new Object();
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    private static <T> T stub(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[]{ type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                Object result = answer.answer(method.getName(), args);
+                if (result != NO_ANSWER) {
+                    return result;
+                }
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (method.getName().equals("toString")) {
+                    return type.getSimpleName() + "Stub";
+                }
+                if (method.getDefaultValue() != null) {
+                    return method.getDefaultValue();
+                }
+                return defaultValue(method.getReturnType());
+            }
+        }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0F;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /** Plugin without a jar, only usable where the name is not needed */
+    public static class BenchmarkPlugin extends Plugin {
+
+        @Override
+        public boolean enable() {
+            return true;
+        }
+
+        @Override
+        public void disable() {
+        }
+    }
+
+    /** Owner for benchmark commands */
+    public static class BenchmarkOwner implements CommandOwner {
+
+        @Override
+        public String getName() {
+            return "Benchmark";
+        }
+    }
+
+    private static class BenchmarkCanary extends Canary {
+
+        BenchmarkCanary() {
+            hookExecutor = new HookExecutor();
+            helpManager = new HelpManager();
+            commandManager = new CommandManager();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.canarymod.benchmark;
+
+import net.canarymod.api.world.blocks.BlockType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BlockType#fromIdAndData(int, int)} for a common, a late registered and a data variant lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockTypeBenchmark {
+    public int stone = 1;
+    public int wool = 35;
+    public int woolData = 14;
+    public int unknownData = 15;
+
+    @Benchmark
+    public BlockType stone() {
+        return BlockType.fromIdAndData(stone, 0);
+    }
+
+    @Benchmark
+    public BlockType woolVariant() {
+        return BlockType.fromIdAndData(wool, woolData);
+    }
+
+    @Benchmark
+    public BlockType fallbackToId() {
+        return BlockType.fromIdAndData(stone, unknownData);
+    }
+}
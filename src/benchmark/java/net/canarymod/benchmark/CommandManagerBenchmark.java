@@ -0,0 +1,90 @@
+package net.canarymod.benchmark;
+
+import net.canarymod.Canary;
+import net.canarymod.api.entity.living.humanoid.Player;
+import net.canarymod.chat.MessageReceiver;
+import net.canarymod.commandsys.CanaryCommand;
+import net.canarymod.commandsys.Command;
+import net.canarymod.commandsys.CommandDependencyException;
+import net.canarymod.commandsys.CommandManager;
+import net.canarymod.commandsys.CommandOwner;
+import net.canarymod.permissionsystem.MultiworldPermissionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandManager#parseCommand(MessageReceiver, String, String[])} down a chain of sub commands.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandManagerBenchmark {
+
+    @Param({ "0", "2", "8" })
+    public int depth;
+
+    private CommandManager manager;
+    private Player caller;
+    private String[] args;
+    int executed;
+
+    @Setup
+    public void setup() throws CommandDependencyException {
+        BenchmarkStubs.installCanary();
+        manager = Canary.commands();
+        CommandOwner owner = new BenchmarkStubs.BenchmarkOwner();
+        MultiworldPermissionProvider permissions = new MultiworldPermissionProvider(null, true, "benchmark");
+        permissions.addPermission("canary.benchmark", true, 0);
+        caller = BenchmarkStubs.player("Benchmark", permissions);
+
+        String parent = "";
+        String name = "bench" + depth;
+        args = new String[depth + 2];
+        args[0] = name;
+        for (int i = 0; i <= depth; i++) {
+            manager.registerCommand(command(name, parent, owner), owner, true);
+            parent = parent.isEmpty() ? name : parent + "." + name;
+            name = "sub" + (i + 1);
+            if (i < depth) {
+                args[i + 1] = name;
+            }
+        }
+        args[depth + 1] = "argument";
+    }
+
+    private CanaryCommand command(String alias, String parent, CommandOwner owner) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("aliases", new String[]{ alias });
+        values.put("permissions", new String[]{ "canary.benchmark" });
+        values.put("description", alias);
+        values.put("toolTip", "/" + alias);
+        values.put("parent", parent);
+        return new CanaryCommand(BenchmarkStubs.annotation(Command.class, values), owner, null) {
+            @Override
+            protected void execute(MessageReceiver caller, String[] parameters) {
+                executed += parameters.length;
+            }
+        };
+    }
+
+    @Benchmark
+    public boolean parseCommand() {
+        return manager.parseCommand(caller, args[0], args);
+    }
+}
@@ -0,0 +1,72 @@
+package net.canarymod.benchmark;
+
+import net.canarymod.hook.CancelableHook;
+import net.canarymod.hook.Dispatcher;
+import net.canarymod.hook.DispatcherFactory;
+import net.canarymod.hook.HookHandler;
+import net.canarymod.plugin.PluginListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the reflective dispatcher versus the generated one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HookDispatchBenchmark {
+    private BenchmarkListener listener;
+    private BenchmarkHook hook;
+    private Dispatcher reflective;
+    private Dispatcher generated;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        listener = new BenchmarkListener();
+        hook = new BenchmarkHook();
+        Method method = BenchmarkListener.class.getMethod("onHook", BenchmarkHook.class);
+        reflective = DispatcherFactory.createReflectiveDispatcher(method);
+        generated = DispatcherFactory.createGeneratedDispatcher(BenchmarkListener.class, method, BenchmarkHook.class);
+        if (generated == null) {
+            throw new IllegalStateException("Dispatcher generation failed");
+        }
+    }
+
+    @Benchmark
+    public int reflective() {
+        reflective.execute(listener, hook);
+        return hook.counter;
+    }
+
+    @Benchmark
+    public int generated() {
+        generated.execute(listener, hook);
+        return hook.counter;
+    }
+
+    public static class BenchmarkHook extends CancelableHook {
+        int counter;
+    }
+
+    public static class BenchmarkListener implements PluginListener {
+
+        @HookHandler
+        public void onHook(BenchmarkHook hook) {
+            hook.counter++;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.canarymod.benchmark;
+
+import net.canarymod.hook.CancelableHook;
+import net.canarymod.hook.Dispatcher;
+import net.canarymod.hook.DispatcherFactory;
+import net.canarymod.hook.HookExecutor;
+import net.canarymod.hook.HookHandler;
+import net.canarymod.plugin.Plugin;
+import net.canarymod.plugin.PluginListener;
+import net.canarymod.plugin.Priority;
+import net.canarymod.plugin.RegisteredPluginListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HookExecutor#callHook(net.canarymod.hook.Hook)} with a growing number of listeners,
+ * and {@link RegisteredPluginListener#execute(net.canarymod.hook.Hook)} on canceled hooks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HookExecutorBenchmark {
+
+    @Param({ "0", "1", "10", "100" })
+    public int listeners;
+
+    private HookExecutor executor;
+    private RegisteredPluginListener registered;
+    private BenchmarkHook canceled;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        executor = new HookExecutor();
+        Plugin plugin = new BenchmarkStubs.BenchmarkPlugin();
+        for (int i = 0; i < listeners; i++) {
+            executor.registerListener(new BenchmarkListener(), plugin);
+        }
+        BenchmarkListener listener = new BenchmarkListener();
+        Dispatcher dispatcher = DispatcherFactory.createDispatcher(BenchmarkListener.class, BenchmarkListener.class.getMethod("onHook", BenchmarkHook.class), BenchmarkHook.class);
+        registered = new RegisteredPluginListener(listener, plugin, dispatcher, Priority.NORMAL);
+        canceled = new BenchmarkHook();
+        canceled.setCanceled();
+    }
+
+    @Benchmark
+    public BenchmarkHook callHook() {
+        BenchmarkHook hook = new BenchmarkHook();
+        executor.callHook(hook);
+        return hook;
+    }
+
+    @Benchmark
+    public boolean hasListeners() {
+        return executor.hasListeners(BenchmarkHook.class);
+    }
+
+    @Benchmark
+    public int executeCanceled() {
+        registered.execute(canceled);
+        return canceled.counter;
+    }
+
+    public static class BenchmarkHook extends CancelableHook {
+        int counter;
+    }
+
+    public static class BenchmarkListener implements PluginListener {
+
+        @HookHandler
+        public void onHook(BenchmarkHook hook) {
+            hook.counter++;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package net.canarymod.benchmark;
+
+import net.canarymod.permissionsystem.MultiworldPermissionProvider;
+import net.canarymod.user.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MultiworldPermissionProvider#queryPermission(String)} for granted, denied (wildcard) and unknown nodes,
+ * with and without the provider's result cache, and {@link Group#hasPermission(String)} through a chain of parent groups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PermissionBenchmark {
+    private MultiworldPermissionProvider provider;
+    private Group group;
+
+    @Setup
+    public void setup() {
+        provider = new MultiworldPermissionProvider(null, false, "benchmark");
+        int id = 0;
+        for (String node : new String[]{ "canary.command.player.compass", "canary.command.player.spawn", "canary.command.player.home",
+                "canary.command.super.*", "canary.world.build", "canary.world.canEnter", "plugin.a.b.c.d", "plugin.other.*" }) {
+            provider.addPermission(node, true, id++);
+        }
+        provider.addPermission("canary.command.super.stop", false, id);
+
+        // visitors <- players <- mods <- admins, checked from admins
+        Group parent = null;
+        for (String name : new String[]{ "visitors", "players", "mods", "admins" }) {
+            Group g = new Group();
+            g.setName(name);
+            MultiworldPermissionProvider groupProvider = new MultiworldPermissionProvider(null, false, name);
+            for (int i = 0; i < 20; i++) {
+                groupProvider.addPermission("plugin" + i + "." + name + ".use", true, id++);
+            }
+            g.setPermissionProvider(groupProvider);
+            g.setParent(parent);
+            parent = g;
+        }
+        parent.getParent().getParent().getParent().getPermissionProvider().addPermission("canary.world.build", true, id);
+        group = parent;
+    }
+
+    @Benchmark
+    public boolean hitCached() {
+        return provider.queryPermission("canary.command.player.home");
+    }
+
+    @Benchmark
+    public boolean hitUncached() {
+        provider.flushCache();
+        return provider.queryPermission("canary.command.player.home");
+    }
+
+    @Benchmark
+    public boolean wildcardUncached() {
+        provider.flushCache();
+        return provider.queryPermission("canary.command.super.kick");
+    }
+
+    @Benchmark
+    public boolean groupChain() {
+        return group.hasPermission("canary.world.build");
+    }
+
+    @Benchmark
+    public boolean missUncached() {
+        provider.flushCache();
+        return provider.queryPermission("someplugin.feature.use");
+    }
+}
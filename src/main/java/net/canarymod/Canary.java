@@ -254,6 +254,7 @@ public abstract class Canary implements TaskOwner {
     /** Enables all plugins */
     public static void enablePlugins() {
         if (!pluginsUp && instance.server != null) {
+            hooks().getTimings().setSampleRate(Configuration.getServerConfig().getHookTimingsSampleRate());
             log.info("Enabling Plugins...");
             loader().enableAllPlugins();
             pluginsUp = true;
@@ -334,6 +335,7 @@ public abstract class Canary implements TaskOwner {
 
         // Reload configurations
         Configuration.reload();
+        instance.hookExecutor.getTimings().setSampleRate(Configuration.getServerConfig().getHookTimingsSampleRate());
 
         // Reload all subsystems with a cache
         instance.banManager.reload();
@@ -1,11 +1,17 @@
 package net.canarymod;
 
+import net.canarymod.database.DataAccess;
+
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.jar.JarFile;
 
+import static net.canarymod.Canary.log;
+
 /**
  * Canary Class Loader
  * <p/>
@@ -15,6 +21,7 @@ import java.util.jar.JarFile;
  */
 public final class CanaryClassLoader extends URLClassLoader {
     private final static CanaryClassWatcher ccw = new CanaryClassWatcher();
+    private final CanaryClassLoader[] dependencies;
 
     /**
      * Constructs a new CanaryClassLoader
@@ -25,7 +32,24 @@ public final class CanaryClassLoader extends URLClassLoader {
      *         the {@link ClassLoader} parent
      */
     public CanaryClassLoader(URL url, ClassLoader loader) {
+        this(url, loader, new CanaryClassLoader[0]);
+    }
+
+    /**
+     * Constructs a new CanaryClassLoader that resolves classes it does not contain itself
+     * from the given loaders before looking at the other plugin loaders
+     *
+     * @param url
+     *         the {@link URL} to the jar file to be opened in this loader
+     * @param loader
+     *         the {@link ClassLoader} parent
+     * @param dependencies
+     *         the loaders of the plugins this plugin depends on
+     */
+    public CanaryClassLoader(URL url, ClassLoader loader, CanaryClassLoader... dependencies) {
         super(new URL[]{ url }, loader);
+        this.dependencies = dependencies;
+        ccw.addLoader(this, url);
     }
 
     /** {@inheritDoc} */
@@ -43,10 +67,15 @@ public final class CanaryClassLoader extends URLClassLoader {
             toRet = null; // And fail ignored
         }
         if (toRet != null) {
-            ccw.addClass(this, toRet); //
             return toRet;
         }
         else {
+            for (CanaryClassLoader dependency : dependencies) {
+                toRet = dependency.findLocalClass(name);
+                if (toRet != null) {
+                    return toRet;
+                }
+            }
             toRet = ccw.findLoadedClass(name);
             if (toRet != null) {
                 return toRet;
@@ -58,8 +87,34 @@ public final class CanaryClassLoader extends URLClassLoader {
         throw rethrow;
     }
 
+    /**
+     * Finds a class in this loader's own jar only
+     *
+     * @param name
+     *         the name of the class
+     *
+     * @return the {@link Class}; {@code null} if not in this jar
+     */
+    synchronized Class<?> findLocalClass(String name) {
+        Class<?> cls = findLoadedClass(name);
+        if (cls != null) {
+            return cls;
+        }
+        try {
+            return super.findClass(name);
+        }
+        catch (ClassNotFoundException cnfex) {
+            return null;
+        }
+        catch (LinkageError lerr) {
+            return null;
+        }
+    }
+
     /** Closes the loader and jar file */
     public synchronized final void close() {
+        ccw.removeLoader(this); // Remove the classes from the jar first, so other plugins stop resolving them here
+        DataAccess.unloadClasses(this);
         if (System.getProperty("java.version").startsWith("1.6")) { // Java 6 doesn't have the URLClassLoader.close() method
             try { // Insert Reflection Magic
                 Class<?> clazz = URLClassLoader.class;
@@ -86,15 +141,13 @@ public final class CanaryClassLoader extends URLClassLoader {
                 // probably not a SUN/Oracle VM
             }
         }
-        else { // If running on Java 7 or above, call URLClassLoader.close(). Since we should be compiling with Java 6, lower versions shouldn't be a worry
+        else { // Java 7 and above have URLClassLoader.close(). The call is only resolved when it is first run, so Java 6 never gets here
             try {
-                // We have to invoke the method since we compile with Java 6 (or should be)
-                URLClassLoader.class.getDeclaredMethod("close").invoke(this);
+                super.close();
             }
-            catch (Exception ex) {
-                // Probably IOException, ignore it.
+            catch (IOException ex) {
+                log.warn("Failed to close the class loader of " + Arrays.toString(getURLs()), ex);
             }
         }
-        ccw.removeLoader(this); // And finally remove url and classes from the jar
     }
 }
@@ -1,19 +1,33 @@
 package net.canarymod;
 
-import com.google.common.collect.ArrayListMultimap;
 import net.canarymod.plugin.Plugin;
 
+import java.io.File;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
 /**
  * Canary Class Watcher
  * <p/>
  * Designed to allow plugins to share classes between each other.<br>
+ * Every {@link CanaryClassLoader}'s jar is indexed when the loader is created, so a class from another
+ * {@link Plugin} is looked up in the loader that owns it directly instead of asking every loader.<br>
  * NOTE: If a class isn't loaded, this will load the class from the first ClassLoader that has the class.<br>
  * It could be an incorrect class or improperly initialized. Plugin devs should program with this in mind.
  *
  * @author Jason (darkdiplomat)
  */
 final class CanaryClassWatcher {
-    private final ArrayListMultimap<CanaryClassLoader, Class<?>> loadedClasses = ArrayListMultimap.create();
+    private final ConcurrentHashMap<String, CanaryClassLoader> owners = new ConcurrentHashMap<String, CanaryClassLoader>(); // Class name to loader
+    private final ConcurrentHashMap<CanaryClassLoader, Set<String>> indexed = new ConcurrentHashMap<CanaryClassLoader, Set<String>>();
+    private final CopyOnWriteArrayList<CanaryClassLoader> unindexed = new CopyOnWriteArrayList<CanaryClassLoader>(); // Loaders we could not read the jar of
 
     /**
      * Finds a loaded {@link Class} from any of the {@link Plugin}'s {@link CanaryClassLoader}
@@ -23,51 +37,72 @@ final class CanaryClassWatcher {
      *
      * @return the {@link Class} if found; {@code null} otherwise
      */
-    synchronized final Class<?> findLoadedClass(String name) {
-        for (Class<?> cls : loadedClasses.values()) {
-            if (cls.getName().equals(name)) {
-                return cls;
-            }
+    final Class<?> findLoadedClass(String name) {
+        CanaryClassLoader owner = owners.get(name);
+        if (owner != null) {
+            return owner.findLocalClass(name); // Loads the class if it isn't loaded yet
         }
-        return loadClass(name); // ClassNotFound, attempt to load it
+        return loadClass(name);
     }
 
     /**
-     * Loads a {@link Class} from the first loader that contains the class
+     * Loads a {@link Class} from the first not indexed loader that contains the class
      *
      * @param name
      *         the name of the {@link Class} to be loaded
      *
      * @return the {@link Class} if found; {@code null} otherwise
      */
-    private synchronized final Class<?> loadClass(String name) {
+    private Class<?> loadClass(String name) {
+        if (unindexed.isEmpty()) {
+            return null;
+        }
         String nameTemp = name.replace('.', '/').concat(".class");
-        for (CanaryClassLoader loader : loadedClasses.keySet()) {
+        for (CanaryClassLoader loader : unindexed) {
             if (loader.getResource(nameTemp) != null) {
-                try {
-                    Class<?> cls = loader.loadClass(name);
-                    addClass(loader, cls);
+                Class<?> cls = loader.findLocalClass(name);
+                if (cls != null) {
                     return cls;
                 }
-                catch (ClassNotFoundException e) {
-                    // Realistically this shouldn't happen here since we pre-checked if the jar has the resource
-                    // But then again it is Java
-                }
             }
         }
         return null;
     }
 
     /**
-     * Adds a {@link Class} to the list of loaded classes
+     * Indexes the classes in the jar of a new {@link CanaryClassLoader}
      *
      * @param loader
-     *         the {@link CanaryClassLoader} the {@link Class} is from
-     * @param cls
-     *         the {@link Class} to be added
+     *         the new {@link CanaryClassLoader}
+     * @param url
+     *         the {@link URL} to its jar file
      */
-    synchronized final void addClass(CanaryClassLoader loader, Class<?> cls) {
-        loadedClasses.put(loader, cls);
+    synchronized final void addLoader(CanaryClassLoader loader, URL url) {
+        HashSet<String> classes = new HashSet<String>();
+        try {
+            JarFile jar = new JarFile(new File(url.toURI()));
+            try {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.endsWith(".class")) {
+                        classes.add(entry.substring(0, entry.length() - 6).replace('/', '.'));
+                    }
+                }
+            }
+            finally {
+                jar.close();
+            }
+        }
+        catch (Exception ex) {
+            // Not a local jar, fall back to asking the loader
+            unindexed.add(loader);
+            return;
+        }
+        indexed.put(loader, classes);
+        for (String cls : classes) {
+            owners.putIfAbsent(cls, loader);
+        }
     }
 
     /**
@@ -77,8 +112,21 @@ final class CanaryClassWatcher {
      *         the {@link CanaryClassLoader} to remove
      */
     synchronized final void removeLoader(CanaryClassLoader loader) {
-        if (loadedClasses.containsKey(loader)) {
-            loadedClasses.asMap().remove(loader);
+        unindexed.remove(loader);
+        Set<String> classes = indexed.remove(loader);
+        if (classes == null) {
+            return;
+        }
+        for (String cls : classes) {
+            if (owners.remove(cls, loader)) {
+                // Hand the class over to another loader that has it as well, if any
+                for (Map.Entry<CanaryClassLoader, Set<String>> other : indexed.entrySet()) {
+                    if (other.getValue().contains(cls)) {
+                        owners.put(cls, other.getKey());
+                        break;
+                    }
+                }
+            }
         }
     }
 }
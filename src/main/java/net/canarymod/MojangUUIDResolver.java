@@ -0,0 +1,89 @@
+package net.canarymod;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Resolves player names with Mojang's profile service, which takes a batch of names per request
+ */
+public class MojangUUIDResolver implements UUIDResolver {
+    private static final String PROFILES_URL = "https://api.mojang.com/profiles/page/1";
+    private static final int BATCH_SIZE = 100;
+
+    @Override
+    public int getBatchSize() {
+        return BATCH_SIZE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, String> resolve(List<String> names) throws IOException {
+        HashMap<String, String> uuids = new HashMap<String, String>();
+        if (names.isEmpty()) {
+            return uuids;
+        }
+        JSONArray request = new JSONArray();
+        for (String name : names) {
+            JSONObject profile = new JSONObject();
+            profile.put("name", name);
+            profile.put("agent", "Minecraft");
+            request.add(profile);
+        }
+
+        HttpURLConnection uc = (HttpURLConnection) new URL(PROFILES_URL).openConnection();
+        uc.setRequestMethod("POST");
+        uc.setUseCaches(false);
+        uc.setDefaultUseCaches(false);
+        uc.addRequestProperty("User-Agent", "Minecraft");
+        uc.addRequestProperty("Cache-Control", "no-cache, no-store, must-revalidate");
+        uc.addRequestProperty("Pragma", "no-cache");
+        uc.setRequestProperty("Content-Type", "application/json");
+        uc.setDoOutput(true);
+        OutputStream out = uc.getOutputStream();
+        try {
+            out.write(request.toJSONString().getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        Scanner scanner = new Scanner(uc.getInputStream(), "UTF-8");
+        try {
+            Object response = new JSONParser().parse(scanner.useDelimiter("\\A").next());
+            for (Object entry : (JSONArray) ((JSONObject) response).get("profiles")) {
+                JSONObject profile = (JSONObject) entry;
+                String id = (String) profile.get("id");
+                String name = (String) profile.get("name");
+                if (id != null && name != null && id.length() == 32) {
+                    // Add the hyphens back in
+                    uuids.put(name.toLowerCase(), id.substring(0, 8) + "-" + id.substring(8, 12) + "-" + id.substring(12, 16) + "-" + id.substring(16, 20) + "-" + id.substring(20, 32));
+                }
+            }
+        }
+        catch (ParseException e) {
+            throw new IOException("Invalid profile service response: " + e.getMessage());
+        }
+        catch (ClassCastException e) {
+            throw new IOException("Unexpected profile service response");
+        }
+        catch (NoSuchElementException e) {
+            throw new IOException("Empty profile service response");
+        }
+        finally {
+            scanner.close();
+        }
+        return uuids;
+    }
+}
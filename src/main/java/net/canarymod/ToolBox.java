@@ -4,13 +4,7 @@ import net.canarymod.api.world.DimensionType;
 import net.canarymod.api.world.UnknownWorldException;
 import net.canarymod.api.world.World;
 import net.canarymod.config.Configuration;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
-import java.io.DataOutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -26,6 +20,7 @@ public class ToolBox {
 
     private static TimeZone tz_GMT = TimeZone.getTimeZone("GMT");
     private static Pattern uuid = Pattern.compile("[0-9a-f]{8}\\-([0-9a-f]{4}\\-){3}[0-9a-f]{12}");
+    private static volatile UUIDResolver uuidResolver = new MojangUUIDResolver();
 
     /**
      * Merge 2 arrays. This will just merge two arrays.
@@ -423,36 +418,31 @@ public class ToolBox {
      * @return user's uuid or null if not found/on error
      */
     public static String usernameToUUID(String username) {
-        String uuid = null;
         try {
-            URL url = new URL("https://api.mojang.com/profiles/page/1");
-            HttpURLConnection uc = (HttpURLConnection) url.openConnection();
-            uc.setRequestMethod("POST");
-            uc.setUseCaches(false);
-            uc.setDefaultUseCaches(false);
-            uc.addRequestProperty("User-Agent", "Minecraft");
-            uc.addRequestProperty("Cache-Control", "no-cache, no-store, must-revalidate");
-            uc.addRequestProperty("Pragma", "no-cache");
-            uc.setRequestProperty("Content-Type", "application/json");
-            uc.setDoOutput(true);
-            DataOutputStream wr = new DataOutputStream(uc.getOutputStream());
-            wr.writeBytes("[{\"name\":\"" + username + "\", \"agent\":\"Minecraft\"}]");
-            wr.flush();
-            wr.close();
-
-            // Parse it
-            String json = new Scanner(uc.getInputStream(), "UTF-8").useDelimiter("\\A").next();
-            JSONParser parser = new JSONParser();
-            Object obj = parser.parse(json);
-            uuid = (String) ((JSONObject) ((JSONArray) ((JSONObject) obj).get("profiles")).get(0)).get("id");
+            return uuidResolver.resolve(Collections.singletonList(username)).get(username.toLowerCase());
         }
         catch (Exception ex) {
             Canary.log.warn("Failed to translate Username into a UUID");
         }
-        if (uuid != null) {
-            // Add the hyphens back in
-            uuid = uuid.substring(0, 8) + "-" + uuid.substring(8, 12) + "-" + uuid.substring(12, 16) + "-" + uuid.substring(16, 20) + "-" + uuid.substring(20, 32);
-        }
-        return uuid;
+        return null;
+    }
+
+    /**
+     * Gets the {@link UUIDResolver} used to translate user names into UUIDs
+     *
+     * @return the resolver
+     */
+    public static UUIDResolver getUUIDResolver() {
+        return uuidResolver;
+    }
+
+    /**
+     * Sets the {@link UUIDResolver} used to translate user names into UUIDs
+     *
+     * @param resolver
+     *         the resolver, {@code null} to ask Mojang's API again
+     */
+    public static void setUUIDResolver(UUIDResolver resolver) {
+        uuidResolver = resolver == null ? new MojangUUIDResolver() : resolver;
     }
 }
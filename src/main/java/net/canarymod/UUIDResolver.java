@@ -0,0 +1,33 @@
+package net.canarymod;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves player names to UUIDs, see {@link ToolBox#setUUIDResolver(UUIDResolver)}.
+ * The default asks Mojang's profile service, a local implementation may replace it,
+ * for example for offline servers or tests.
+ */
+public interface UUIDResolver {
+
+    /**
+     * Gets the maximum number of names that may be passed to {@link #resolve(List)} at once
+     *
+     * @return the batch size
+     */
+    public int getBatchSize();
+
+    /**
+     * Resolves a batch of player names
+     *
+     * @param names
+     *         the names, at most {@link #getBatchSize()}
+     *
+     * @return lower case name to UUID (with hyphens); names without a profile are missing
+     *
+     * @throws IOException
+     *         when the names could not be resolved at all, e.g. because the service is not reachable
+     */
+    public Map<String, String> resolve(List<String> names) throws IOException;
+}
@@ -89,6 +89,7 @@ public interface PlayerReference {
      * @param group   the {@link Group} to check
      * @param parents {@code true} if you want to take parent groups into account; {@code false} otherwise
      * @return {@code true} if the player is in the group, {@code false} otherwise
+     * @see Group#inheritsFrom(Group)
      */
     public boolean isInGroup(Group group, boolean parents);
 
@@ -98,6 +99,7 @@ public interface PlayerReference {
      * @param group   the name of the group to check
      * @param parents {@code true} if you want to take parent groups into account; {@code false} otherwise
      * @return {@code true} if the player is in the group; {@code false} otherwise
+     * @see Group#inheritsFrom(String)
      */
     public boolean isInGroup(String group, boolean parents);
 
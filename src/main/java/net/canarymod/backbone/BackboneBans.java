@@ -2,6 +2,7 @@ package net.canarymod.backbone;
 
 import net.canarymod.bansystem.Ban;
 import net.canarymod.database.DataAccess;
+import net.canarymod.database.DataAccessCallback;
 import net.canarymod.database.Database;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseWriteException;
@@ -180,24 +181,26 @@ public class BackboneBans extends Backbone {
      * @return An array list of all recorded ban instances.
      */
     public List<Ban> loadBans() {
-        List<Ban> banList = new ArrayList<Ban>();
-        List<DataAccess> dataList = new ArrayList<DataAccess>();
+        final List<Ban> banList = new ArrayList<Ban>();
 
         try {
-            Database.get().loadAll(schema, dataList, new HashMap<String, Object>());
-            for (DataAccess da : dataList) {
-                BanDataAccess data = (BanDataAccess) da;
-                Ban ban = new Ban();
-                
-                ban.setUUID(data.uuid);
-                ban.setBanningPlayer(data.banningPlayer);
-                ban.setIp(data.ip);
-                ban.setIsIpBan(!data.ip.contains("xxx"));
-                ban.setReason(data.reason);
-                ban.setSubject(data.player);
-                ban.setTimestamp(data.unbanDate);
-                banList.add(ban);
-            }
+            Database.get().loadEach(schema, new HashMap<String, Object>(), new DataAccessCallback() {
+                @Override
+                public boolean onLoad(DataAccess da) {
+                    BanDataAccess data = (BanDataAccess) da;
+                    Ban ban = new Ban();
+
+                    ban.setUUID(data.uuid);
+                    ban.setBanningPlayer(data.banningPlayer);
+                    ban.setIp(data.ip);
+                    ban.setIsIpBan(!data.ip.contains("xxx"));
+                    ban.setReason(data.reason);
+                    ban.setSubject(data.player);
+                    ban.setTimestamp(data.unbanDate);
+                    banList.add(ban);
+                    return true;
+                }
+            });
         }
         catch (DatabaseReadException e) {
             log.error(e.getMessage(), e);
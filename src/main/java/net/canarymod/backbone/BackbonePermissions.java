@@ -7,11 +7,11 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.canarymod.Canary;
 import static net.canarymod.Canary.log;
-import net.canarymod.ToolBox;
 import net.canarymod.api.entity.living.humanoid.Player;
 import net.canarymod.api.world.World;
 import net.canarymod.database.DataAccess;
 import net.canarymod.database.Database;
+import net.canarymod.database.Transaction;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseWriteException;
 import net.canarymod.permissionsystem.MultiworldPermissionProvider;
@@ -31,8 +31,9 @@ public class BackbonePermissions extends Backbone {
 
     public BackbonePermissions() {
         super(Backbone.System.PERMISSIONS);
+        ArrayList<String> worlds = new ArrayList<String>(Canary.getServer().getWorldManager().getExistingWorlds());
         try {
-            for (String fqname : Canary.getServer().getWorldManager().getExistingWorlds()) {
+            for (String fqname : worlds) {
                 Database.get().updateSchema(new PermissionDataAccess(fqname));
             }
             Database.get().updateSchema(schema);
@@ -40,6 +41,11 @@ public class BackbonePermissions extends Backbone {
         catch (DatabaseWriteException e) {
             log.error("Failed to update database schema", e);
         }
+        // Player permissions used to be stored by name, migrate them once in the background
+        worlds.add(null);
+        Thread migration = new Thread(new PlayerPermissionMigration(worlds), "Canary Permission Migration");
+        migration.setDaemon(true);
+        migration.start();
     }
 
     /**
@@ -91,8 +97,6 @@ public class BackbonePermissions extends Backbone {
         if (world != null && world.isEmpty()) {
             world = null;
         }
-        // Validate player permissions
-        this.validatePlayerPermissions(world);
         // Database.get().remove("permission", new String[] {"owner", "type"}, new Object[] {group.getName(), "group"});
         PermissionProvider provider = new MultiworldPermissionProvider(world, true, uuid);
         ArrayList<DataAccess> dataList = new ArrayList<DataAccess>();
@@ -122,41 +126,44 @@ public class BackbonePermissions extends Backbone {
      * @param g
      *         Group to save permission from to the database.
      */
-    public void saveGroupPermissions(Group g) {
-        PermissionProvider permissions = g.getPermissionProvider();
-        List<PermissionNode> permissionList = permissions.getPermissionMap();
-        HashMap<String, Object> filter = new HashMap<String, Object>();
+    public void saveGroupPermissions(final Group g) {
+        final PermissionProvider permissions = g.getPermissionProvider();
+        final List<PermissionNode> permissionList = permissions.getPermissionMap();
 
         try {
-            for (PermissionNode node : permissionList) {
-                ArrayList<PermissionNode> childs = new ArrayList<PermissionNode>();
-
-                for (PermissionNode child : permissions.getChildNodes(node, childs)) {
-                    PermissionDataAccess data = new PermissionDataAccess(g.getWorldName());
-                    filter.clear();
-                    filter.put("id", child.getId());
-                    Database.get().load(data, filter);
-                    if (data.hasData()) {
-                        data.path = child.getFullPath();
-                        data.value = child.getValue();
-                        Database.get().update(data, filter);
-                    }
-                    else {
-                        data.owner = g.getName();
-                        data.path = child.getFullPath();
-                        data.type = "group";
-                        data.value = child.getValue();
-                        Database.get().insert(data);
+            Database.get().transaction(new Transaction() {
+                @Override
+                public void execute() throws DatabaseReadException, DatabaseWriteException {
+                    HashMap<String, Object> filter = new HashMap<String, Object>();
+
+                    for (PermissionNode node : permissionList) {
+                        ArrayList<PermissionNode> childs = new ArrayList<PermissionNode>();
+
+                        for (PermissionNode child : permissions.getChildNodes(node, childs)) {
+                            PermissionDataAccess data = new PermissionDataAccess(g.getWorldName());
+                            filter.clear();
+                            filter.put("id", child.getId());
+                            Database.get().load(data, filter);
+                            if (data.hasData()) {
+                                data.path = child.getFullPath();
+                                data.value = child.getValue();
+                                Database.get().update(data, filter);
+                            }
+                            else {
+                                data.owner = g.getName();
+                                data.path = child.getFullPath();
+                                data.type = "group";
+                                data.value = child.getValue();
+                                Database.get().insert(data);
+                            }
+                        }
                     }
                 }
-            }
+            });
         }
         catch (DatabaseWriteException e) {
             log.error(e.getMessage(), e);
         }
-        catch (DatabaseReadException e) {
-            log.error(e.getMessage(), e);
-        }
 
     }
 
@@ -166,41 +173,44 @@ public class BackbonePermissions extends Backbone {
      * @param p
      *         Player to save permissions for to the database.
      */
-    public void saveUserPermissions(Player p) {
-        PermissionProvider permissions = p.getPermissionProvider();
-        List<PermissionNode> permissionList = permissions.getPermissionMap();
-        HashMap<String, Object> filter = new HashMap<String, Object>();
+    public void saveUserPermissions(final Player p) {
+        final PermissionProvider permissions = p.getPermissionProvider();
+        final List<PermissionNode> permissionList = permissions.getPermissionMap();
 
         try {
-            for (PermissionNode node : permissionList) {
-                ArrayList<PermissionNode> childs = new ArrayList<PermissionNode>();
-
-                for (PermissionNode child : permissions.getChildNodes(node, childs)) {
-                    PermissionDataAccess data = new PermissionDataAccess(permissions.getWorld());
-                    filter.clear();
-                    filter.put("id", child.getId());
-                    Database.get().load(data, filter);
-                    if (data.hasData()) {
-                        data.path = child.getFullPath();
-                        data.value = child.getValue();
-                        Database.get().update(data, filter);
-                    }
-                    else {
-                        data.owner = p.getUUIDString();
-                        data.path = child.getFullPath();
-                        data.type = "player";
-                        data.value = child.getValue();
-                        Database.get().insert(data);
+            Database.get().transaction(new Transaction() {
+                @Override
+                public void execute() throws DatabaseReadException, DatabaseWriteException {
+                    HashMap<String, Object> filter = new HashMap<String, Object>();
+
+                    for (PermissionNode node : permissionList) {
+                        ArrayList<PermissionNode> childs = new ArrayList<PermissionNode>();
+
+                        for (PermissionNode child : permissions.getChildNodes(node, childs)) {
+                            PermissionDataAccess data = new PermissionDataAccess(permissions.getWorld());
+                            filter.clear();
+                            filter.put("id", child.getId());
+                            Database.get().load(data, filter);
+                            if (data.hasData()) {
+                                data.path = child.getFullPath();
+                                data.value = child.getValue();
+                                Database.get().update(data, filter);
+                            }
+                            else {
+                                data.owner = p.getUUIDString();
+                                data.path = child.getFullPath();
+                                data.type = "player";
+                                data.value = child.getValue();
+                                Database.get().insert(data);
+                            }
+                        }
                     }
                 }
-            }
+            });
         }
         catch (DatabaseWriteException e) {
             log.error(e.getMessage(), e);
         }
-        catch (DatabaseReadException e) {
-            log.error(e.getMessage(), e);
-        }
     }
 
     /**
@@ -427,35 +437,17 @@ public class BackbonePermissions extends Backbone {
     
     /**
      * Validate that player permissions have a UUID and not a playername.
+     * This is done once in the background when the permissions backbone is created.
+     *
+     * @deprecated player permissions are migrated to UUIDs automatically
      */
+    @Deprecated
     public void validatePlayerPermissions(String world) {
         if (world != null && world.isEmpty()) {
             world = null;
         }
-        // Database.get().remove("permission", new String[] {"owner", "type"}, new Object[] {group.getName(), "group"});
-        ArrayList<DataAccess> dataList = new ArrayList<DataAccess>();
-
         try {
-            HashMap<String, Object> filter = new HashMap<String, Object>();
-            filter.put("type", "player");
-            Database.get().loadAll(new PermissionDataAccess(world), dataList, filter);
-            for (DataAccess da : dataList) {
-                PermissionDataAccess data = (PermissionDataAccess) da;
-
-                if (!ToolBox.isUUID(data.owner)) {
-                    HashMap<String, Object> updateFilter = new HashMap<String, Object>();
-                    updateFilter.put("owner", data.owner);
-                    
-                    String uuid = ToolBox.usernameToUUID(data.owner);
-                    data.owner = uuid;
-                    try {
-                        Database.get().update(data, updateFilter);
-                    } catch (DatabaseWriteException ex) {
-                        Canary.log.error("Error Validating Player Permissions: ", ex);
-                    }
-                    
-                }
-            }
+            new PlayerPermissionMigration(null).migrate(world);
         }
         catch (DatabaseReadException e) {
             log.error(e.getMessage(), e);
@@ -4,6 +4,7 @@ import net.canarymod.Canary;
 import net.canarymod.api.OfflinePlayer;
 import net.canarymod.api.entity.living.humanoid.Player;
 import net.canarymod.database.DataAccess;
+import net.canarymod.database.DataAccessCallback;
 import net.canarymod.database.Database;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseWriteException;
@@ -11,7 +12,6 @@ import net.canarymod.user.Group;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -122,6 +122,7 @@ public class BackboneUsers extends Backbone {
         try {
             HashMap<String, Object> filter = new HashMap<String, Object>();
             filter.put("uuid", uuid);
+            Database.get().flushWrites(); // Queued player updates first
             Database.get().load(data, filter);
         }
         catch (DatabaseReadException e) {
@@ -141,6 +142,7 @@ public class BackboneUsers extends Backbone {
         try {
             HashMap<String, Object> filter = new HashMap<String, Object>();
             filter.put("uuid", uuid);
+            Database.get().flushWrites();
             Database.get().remove(schema, filter);
         }
         catch (DatabaseWriteException e) {
@@ -149,7 +151,7 @@ public class BackboneUsers extends Backbone {
     }
 
     /**
-     * Update a Player.
+     * Update a Player. The Player is added if it is not in the data source yet.
      *
      * @param player
      *         Player to update to the data source.
@@ -174,14 +176,9 @@ public class BackboneUsers extends Backbone {
             data.prefix = prefix;
         }
         data.isMuted = player.isMuted();
-        try {
-            HashMap<String, Object> filter = new HashMap<String, Object>();
-            filter.put("name", player.getName());
-            Database.get().update(data, filter);
-        }
-        catch (DatabaseWriteException e) {
-            log.error(e.getMessage(), e);
-        }
+        HashMap<String, Object> filter = new HashMap<String, Object>();
+        filter.put("uuid", data.uuid);
+        Database.get().upsertLater(data, filter); // Written in the background, players are saved from the main thread
     }
 
     /**
@@ -196,6 +193,7 @@ public class BackboneUsers extends Backbone {
         try {
             HashMap<String, Object> filter = new HashMap<String, Object>();
             filter.put("uuid", player.getUUID());
+            Database.get().flushWrites();
             Database.get().load(data, filter);
         }
         catch (DatabaseReadException e) {
@@ -221,14 +219,9 @@ public class BackboneUsers extends Backbone {
         else {
             data.prefix = prefix;
         }
-        try {
-            HashMap<String, Object> filter = new HashMap<String, Object>();
-            filter.put("uuid", player.getUUID());
-            Database.get().update(data, filter);
-        }
-        catch (DatabaseWriteException e) {
-            log.error(e.getCause().getMessage(), e);
-        }
+        HashMap<String, Object> filter = new HashMap<String, Object>();
+        filter.put("uuid", player.getUUID());
+        Database.get().updateLater(data, filter);
     }
 
     /**
@@ -239,20 +232,23 @@ public class BackboneUsers extends Backbone {
      * a prefix and group for a player, in that order.
      */
     public Map<String, String[]> loadUsers() {
-        Map<String, String[]> players = new HashMap<String, String[]>();
-        List<DataAccess> daos = new ArrayList<DataAccess>();
+        final Map<String, String[]> players = new HashMap<String, String[]>();
 
         try {
-            Database.get().loadAll(schema, daos, new HashMap<String, Object>());
-            for (DataAccess dao : daos) {
-                PlayerDataAccess data = (PlayerDataAccess) dao;
-                String[] row = new String[3];
-
-                row[0] = data.prefix;
-                row[1] = data.group;
-                row[2] = Boolean.toString(data.isMuted);
-                players.put(data.uuid == null ? "" : data.uuid, row);
-            }
+            Database.get().flushWrites();
+            Database.get().loadEach(schema, new HashMap<String, Object>(), new DataAccessCallback() {
+                @Override
+                public boolean onLoad(DataAccess dao) {
+                    PlayerDataAccess data = (PlayerDataAccess) dao;
+                    String[] row = new String[3];
+
+                    row[0] = data.prefix;
+                    row[1] = data.group;
+                    row[2] = Boolean.toString(data.isMuted);
+                    players.put(data.uuid == null ? "" : data.uuid, row);
+                    return true;
+                }
+            });
             return players;
         }
         catch (DatabaseReadException e) {
@@ -276,6 +272,7 @@ public class BackboneUsers extends Backbone {
         try {
             HashMap<String, Object> filter = new HashMap<String, Object>();
             filter.put("uuid", uuid);
+            Database.get().flushWrites();
             Database.get().load(data, filter);
         }
         catch (DatabaseReadException e) {
@@ -326,23 +323,28 @@ public class BackboneUsers extends Backbone {
      * entry does not, it attempts to retrieve it from Mojang's web service and
      */
     public void validateUsers() {
-        List<DataAccess> daos = new ArrayList<DataAccess>();
-
         try {
-            Database.get().loadAll(schema, daos, new HashMap<String, Object>());
-            for (DataAccess dao : daos) {
-                PlayerDataAccess data = (PlayerDataAccess) dao;
-                if (data.uuid != null && !data.uuid.trim().equals("")) continue;
+            Database.get().flushWrites();
+            Database.get().loadEach(schema, new HashMap<String, Object>(), new DataAccessCallback() {
+                @Override
+                public boolean onLoad(DataAccess dao) {
+                    PlayerDataAccess data = (PlayerDataAccess) dao;
+                    if (data.uuid != null && !data.uuid.trim().equals("")) {
+                        return true;
+                    }
                     String uuid = ToolBox.usernameToUUID(data.name);
                     data.uuid = uuid == null ? "" : uuid;
                     HashMap<String, Object> filter = new HashMap<String, Object>();
                     filter.put("name", data.name);
                     try {
                         Database.get().update(data, filter);
-                    } catch (DatabaseWriteException e) {
+                    }
+                    catch (DatabaseWriteException e) {
                         log.error(e.getMessage(), e);
                     }
-            }
+                    return true;
+                }
+            });
         }
         catch (DatabaseReadException e) {
             log.error(e.getMessage(), e);
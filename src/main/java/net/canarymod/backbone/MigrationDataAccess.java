@@ -0,0 +1,28 @@
+package net.canarymod.backbone;
+
+import net.canarymod.database.Column;
+import net.canarymod.database.Column.DataType;
+import net.canarymod.database.DataAccess;
+
+/**
+ * Migration Data Access, records the data migrations that have been completed
+ */
+public class MigrationDataAccess extends DataAccess {
+
+    public MigrationDataAccess() {
+        super("migrations");
+    }
+
+    /** Name of the migration */
+    @Column(columnName = "name", dataType = DataType.STRING, indexed = true)
+    public String name;
+
+    /** Completed version of the migration */
+    @Column(columnName = "version", dataType = DataType.INTEGER)
+    public int version;
+
+    @Override
+    public DataAccess getInstance() {
+        return new MigrationDataAccess();
+    }
+}
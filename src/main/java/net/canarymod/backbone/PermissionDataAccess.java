@@ -3,12 +3,14 @@ package net.canarymod.backbone;
 import net.canarymod.database.Column;
 import net.canarymod.database.Column.DataType;
 import net.canarymod.database.DataAccess;
+import net.canarymod.database.Index;
 
 /**
  * Permission Data Access
  *
  * @author Chris (damagefilter)
  */
+@Index(columns = { "owner", "type" })
 public class PermissionDataAccess extends DataAccess {
 
     private String suffix;
@@ -0,0 +1,193 @@
+package net.canarymod.backbone;
+
+import net.canarymod.ToolBox;
+import net.canarymod.UUIDResolver;
+import net.canarymod.database.DataAccess;
+import net.canarymod.database.DataAccessCallback;
+import net.canarymod.database.Database;
+import net.canarymod.database.Transaction;
+import net.canarymod.database.exceptions.DatabaseReadException;
+import net.canarymod.database.exceptions.DatabaseWriteException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static net.canarymod.Canary.log;
+
+/**
+ * Migrates the owners of player permissions from player names to UUIDs.
+ * <p/>
+ * The names are resolved in batches with the {@link UUIDResolver} of the {@link ToolBox}.
+ * The rows of each batch are read again and written with one {@link Database#updateBatch(List, List)}
+ * inside one {@link Database#transaction(Transaction)}, so permissions changed since the scan are kept.
+ * Once all permission tables are migrated, the version is recorded in the migrations table and
+ * the tables are not scanned again. If the resolver fails, the migration is retried on the next start.
+ */
+final class PlayerPermissionMigration implements Runnable {
+    static final String NAME = "player-permission-uuids";
+    static final int VERSION = 1;
+    private final List<String> worlds;
+
+    /**
+     * @param worlds
+     *         the fully qualified names of the worlds to migrate, {@code null} for the global permissions
+     */
+    PlayerPermissionMigration(List<String> worlds) {
+        this.worlds = worlds;
+    }
+
+    @Override
+    public void run() {
+        try {
+            MigrationDataAccess migration = new MigrationDataAccess();
+            Database.get().updateSchema(migration);
+            HashMap<String, Object> filter = new HashMap<String, Object>();
+            filter.put("name", NAME);
+            Database.get().load(migration, filter);
+            if (migration.hasData() && migration.version >= VERSION) {
+                return;
+            }
+
+            boolean complete = true;
+            for (String world : worlds) {
+                complete &= migrate(world);
+            }
+            if (!complete) {
+                log.warn("Player permissions could not be migrated to UUIDs completely, the migration is retried on the next start");
+                return;
+            }
+            migration.name = NAME;
+            migration.version = VERSION;
+            Database.get().upsert(migration, filter);
+        }
+        catch (DatabaseReadException e) {
+            log.error("Failed to migrate player permissions to UUIDs", e);
+        }
+        catch (DatabaseWriteException e) {
+            log.error("Failed to migrate player permissions to UUIDs", e);
+        }
+    }
+
+    /**
+     * Replaces player names with UUIDs in the player permissions of a world.
+     * Names without a profile keep their rows as they are.
+     *
+     * @param world
+     *         the fully qualified world name, {@code null} for the global permissions
+     *
+     * @return {@code true} if every name was looked up; {@code false} if the resolver or a write failed
+     *
+     * @throws DatabaseReadException
+     *         when the permissions could not be read
+     */
+    boolean migrate(final String world) throws DatabaseReadException {
+        // The owners as they are stored, keyed to lower case name
+        final LinkedHashMap<String, Set<String>> legacy = new LinkedHashMap<String, Set<String>>();
+        HashMap<String, Object> filter = new HashMap<String, Object>();
+        filter.put("type", "player");
+        Database.get().loadEach(new PermissionDataAccess(world), filter, new DataAccessCallback() {
+            @Override
+            public boolean onLoad(DataAccess dao) {
+                PermissionDataAccess data = (PermissionDataAccess) dao;
+                if (data.owner == null || data.owner.isEmpty() || ToolBox.isUUID(data.owner)) {
+                    return true;
+                }
+                String name = data.owner.toLowerCase();
+                if (!legacy.containsKey(name)) {
+                    legacy.put(name, new HashSet<String>());
+                }
+                legacy.get(name).add(data.owner);
+                return true;
+            }
+        });
+        if (legacy.isEmpty()) {
+            return true;
+        }
+        log.info("Migrating the permissions of " + legacy.size() + " players" + (world == null ? "" : " in " + world) + " to UUIDs");
+
+        UUIDResolver resolver = ToolBox.getUUIDResolver();
+        int batchSize = Math.max(1, resolver.getBatchSize());
+        ArrayList<String> names = new ArrayList<String>(legacy.keySet());
+        int unresolved = 0;
+        for (int i = 0; i < names.size(); i += batchSize) {
+            List<String> batch = names.subList(i, Math.min(names.size(), i + batchSize));
+            Map<String, String> uuids;
+            try {
+                uuids = resolver.resolve(batch);
+            }
+            catch (IOException e) {
+                log.warn("Failed to translate player names into UUIDs: " + e.getMessage());
+                return false;
+            }
+
+            final LinkedHashMap<String, String> owners = new LinkedHashMap<String, String>(); // Stored owner -> UUID
+            for (String name : batch) {
+                String uuid = uuids.get(name);
+                if (uuid == null) {
+                    unresolved++;
+                    continue;
+                }
+                for (String owner : legacy.get(name)) {
+                    owners.put(owner, uuid);
+                }
+            }
+            try {
+                Database.get().transaction(new Transaction() {
+                    @Override
+                    public void execute() throws DatabaseReadException, DatabaseWriteException {
+                        migrateOwners(world, owners);
+                    }
+                });
+            }
+            catch (DatabaseWriteException e) {
+                log.error("Failed to migrate player permissions to UUIDs", e);
+                return false;
+            }
+        }
+        if (unresolved > 0) {
+            log.warn(unresolved + " player names" + (world == null ? "" : " in " + world) + " have no UUID, their permissions were left as they are");
+        }
+        return true;
+    }
+
+    /**
+     * Reads the current rows of the owners and replaces only their owner.
+     * Runs inside a transaction, the rows may have changed since they were scanned.
+     *
+     * @param world
+     *         the fully qualified world name, {@code null} for the global permissions
+     * @param owners
+     *         the UUIDs keyed to the owners as they are stored
+     *
+     * @throws DatabaseReadException
+     *         when the rows could not be read
+     * @throws DatabaseWriteException
+     *         when the rows could not be written
+     */
+    private void migrateOwners(String world, Map<String, String> owners) throws DatabaseReadException, DatabaseWriteException {
+        ArrayList<DataAccess> rows = new ArrayList<DataAccess>();
+        ArrayList<Map<String, Object>> filters = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, String> owner : owners.entrySet()) {
+            ArrayList<DataAccess> current = new ArrayList<DataAccess>();
+            HashMap<String, Object> filter = new HashMap<String, Object>();
+            filter.put("owner", owner.getKey());
+            filter.put("type", "player");
+            Database.get().loadAll(new PermissionDataAccess(world), current, filter);
+            for (DataAccess dao : current) {
+                PermissionDataAccess data = (PermissionDataAccess) dao;
+                data.owner = owner.getValue();
+                rows.add(data);
+                HashMap<String, Object> idFilter = new HashMap<String, Object>();
+                idFilter.put("id", data.id);
+                filters.add(idFilter);
+            }
+        }
+        Database.get().updateBatch(rows, filters);
+    }
+}
@@ -66,6 +66,7 @@ public class CommandList implements CommandListener {
         temp.put("playermod_group_remove", new PlayerGroupRemove());
         temp.put("help", new HelpCommand());
         temp.put("home", new Home());
+        temp.put("hookstats", new HookStats());
         temp.put("ipban", new IpBanCommand());
         temp.put("kick", new Kick());
         temp.put("kill", new Kill());
@@ -678,7 +679,7 @@ public class CommandList implements CommandListener {
     @Command(aliases = { "reloadplugin" },
             description = "plugin reload info",
             permissions = { "canary.command.plugin.reload" },
-            toolTip = "/reloadplugin <plugin>",
+            toolTip = "/reloadplugin [-s] <plugin>",
             min = 2,
             tabCompleteMethod = "matchPluginName"
     )
@@ -890,6 +891,21 @@ public class CommandList implements CommandListener {
         natives.get("uptime").execute(caller, parameters);
     }
 
+    @Command(aliases = { "hookstats" },
+            description = "hook timings",
+            permissions = { "canary.command.hookstats" },
+            toolTip = "/hookstats [on [samplerate]|off|reset|tick|top [count]]",
+            tabCompleteMethod = "hookstatsTabComplete"
+    )
+    public void hookstats(MessageReceiver caller, String[] parameters) {
+        natives.get("hookstats").execute(caller, parameters);
+    }
+
+    @TabComplete
+    public List<String> hookstatsTabComplete(MessageReceiver caller, String[] parameters) {
+        return parameters.length == 1 ? matchTo(parameters, new String[]{ "on", "off", "reset", "tick", "top" }) : null;
+    }
+
     @Command(
             aliases = { "loadworld" },
             description = "loads a world",
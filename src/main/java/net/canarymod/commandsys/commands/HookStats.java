@@ -0,0 +1,94 @@
+package net.canarymod.commandsys.commands;
+
+import net.canarymod.Canary;
+import net.canarymod.chat.MessageReceiver;
+import net.canarymod.chat.TextFormat;
+import net.canarymod.commandsys.NativeCommand;
+import net.canarymod.hook.HookTiming;
+import net.canarymod.hook.HookTimings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hook timings read-out and control command
+ */
+public class HookStats implements NativeCommand {
+
+    @Override
+    public void execute(MessageReceiver caller, String[] parameters) {
+        HookTimings timings = Canary.hooks().getTimings();
+        String sub = parameters.length > 1 ? parameters[1].toLowerCase() : "top";
+
+        if (sub.equals("on")) {
+            int rate = parameters.length > 2 ? parseInt(parameters[2], 1) : 1;
+            timings.setSampleRate(rate < 1 ? 1 : rate);
+            caller.notice("Hook timings enabled, timing every " + timings.getSampleRate() + ". hook call");
+        }
+        else if (sub.equals("off")) {
+            timings.setSampleRate(0);
+            caller.notice("Hook timings disabled");
+        }
+        else if (sub.equals("reset")) {
+            timings.reset();
+            caller.notice("Hook timings reset");
+        }
+        else if (sub.equals("tick")) {
+            tick(caller, timings);
+        }
+        else {
+            top(caller, timings, parameters.length > 2 ? parseInt(parameters[2], 10) : 10);
+        }
+    }
+
+    private void top(MessageReceiver caller, HookTimings timings, int count) {
+        caller.message(TextFormat.ORANGE + "   *** " + TextFormat.LIGHT_RED + "HOOK TIMINGS" + TextFormat.ORANGE + " ***");
+        caller.message(TextFormat.ORANGE + "Sample Rate: " + TextFormat.WHITE + (timings.isEnabled() ? "1/" + timings.getSampleRate() : "disabled"));
+        int shown = 0;
+        for (HookTiming timing : timings.getTimings()) {
+            if (shown >= count || timing.getCount() == 0) {
+                break;
+            }
+            caller.message(String.format(TextFormat.LIGHT_GREEN + "%s " + TextFormat.WHITE + "%s(%s): " + TextFormat.ORANGE + "%d calls, %.2fms total, %.3fms avg, %.3fms max",
+                    timing.getPluginName(), timing.getHandlerName(), timing.getHookClass().getSimpleName(), timing.getCount(),
+                    timing.getTotalNanos() / 1000000.0D, timing.getAverageNanos() / 1000000.0D, timing.getMaxNanos() / 1000000.0D));
+            shown++;
+        }
+        if (shown == 0) {
+            caller.notice("No hook timings recorded");
+        }
+    }
+
+    private void tick(MessageReceiver caller, HookTimings timings) {
+        List<Map.Entry<String, Long>> breakdown = new ArrayList<Map.Entry<String, Long>>(timings.getLastTickBreakdown().entrySet());
+        if (breakdown.isEmpty()) {
+            caller.notice("No hook timings recorded for the last tick");
+            return;
+        }
+        Collections.sort(breakdown, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        caller.message(TextFormat.ORANGE + "   *** " + TextFormat.LIGHT_RED + "LAST TICK" + TextFormat.ORANGE + " ***");
+        if (timings.getSampleRate() > 1) {
+            caller.message(TextFormat.ORANGE + "Estimated from every " + timings.getSampleRate() + ". hook call");
+        }
+        for (Map.Entry<String, Long> entry : breakdown) {
+            caller.message(String.format(TextFormat.LIGHT_GREEN + "%s: " + TextFormat.WHITE + "%.3fms", entry.getKey(), entry.getValue() / 1000000.0D));
+        }
+    }
+
+    private int parseInt(String value, int def) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+}
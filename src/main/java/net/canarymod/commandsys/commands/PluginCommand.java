@@ -15,6 +15,7 @@ public class PluginCommand implements NativeCommand {
     private boolean disable;
     private boolean reload;
     private boolean permanent = false;
+    private boolean staged = false;
 
     public PluginCommand(boolean disable, boolean reload) {
         this.reload = reload;
@@ -39,6 +40,15 @@ public class PluginCommand implements NativeCommand {
     }
 
     private void reload(MessageReceiver caller, String plugin) {
+        if (staged) {
+            if (Canary.loader().reloadPluginStaged(plugin)) {
+                caller.notice(Translator.translateAndFormat("plugin reloaded staged", plugin));
+            }
+            else {
+                caller.notice(Translator.translateAndFormat("plugin reloaded fail", plugin));
+            }
+            return;
+        }
         if (Canary.loader().reloadPlugin(plugin)) {
             caller.notice(Translator.translateAndFormat("plugin reloaded", plugin));
         }
@@ -80,16 +90,29 @@ public class PluginCommand implements NativeCommand {
         return params[params.length - 2].equalsIgnoreCase("-p");
     }
 
+    /**
+     * Check if we have a staged reload request
+     *
+     * @param params
+     *
+     * @return
+     */
+    private boolean getStagedParameter(String[] params) {
+        return params[params.length - 2].equalsIgnoreCase("-s");
+    }
+
     /**
      * Analyze the command input and set the disable, permanent and reload booleans accordingly
      *
      * @param params
      */
     private void checkConditions(String[] params) {
+        staged = false;
         if (params[0].toLowerCase().startsWith("plugin", 1)) {
             if (params.length == 4) {
                 // we have a permanent condition (still check if the flag is right!)
                 this.permanent = getPermanentParameter(params);
+                this.staged = getStagedParameter(params);
             }
             if (params[1].equalsIgnoreCase("reload")) {
                 reload = true;
@@ -108,6 +131,7 @@ public class PluginCommand implements NativeCommand {
             if (params.length == 3) {
                 // we have a permanent condition (still check if the flag is right!)
                 this.permanent = getPermanentParameter(params);
+                this.staged = getStagedParameter(params);
             }
             if (params[0].toLowerCase().contains("reloadplugin")) {
                 reload = true;
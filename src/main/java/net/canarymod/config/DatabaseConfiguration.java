@@ -89,6 +89,17 @@ public class DatabaseConfiguration implements ConfigurationContainer {
         cfg.getInt("statement-cache-close-threads", 1);
         cfg.addComment("statement-cache-close-threads", "Number of threads to use when closing statements is deferred (happens when parent connection is still in use)");
 
+        // write-behind settings
+
+        cfg.getInt("write-behind-capacity", 10000);
+        cfg.addComment("write-behind-capacity", "Maximum number of queued writes (Database.insertLater/updateLater/upsertLater). When exceeded, queueing blocks until the queue was written.");
+
+        cfg.getInt("write-behind-flush-interval", 1000);
+        cfg.addComment("write-behind-flush-interval", "Milliseconds queued writes are held back to be written together.");
+
+        cfg.getInt("load-page-size", 1000);
+        cfg.addComment("load-page-size", "Number of rows fetched at once when a table is streamed (Database.loadEach)");
+
         cfg.save();
     }
 
@@ -200,6 +211,33 @@ public class DatabaseConfiguration implements ConfigurationContainer {
         return cfg.getInt("statement-cache-close-threads", 1);
     }
 
+    /**
+     * Defines how many writes the write-behind queue holds before callers have to wait for it to be written.
+     *
+     * @return max queued writes
+     */
+    public int getWriteBehindCapacity() {
+        return cfg.getInt("write-behind-capacity", 10000);
+    }
+
+    /**
+     * Defines how long queued writes are held back to be written in one batch, in milliseconds.
+     *
+     * @return flush interval in milliseconds
+     */
+    public int getWriteBehindFlushInterval() {
+        return cfg.getInt("write-behind-flush-interval", 1000);
+    }
+
+    /**
+     * Defines how many rows are fetched at once when a table is streamed.
+     *
+     * @return rows per page
+     */
+    public int getLoadPageSize() {
+        return cfg.getInt("load-page-size", 1000);
+    }
+
     /**
      * Defines the interval of checking validity of pooled connections in seconds.
      *
@@ -79,6 +79,8 @@ public class ServerConfiguration implements ConfigurationContainer {
         }
         cfg.getString("default-world-name", "default");
         cfg.setComments("default-world-name", "Name of the default loaded world");
+        cfg.getInt("hook-timings-sample-rate", 0);
+        cfg.setComments("hook-timings-sample-rate", "Time every n-th hook call per plugin listener (see /hookstats). 1 times every call, 0 disables timings");
         //cfg.getBoolean("logging", false); //REMOVED
         if (cfg.containsKey("logging")) { // Remove old key
             cfg.removeKey("logging");
@@ -550,6 +552,15 @@ public class ServerConfiguration implements ConfigurationContainer {
         return cfg.getString("whitelist-message", "Not on whitelist.");
     }
 
+    /**
+     * Gets the sample rate for hook timings
+     *
+     * @return sample rate; 0 if disabled
+     */
+    public int getHookTimingsSampleRate() {
+        return cfg.getInt("hook-timings-sample-rate", 0);
+    }
+
     /**
      * Checks if the World Cache Timer is enabled
      *
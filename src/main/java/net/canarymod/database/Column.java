@@ -57,4 +57,7 @@ public @interface Column {
     /** Is this field an implementation of the List interface? */
     boolean isList() default false;
 
+    /** Should the database keep an index on this column? Use {@link Index} for indexes over multiple columns */
+    boolean indexed() default false;
+
 }
@@ -1,17 +1,22 @@
 package net.canarymod.database;
 
-import net.canarymod.ToolBox;
 import net.canarymod.database.exceptions.DatabaseAccessException;
 import net.canarymod.database.exceptions.DatabaseTableInconsistencyException;
 import net.canarymod.database.exceptions.DatabaseWriteException;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.canarymod.Canary.log;
 
@@ -26,7 +31,9 @@ public abstract class DataAccess {
     private boolean isInconsistent = false;
     private boolean isLoaded = false;
     private boolean hasData = false;
-    private static final Set<Class<? extends DataAccess>> schemaUpdated = new HashSet<Class<? extends DataAccess>>();
+    private static final Set<Class<? extends DataAccess>> schemaUpdated = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends DataAccess>, Boolean>());
+    // The fields of a schema refer to its class, so a weak map would never let go; plugin classes are removed by unloadClasses
+    private static final ConcurrentHashMap<Class<? extends DataAccess>, Schema> schemas = new ConcurrentHashMap<Class<? extends DataAccess>, Schema>();
 
     @Column(columnName = "id", dataType = Column.DataType.INTEGER, autoIncrement = true, columnType = Column.ColumnType.PRIMARY)
     public Integer id;
@@ -89,55 +96,45 @@ public abstract class DataAccess {
      * @throws DatabaseTableInconsistencyException
      */
     public final HashMap<Column, Object> toDatabaseEntryList() throws DatabaseTableInconsistencyException {
-        List<Field> fields = Arrays.asList(ToolBox.safeArrayMerge(getClass().getFields(), getClass().getDeclaredFields(), new Field[1]));
-        HashMap<Column, Object> fieldMap = new HashMap<Column, Object>();
-        for (Field field : fields) {
-            Column colInfo = field.getAnnotation(Column.class);
-
-            if (colInfo == null) {
-                // Not what we're looking for
-                continue;
-            }
-            if (fieldMap.containsKey(colInfo)) {
-                // Seriously ...
-                isInconsistent = true;
-                throw new DatabaseTableInconsistencyException("Found duplicate column field: " + colInfo.columnName());
-            }
+        Schema schema = getSchema();
+        HashMap<Column, Object> fieldMap = new LinkedHashMap<Column, Object>(schema.columns.length * 2);
+        for (int i = 0; i < schema.columns.length; i++) {
             try {
-                fieldMap.put(colInfo, field.get(this));
+                fieldMap.put(schema.columns[i], schema.fields[i].get(this));
             }
             catch (IllegalArgumentException e) {
                 log.error(e.getMessage(), e);
             }
             catch (IllegalAccessException e) {
                 isInconsistent = true;
-                throw new DatabaseTableInconsistencyException("Could not access an annotated column field: " + field.getName());
+                throw new DatabaseTableInconsistencyException("Could not access an annotated column field: " + schema.fields[i].getName());
             }
         }
         return fieldMap;
     }
 
     public final void applyDataSet(HashMap<String, Object> dataSet) throws DatabaseAccessException, IllegalArgumentException, IllegalAccessException {
-        Field[] fields = ToolBox.safeArrayMerge(getClass().getFields(), getClass().getDeclaredFields(), new Field[1]);
-        int columnFields = 0;
-
-        for (Field field : fields) {
-            Column col = field.getAnnotation(Column.class);
+        Schema schema;
+        try {
+            schema = getSchema();
+        }
+        catch (DatabaseTableInconsistencyException e) {
+            throw new DatabaseAccessException(e.getMessage());
+        }
 
-            if (col == null) {
-                continue;
-            }
-            if (!dataSet.containsKey(col.columnName())) {
+        for (int i = 0; i < schema.columns.length; i++) {
+            Column col = schema.columns[i];
+            Object value = dataSet.get(col.columnName());
+            if (value == null && !dataSet.containsKey(col.columnName())) {
                 isInconsistent = true;
                 throw new DatabaseAccessException("Cannot apply data to " + getClass().getSimpleName() + ". Column name mismatches! (" + col.columnName() + " does not exist) - " + dataSet.keySet().toString());
             }
-            field.set(this, dataSet.get(col.columnName()));
-            columnFields++;
+            schema.fields[i].set(this, value);
         }
-        // If the columnFields is not the size of the dataSet,
+        // If the column count is not the size of the dataSet,
         // There is either excess data or data that has not been put in the AccessObject.
         // This causes inconsistency and therefore must throw an exception
-        if (columnFields != dataSet.size()) {
+        if (schema.columns.length != dataSet.size()) {
             isInconsistent = true;
             throw new DatabaseAccessException("Supplied Data set cannot be applied to this DataAccess(" + getClass().getSimpleName() + "). Column count mismatches!");
         }
@@ -151,27 +148,19 @@ public abstract class DataAccess {
      * @throws DatabaseTableInconsistencyException
      */
     public final HashSet<Column> getTableLayout() throws DatabaseTableInconsistencyException {
-        Field[] fields = ToolBox.safeArrayMerge(getClass().getFields(), getClass().getDeclaredFields(), new Field[1]);
-        HashSet<Column> layout = new HashSet<Column>(fields.length);
-
-        for (Field field : fields) {
-            if (field == null) {
-                throw new DatabaseTableInconsistencyException("A field of " + getClass().getSimpleName() + " is not initialized, check your DataAccess!");
-            }
-            Column colInfo = field.getAnnotation(Column.class);
+        return new HashSet<Column>(getSchema().layout);
+    }
 
-            if (colInfo == null) {
-                // Not what we're looking for
-                continue;
-            }
-            if (layout.contains(colInfo)) {
-                // Dude!
-                isInconsistent = true;
-                throw new DatabaseTableInconsistencyException("Found duplicate column field: " + colInfo.columnName());
-            }
-            layout.add(colInfo);
-        }
-        return layout;
+    /**
+     * Gets the names of the columns of this {@link DataAccess}, comma separated in the order of {@link #toDatabaseEntryList()}.
+     * Classes with the same columns have the same signature, so it can identify SQL built from the columns.
+     *
+     * @return the column signature
+     *
+     * @throws DatabaseTableInconsistencyException
+     */
+    public final String getColumnSignature() throws DatabaseTableInconsistencyException {
+        return getSchema().signature;
     }
 
     /**
@@ -224,18 +213,7 @@ public abstract class DataAccess {
      * @return true if DataAccess has this column, false otherwise
      */
     public final boolean hasColumn(String name) {
-        try {
-            for (Column col : getTableLayout()) {
-                if (col.columnName().equals(name)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        catch (DatabaseTableInconsistencyException e) {
-            log.error("Could not finish column name lookup in database for " + tableName, e);
-            return false;
-        }
+        return getColumnForName(name) != null;
     }
 
     /**
@@ -248,12 +226,7 @@ public abstract class DataAccess {
      */
     public final Column getColumnForName(String name) {
         try {
-            for (Column col : getTableLayout()) {
-                if (col.columnName().equals(name)) {
-                    return col;
-                }
-            }
-            return null;
+            return getSchema().byName.get(name);
         }
         catch (DatabaseTableInconsistencyException e) {
             log.error("Could not finish column name lookup in database for " + tableName, e);
@@ -261,6 +234,62 @@ public abstract class DataAccess {
         }
     }
 
+    /**
+     * Gets the indexes declared for this table
+     *
+     * @return the {@link TableIndex}es, may be empty
+     *
+     * @throws DatabaseTableInconsistencyException
+     *         when an index refers to a column that does not exist
+     */
+    public final List<TableIndex> getIndexes() throws DatabaseTableInconsistencyException {
+        return getSchema().indexes;
+    }
+
+    /**
+     * Gets the column layout of this class, it is read once per class
+     *
+     * @return the {@link Schema}
+     *
+     * @throws DatabaseTableInconsistencyException
+     *         when two fields define the same column
+     */
+    private Schema getSchema() throws DatabaseTableInconsistencyException {
+        Schema schema = schemas.get(getClass());
+        if (schema == null) {
+            schema = new Schema(getClass());
+            Schema known = schemas.putIfAbsent(getClass(), schema);
+            if (known != null) {
+                schema = known;
+            }
+        }
+        if (schema.error != null) {
+            isInconsistent = true;
+            throw new DatabaseTableInconsistencyException(schema.error);
+        }
+        return schema;
+    }
+
+    /**
+     * Forgets the schemas of the {@link DataAccess} classes loaded by the given class loader,
+     * so an unloaded plugin does not stay in memory. Called when the class loader of a plugin is closed.
+     *
+     * @param loader
+     *         the class loader
+     */
+    public static void unloadClasses(ClassLoader loader) {
+        for (Iterator<Class<? extends DataAccess>> itr = schemas.keySet().iterator(); itr.hasNext(); ) {
+            if (itr.next().getClassLoader() == loader) {
+                itr.remove();
+            }
+        }
+        for (Iterator<Class<? extends DataAccess>> itr = schemaUpdated.iterator(); itr.hasNext(); ) {
+            if (itr.next().getClassLoader() == loader) {
+                itr.remove();
+            }
+        }
+    }
+
     /** Makes sure the database file for this DataAccess exists before anything starts to use it */
     private void createTable() {
         if (!schemaUpdated.contains(getClass())) {
@@ -304,4 +333,108 @@ public abstract class DataAccess {
      * @return instance
      */
     public abstract DataAccess getInstance();
+
+    /**
+     * The columns of a {@link DataAccess} class and the fields holding them.
+     * Reading the fields and annotations on every access is expensive, so this is built once per class.
+     * The values are read and written with the already accessible {@link Field}s, as MethodHandles need Java 7.
+     */
+    private static final class Schema {
+        private final Column[] columns;
+        private final Field[] fields; // Same index as the column
+        private final Set<Column> layout;
+        private final Map<String, Column> byName;
+        private final String signature;
+        private final List<TableIndex> indexes;
+        private final String error; // Inconsistency message, if any
+
+        private Schema(Class<? extends DataAccess> cls) {
+            LinkedHashSet<Field> all = new LinkedHashSet<Field>();
+            Collections.addAll(all, cls.getFields());
+            Collections.addAll(all, cls.getDeclaredFields());
+            ArrayList<Column> columnList = new ArrayList<Column>(all.size());
+            ArrayList<Field> fieldList = new ArrayList<Field>(all.size());
+            HashMap<String, Column> names = new HashMap<String, Column>();
+            String error = null;
+
+            for (Field field : all) {
+                Column colInfo = field.getAnnotation(Column.class);
+
+                if (colInfo == null) {
+                    // Not what we're looking for
+                    continue;
+                }
+                if (columnList.contains(colInfo)) {
+                    error = "Found duplicate column field: " + colInfo.columnName();
+                    break;
+                }
+                if (!field.isAccessible()) {
+                    try {
+                        field.setAccessible(true);
+                    }
+                    catch (SecurityException e) {
+                        // Left as is, the access will fail if it is not public
+                    }
+                }
+                columnList.add(colInfo);
+                fieldList.add(field);
+                names.put(colInfo.columnName(), colInfo);
+            }
+
+            ArrayList<TableIndex> indexList = new ArrayList<TableIndex>();
+            HashSet<String> indexNames = new HashSet<String>();
+            for (Column column : columnList) {
+                if (column.indexed()) {
+                    indexList.add(new TableIndex(column.columnName(), new String[]{ column.columnName() }, false));
+                    indexNames.add(column.columnName());
+                }
+            }
+            ArrayList<Index> declared = new ArrayList<Index>();
+            if (cls.isAnnotationPresent(Index.class)) {
+                declared.add(cls.getAnnotation(Index.class));
+            }
+            if (cls.isAnnotationPresent(Indexes.class)) {
+                Collections.addAll(declared, cls.getAnnotation(Indexes.class).value());
+            }
+            for (Index index : declared) {
+                for (String column : index.columns()) {
+                    if (!names.containsKey(column) && error == null) {
+                        error = "Index on " + Arrays.toString(index.columns()) + " refers to unknown column " + column;
+                    }
+                }
+                String name = index.name();
+                if (name.isEmpty()) {
+                    StringBuilder sb = new StringBuilder();
+                    for (String column : index.columns()) {
+                        if (sb.length() > 0) {
+                            sb.append('_');
+                        }
+                        sb.append(column);
+                    }
+                    name = sb.toString();
+                }
+                if (!indexNames.add(name) && error == null) {
+                    error = "Found duplicate index name: " + name;
+                }
+                indexList.add(new TableIndex(name, index.columns(), index.unique()));
+            }
+            this.columns = columnList.toArray(new Column[columnList.size()]);
+            this.fields = fieldList.toArray(new Field[fieldList.size()]);
+            this.layout = Collections.unmodifiableSet(new LinkedHashSet<Column>(columnList));
+            this.byName = Collections.unmodifiableMap(names);
+            StringBuilder signature = new StringBuilder();
+            for (Column column : columnList) {
+                if (signature.length() > 0) {
+                    signature.append(',');
+                }
+                signature.append(column.columnName());
+                if (column.autoIncrement()) {
+                    signature.append('+'); // Left out of inserts and updates
+                }
+            }
+            this.signature = signature.toString();
+            this.indexes = Collections.unmodifiableList(indexList);
+            this.error = error;
+        }
+    }
 }
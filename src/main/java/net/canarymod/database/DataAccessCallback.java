@@ -0,0 +1,18 @@
+package net.canarymod.database;
+
+/**
+ * Receives the {@link DataAccess} objects of {@link Database#loadEach(DataAccess, java.util.Map, DataAccessCallback)}
+ * one by one, so a table does not have to be held in memory as a whole.
+ */
+public interface DataAccessCallback {
+
+    /**
+     * Called for every loaded {@link DataAccess}
+     *
+     * @param data
+     *         the loaded data
+     *
+     * @return {@code true} to continue loading; {@code false} to stop
+     */
+    public boolean onLoad(DataAccess data);
+}
@@ -1,6 +1,7 @@
 package net.canarymod.database;
 
 import net.canarymod.config.Configuration;
+import net.canarymod.config.DatabaseConfiguration;
 import net.canarymod.database.exceptions.DatabaseException;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseWriteException;
@@ -8,7 +9,11 @@ import net.canarymod.database.mysql.MySQLDatabase;
 import net.canarymod.database.sqlite.SQLiteDatabase;
 import net.canarymod.database.xml.XmlDatabase;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +25,7 @@ import static net.canarymod.Canary.log;
  * @author Chris (damagefilter)
  */
 public abstract class Database {
+    private WriteBehindQueue writeBehind;
 
     /**
      * The datasource type
@@ -96,6 +102,35 @@ public abstract class Database {
      */
     public abstract void update(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException;
 
+    /**
+     * Updates the record that fits to the given filters, or inserts the data as new record if there is none.
+     * MySQL does this in a single statement if the filter columns form a unique key of the table,
+     * by default the record is looked up first.
+     *
+     * @param data
+     *         the data to be written. Additionally this acts as information about the table schema
+     * @param filters
+     *         FieldName->Value map to filter which row should be updated
+     *
+     * @throws DatabaseWriteException
+     *         when something went wrong during the write operation
+     */
+    public void upsert(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
+        DataAccess existing = data.getInstance();
+        try {
+            load(existing, filters);
+        }
+        catch (DatabaseReadException e) {
+            throw new DatabaseWriteException("Failed to look up existing entry in " + data.getName() + ": " + e.getMessage(), e);
+        }
+        if (existing.hasData()) {
+            update(data, filters);
+        }
+        else {
+            insert(data);
+        }
+    }
+
     /**
      * Removes the data set from the given table that suits the given field names and values.
      *
@@ -151,6 +186,224 @@ public abstract class Database {
      */
     public abstract void loadAll(DataAccess typeTemplate, List<DataAccess> datasets, Map<String, Object> filters) throws DatabaseReadException;
 
+    /**
+     * Loads all records that match the filters and passes them to the callback one by one.
+     * MySQL and SQLite fetch the records page by page in the order of their id,
+     * so the whole table is never held in memory. By default everything is loaded with
+     * {@link #loadAll(DataAccess, List, Map)} first.
+     *
+     * @param typeTemplate
+     *         the DataAccess template to create the instances from
+     * @param filters
+     *         a FieldName->Value map to filter which records are loaded
+     * @param callback
+     *         the {@link DataAccessCallback} to pass the loaded DataAccess objects to
+     *
+     * @throws DatabaseReadException
+     *         when something went wrong during the read operation
+     */
+    public void loadEach(DataAccess typeTemplate, Map<String, Object> filters, DataAccessCallback callback) throws DatabaseReadException {
+        List<DataAccess> datasets = new ArrayList<DataAccess>();
+        loadAll(typeTemplate, datasets, filters);
+        for (DataAccess data : datasets) {
+            if (!callback.onLoad(data)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Loads a page of the records that match the filters, ordered by their id (keyset pagination).
+     * Pass the id of the last record of a page to get the next page.
+     *
+     * @param typeTemplate
+     *         the DataAccess template to create the instances from
+     * @param datasets
+     *         the list to add the loaded DataAccess objects to
+     * @param filters
+     *         a FieldName->Value map to filter which records are loaded
+     * @param afterId
+     *         only records with a greater id are loaded, use {@code 0} for the first page
+     * @param limit
+     *         maximum number of records to load
+     *
+     * @throws DatabaseReadException
+     *         when something went wrong during the read operation
+     */
+    public void loadPage(DataAccess typeTemplate, List<DataAccess> datasets, Map<String, Object> filters, int afterId, int limit) throws DatabaseReadException {
+        List<DataAccess> all = new ArrayList<DataAccess>();
+        loadAll(typeTemplate, all, filters);
+        Iterator<DataAccess> it = all.iterator();
+        while (it.hasNext()) {
+            DataAccess data = it.next();
+            if (data.id == null || data.id <= afterId) {
+                it.remove();
+            }
+        }
+        Collections.sort(all, new Comparator<DataAccess>() {
+            @Override
+            public int compare(DataAccess o1, DataAccess o2) {
+                return o1.id.compareTo(o2.id);
+            }
+        });
+        datasets.addAll(all.subList(0, Math.min(limit, all.size())));
+    }
+
+    /**
+     * Implements {@link #loadEach(DataAccess, Map, DataAccessCallback)} with {@link #loadPage(DataAccess, List, Map, int, int)}
+     * for databases that can load pages efficiently
+     *
+     * @param typeTemplate
+     *         the DataAccess template to create the instances from
+     * @param filters
+     *         a FieldName->Value map to filter which records are loaded
+     * @param callback
+     *         the {@link DataAccessCallback} to pass the loaded DataAccess objects to
+     *
+     * @throws DatabaseReadException
+     *         when something went wrong during the read operation
+     */
+    protected final void loadEachByPage(DataAccess typeTemplate, Map<String, Object> filters, DataAccessCallback callback) throws DatabaseReadException {
+        int pageSize = Math.max(1, Configuration.getDbConfig().getLoadPageSize());
+        List<DataAccess> page = new ArrayList<DataAccess>(pageSize);
+        int lastId = 0;
+        do {
+            page.clear();
+            loadPage(typeTemplate, page, filters, lastId, pageSize);
+            for (DataAccess data : page) {
+                if (!callback.onLoad(data)) {
+                    return;
+                }
+                lastId = data.id;
+            }
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * Inserts all given DataAccess objects.
+     * The JDBC databases write them as one batch inside a single transaction, without checking
+     * for an identical existing row like {@link #insert(DataAccess)} does.
+     * By default they are inserted one by one.
+     *
+     * @param data
+     *         the data to insert
+     *
+     * @throws DatabaseWriteException
+     *         when something went wrong during the write operation
+     */
+    public void insertBatch(List<DataAccess> data) throws DatabaseWriteException {
+        for (DataAccess da : data) {
+            insert(da);
+        }
+    }
+
+    /**
+     * Updates the records matching the filters with the DataAccess at the same index.
+     * The JDBC databases write them as one batch inside a single transaction,
+     * by default they are updated one by one.
+     *
+     * @param data
+     *         the data to be updated
+     * @param filters
+     *         a FieldName->Value map for each data to filter which rows should be updated
+     *
+     * @throws DatabaseWriteException
+     *         when something went wrong during the write operation
+     */
+    public void updateBatch(List<DataAccess> data, List<Map<String, Object>> filters) throws DatabaseWriteException {
+        for (int i = 0; i < data.size(); i++) {
+            update(data.get(i), filters.get(i));
+        }
+    }
+
+    /**
+     * Runs the reads and writes of the {@link Transaction} as one unit.
+     * The JDBC databases use a single connection and transaction for it, which is committed at the end
+     * and rolled back if the Transaction or a batch write inside it throws an exception.
+     * XML holds back writing the changed tables until the end, but cannot roll back.
+     * By default the Transaction is simply executed.
+     *
+     * @param transaction
+     *         the work to do
+     *
+     * @throws DatabaseWriteException
+     *         when the transaction failed
+     */
+    public void transaction(Transaction transaction) throws DatabaseWriteException {
+        try {
+            transaction.execute();
+        }
+        catch (DatabaseReadException e) {
+            throw new DatabaseWriteException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Queues an insert to be written in the background, see {@link WriteBehindQueue}.
+     * The DataAccess must not be modified afterwards.
+     *
+     * @param data
+     *         the data to insert
+     */
+    public void insertLater(DataAccess data) {
+        getWriteBehindQueue().insert(data);
+    }
+
+    /**
+     * Queues an update to be written in the background, see {@link WriteBehindQueue}.
+     * A queued update with the same filters is replaced. The DataAccess must not be modified afterwards.
+     *
+     * @param data
+     *         the data to be updated
+     * @param filters
+     *         FieldName->Value map to filter which rows should be updated
+     */
+    public void updateLater(DataAccess data, Map<String, Object> filters) {
+        getWriteBehindQueue().update(data, filters);
+    }
+
+    /**
+     * Queues an upsert to be written in the background, see {@link WriteBehindQueue}.
+     * A queued update or upsert with the same filters is replaced. The DataAccess must not be modified afterwards.
+     *
+     * @param data
+     *         the data to be updated or inserted
+     * @param filters
+     *         FieldName->Value map to filter which rows should be updated
+     */
+    public void upsertLater(DataAccess data, Map<String, Object> filters) {
+        getWriteBehindQueue().upsert(data, filters);
+    }
+
+    /**
+     * Blocks until the writes queued so far are written, so they can be read back.
+     * Returns right away if nothing is queued.
+     */
+    public void flushWrites() {
+        WriteBehindQueue queue;
+        synchronized (this) {
+            queue = writeBehind;
+        }
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    /**
+     * Gets the {@link WriteBehindQueue} of this database.
+     * Once the queue is shut down together with the connections it is kept,
+     * so later writes are written on the calling thread instead of being queued on a writer nobody flushes.
+     *
+     * @return the queue
+     */
+    public synchronized WriteBehindQueue getWriteBehindQueue() {
+        if (writeBehind == null) {
+            DatabaseConfiguration cfg = Configuration.getDbConfig();
+            writeBehind = new WriteBehindQueue(this, cfg.getWriteBehindCapacity(), cfg.getWriteBehindFlushInterval());
+        }
+        return writeBehind;
+    }
+
     /**
      * Updates the database table fields for the given DataAccess object.
      * This method will remove fields that aren't there anymore and add new ones if applicable.
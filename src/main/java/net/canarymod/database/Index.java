@@ -0,0 +1,32 @@
+package net.canarymod.database;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares an index over one or more columns of a DataAccess table.
+ * Put it on the DataAccess class, or several of them into {@link Indexes}.
+ * For an index on a single column {@link Column#indexed()} can be used instead.
+ * <p/>
+ * Indexes are created and dropped by {@link Database#updateSchema(DataAccess)}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface Index {
+
+    /** The index name, unique per table. Defaults to the column names joined by underscores */
+    String name() default "";
+
+    /** The names of the indexed columns, in order */
+    String[] columns();
+
+    /**
+     * Should the database reject rows with the same values in these columns?
+     * MySQL only indexes a prefix of STRING columns, so there such an index rejects rows with the same prefix.
+     */
+    boolean unique() default false;
+}
@@ -4,10 +4,17 @@ import com.mchange.v2.c3p0.ComboPooledDataSource;
 import net.canarymod.config.Configuration;
 import net.canarymod.config.DatabaseConfiguration;
 import net.canarymod.database.exceptions.DatabaseAccessException;
+import net.canarymod.database.exceptions.DatabaseReadException;
+import net.canarymod.database.exceptions.DatabaseWriteException;
 
 import java.beans.PropertyVetoException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static net.canarymod.Canary.log;
 
@@ -59,6 +66,11 @@ public class JdbcConnectionManager {
     // If you do, it results in a table deadlock.
     // To prevent it, we force one connection only
     private Connection sqliteConnection;
+    // As the SQLite connection is shared, only one thread at a time may use it,
+    // held for a whole operation or transaction, see lockConnection()
+    private final ReentrantLock sqliteLock = new ReentrantLock();
+    // The connection of the transaction running on the current thread
+    private static final ThreadLocal<Connection> transactions = new ThreadLocal<Connection>();
 
     private Type type;
 
@@ -150,6 +162,10 @@ public class JdbcConnectionManager {
      * @return connection from the pool
      */
     public static Connection getConnection() {
+        Connection transaction = transactions.get();
+        if (transaction != null) {
+            return transaction;
+        }
         try {
             JdbcConnectionManager cman = getInstance();
             if (cman.type == Type.SQLITE) {
@@ -174,11 +190,125 @@ public class JdbcConnectionManager {
         }
     }
 
+    /**
+     * Gives the calling thread exclusive use of the shared SQLite connection until {@link #unlockConnection()}.
+     * Every operation on an SQLite database must hold it from its first to its last statement,
+     * otherwise its statements could end up in the transaction of another thread,
+     * or its commit could end that transaction early.
+     * The lock is reentrant and also held by {@link #transaction(Transaction)}.
+     * Does nothing for other database types, they get a connection of their own from the pool.
+     */
+    public static void lockConnection() {
+        JdbcConnectionManager cman = instance;
+        if (cman == null) {
+            try {
+                cman = getInstance();
+            }
+            catch (DatabaseAccessException e) {
+                return; // getConnection() reports it
+            }
+        }
+        if (cman.type == Type.SQLITE) {
+            cman.sqliteLock.lock();
+        }
+    }
+
+    /** Releases a {@link #lockConnection()} of the calling thread */
+    public static void unlockConnection() {
+        JdbcConnectionManager cman = instance;
+        if (cman != null && cman.sqliteLock.isHeldByCurrentThread()) {
+            cman.sqliteLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a {@link Transaction} on one connection, see {@link Database#transaction(Transaction)}.
+     * While it runs, {@link #getConnection()} returns that connection to the calling thread.
+     * Closing it, auto commit changes, commits and rollbacks done by the database methods are left to this method,
+     * a rollback marks the transaction to be rolled back at the end.
+     * A transaction started inside another one joins the outer transaction.
+     *
+     * @param transaction
+     *         the work to do
+     *
+     * @throws DatabaseWriteException
+     *         when the transaction failed and was rolled back
+     */
+    public static void transaction(Transaction transaction) throws DatabaseWriteException {
+        if (transactions.get() != null) {
+            execute(transaction);
+            return;
+        }
+        JdbcConnectionManager cman;
+        try {
+            cman = getInstance();
+        }
+        catch (DatabaseAccessException e) {
+            throw new DatabaseWriteException("Unable to start transaction: " + e.getMessage(), e);
+        }
+        boolean sqlite = cman.type == Type.SQLITE;
+        if (sqlite) {
+            cman.sqliteLock.lock();
+        }
+        try {
+            Connection conn = getConnection();
+            if (conn == null) {
+                throw new DatabaseWriteException("Unable to start transaction: no connection available");
+            }
+            TransactionConnection handler = new TransactionConnection(conn);
+            boolean committed = false;
+            try {
+                conn.setAutoCommit(false);
+                transactions.set(handler.proxy);
+                execute(transaction);
+                if (handler.rollbackOnly) {
+                    throw new DatabaseWriteException("Transaction rolled back, a write inside it failed");
+                }
+                conn.commit();
+                committed = true;
+            }
+            catch (SQLException e) {
+                throw new DatabaseWriteException("Transaction failed: " + e.getMessage(), e);
+            }
+            finally {
+                transactions.remove();
+                try {
+                    if (!committed) {
+                        conn.rollback();
+                    }
+                    conn.setAutoCommit(true);
+                    if (!sqlite) {
+                        conn.close(); // Back to the pool
+                    }
+                }
+                catch (SQLException e) {
+                    log.error("Failed to end transaction", e);
+                }
+            }
+        }
+        finally {
+            if (sqlite) {
+                cman.sqliteLock.unlock();
+            }
+        }
+    }
+
+    private static void execute(Transaction transaction) throws DatabaseWriteException {
+        try {
+            transaction.execute();
+        }
+        catch (DatabaseReadException e) {
+            throw new DatabaseWriteException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Shut down the connection pool.
      * Should be called when the system is reloaded or goes down to prevent data loss.
      */
     public static void shutdown() {
+        // Write what is still queued while the connections are there
+        WriteBehindQueue.shutdownAll();
         if (instance == null) {
             // already shut down or never instantiated (perhaps because we're running on a non-jdbc database)
             return;
@@ -194,4 +324,43 @@ public class JdbcConnectionManager {
         }
         instance = null;
     }
+
+    /** Hands out the connection of a transaction, keeping its end to {@link #transaction(Transaction)} */
+    private static final class TransactionConnection implements InvocationHandler {
+        private final Connection connection;
+        private final Connection proxy;
+        private boolean rollbackOnly;
+
+        private TransactionConnection(Connection connection) {
+            this.connection = connection;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close") || name.equals("setAutoCommit") || name.equals("commit")) {
+                return null;
+            }
+            if (name.equals("rollback") && method.getParameterTypes().length == 0) {
+                rollbackOnly = true;
+                return null;
+            }
+            if (name.equals("getAutoCommit")) {
+                return false;
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            try {
+                return method.invoke(connection, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package net.canarymod.database;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of a DataAccess table, as declared with {@link Column#indexed()}, {@link Index} or {@link Indexes}
+ */
+public final class TableIndex {
+    private final String name;
+    private final List<String> columns;
+    private final boolean unique;
+
+    TableIndex(String name, String[] columns, boolean unique) {
+        this.name = name;
+        this.columns = Collections.unmodifiableList(Arrays.asList(columns.clone()));
+        this.unique = unique;
+    }
+
+    /**
+     * Gets the index name, unique per table
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the names of the indexed columns
+     *
+     * @return the column names, in order
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Checks if the index rejects rows with the same values
+     *
+     * @return {@code true} if unique
+     */
+    public boolean isUnique() {
+        return unique;
+    }
+
+    @Override
+    public String toString() {
+        return (unique ? "unique index " : "index ") + name + columns;
+    }
+}
@@ -0,0 +1,21 @@
+package net.canarymod.database;
+
+import net.canarymod.database.exceptions.DatabaseReadException;
+import net.canarymod.database.exceptions.DatabaseWriteException;
+
+/**
+ * Work to be done in one database transaction, see {@link Database#transaction(Transaction)}
+ */
+public interface Transaction {
+
+    /**
+     * Does the reads and writes of the transaction.
+     * Throwing an exception rolls back the transaction on the JDBC databases.
+     *
+     * @throws DatabaseReadException
+     *         when something went wrong during a read operation
+     * @throws DatabaseWriteException
+     *         when something went wrong during a write operation
+     */
+    public void execute() throws DatabaseReadException, DatabaseWriteException;
+}
@@ -0,0 +1,406 @@
+package net.canarymod.database;
+
+import net.canarymod.database.exceptions.DatabaseReadException;
+import net.canarymod.database.exceptions.DatabaseWriteException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static net.canarymod.Canary.log;
+
+/**
+ * Write-behind queue for a {@link Database}.
+ * <p/>
+ * Queued inserts, updates and upserts return immediately. A background thread writes them table by table,
+ * each table in one {@link Database#transaction(Transaction)}. Consecutive inserts are written with
+ * {@link Database#insertBatch(List)}, consecutive updates with {@link Database#updateBatch(List, List)},
+ * so the writes of a table are written in the order they were queued.
+ * If the transaction fails, the writes are retried one by one and only the failing ones are lost.
+ * <p/>
+ * Updates and upserts of the same row (same table and filters) are coalesced, only the last one queued is written,
+ * in its place in the order. Use the same filters for the same row, like its key.
+ * <p/>
+ * The backlog is bounded. If it is full, queueing blocks until the writer took the backlog.
+ * <p/>
+ * Queued {@link DataAccess} objects are written as they are at the time of writing, so do not modify them after queueing.
+ */
+public final class WriteBehindQueue {
+    private static final CopyOnWriteArrayList<WriteBehindQueue> queues = new CopyOnWriteArrayList<WriteBehindQueue>();
+    private final Database database;
+    private final int capacity;
+    private final long flushInterval;
+    private final Object lock = new Object();
+    private final Thread writer;
+    private LinkedHashMap<String, TableWrites> pending = new LinkedHashMap<String, TableWrites>(); // Keyed to table name
+    private int size;
+    private boolean writing;
+    private long flushRequested;
+    private long flushed;
+    private boolean shutdown;
+
+    /**
+     * Creates and starts a new write-behind queue
+     *
+     * @param database
+     *         the {@link Database} to write to
+     * @param capacity
+     *         maximum number of queued writes
+     * @param flushInterval
+     *         milliseconds to hold back writes to write them together
+     */
+    public WriteBehindQueue(Database database, int capacity, long flushInterval) {
+        this.database = database;
+        this.capacity = Math.max(1, capacity);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "Canary Database Writer");
+        writer.setDaemon(true);
+        writer.start();
+        queues.add(this);
+    }
+
+    /**
+     * Queues an insert, see {@link Database#insert(DataAccess)}
+     *
+     * @param data
+     *         the data to insert
+     */
+    public void insert(DataAccess data) {
+        if (!enqueue(new Write(Kind.INSERT, data, null))) {
+            // Not accepting writes anymore, write through
+            try {
+                database.insert(data);
+            }
+            catch (DatabaseWriteException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Queues an update, see {@link Database#update(DataAccess, Map)}.
+     * A queued update of the same row is replaced.
+     *
+     * @param data
+     *         the data to update
+     * @param filters
+     *         FieldName->Value map to filter which rows should be updated
+     */
+    public void update(DataAccess data, Map<String, Object> filters) {
+        HashMap<String, Object> key = new HashMap<String, Object>(filters);
+        if (!enqueue(new Write(Kind.UPDATE, data, key))) {
+            try {
+                database.update(data, key);
+            }
+            catch (DatabaseWriteException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Queues an upsert, see {@link Database#upsert(DataAccess, Map)}.
+     * A queued update or upsert of the same row is replaced.
+     *
+     * @param data
+     *         the data to update or insert
+     * @param filters
+     *         FieldName->Value map to filter which rows should be updated
+     */
+    public void upsert(DataAccess data, Map<String, Object> filters) {
+        HashMap<String, Object> key = new HashMap<String, Object>(filters);
+        if (!enqueue(new Write(Kind.UPSERT, data, key))) {
+            try {
+                database.upsert(data, key);
+            }
+            catch (DatabaseWriteException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Blocks until everything queued before this call has been written */
+    public void flush() {
+        synchronized (lock) {
+            if (shutdown || Thread.currentThread() == writer || (size == 0 && !writing)) {
+                return; // Nothing left to wait for
+            }
+            long request = ++flushRequested;
+            lock.notifyAll();
+            try {
+                while (flushed < request && writer.isAlive()) {
+                    lock.wait(1000);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes the backlog and stops the writer.
+     * Writes queued afterwards are written on the calling thread.
+     *
+     * @param timeout
+     *         milliseconds to wait for the backlog to be written
+     */
+    public void shutdown(long timeout) {
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            lock.notifyAll();
+        }
+        queues.remove(this);
+        try {
+            writer.join(timeout);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Queued database writes did not finish in time, some writes may be lost");
+        }
+    }
+
+    /**
+     * Checks if this queue has been shut down
+     *
+     * @return {@code true} if shut down
+     */
+    public boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * Shuts down all write-behind queues, writing their backlog.
+     * Called when the database connections are shut down.
+     */
+    public static void shutdownAll() {
+        for (WriteBehindQueue queue : queues) {
+            queue.shutdown(10000);
+        }
+    }
+
+    /* Queues the write; false if the queue is shut down */
+    private boolean enqueue(Write write) {
+        synchronized (lock) {
+            if (shutdown) {
+                return false;
+            }
+            if (coalesce(write)) {
+                return true;
+            }
+            awaitSpace();
+            if (shutdown) {
+                return false;
+            }
+            // The backlog may have been swapped out while waiting
+            if (!coalesce(write)) {
+                table(write.data.getName()).writes.put(write.key(), write);
+                size++;
+            }
+            return true;
+        }
+    }
+
+    /* Replaces a queued write of the same row, called holding the lock */
+    private boolean coalesce(Write write) {
+        if (write.filters == null) {
+            return false; // Inserts are never coalesced
+        }
+        TableWrites table = pending.get(write.data.getName());
+        Write queued = table != null ? table.writes.remove(write.filters) : null;
+        if (queued == null) {
+            return false;
+        }
+        // The replaced write may have been an upsert, which inserts the row if it is missing
+        Kind kind = queued.kind == Kind.UPSERT ? Kind.UPSERT : write.kind;
+        // Re-added at the end, behind the writes queued since the replaced one
+        table.writes.put(write.filters, new Write(kind, write.data, write.filters));
+        return true;
+    }
+
+    private TableWrites table(String name) {
+        TableWrites table = pending.get(name);
+        if (table == null) {
+            table = new TableWrites();
+            pending.put(name, table);
+        }
+        return table;
+    }
+
+    /* Backpressure, called holding the lock */
+    private void awaitSpace() {
+        try {
+            while (size >= capacity && !shutdown) {
+                lock.notifyAll(); // Wake the writer, it should not wait for the interval
+                lock.wait();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            LinkedHashMap<String, TableWrites> batch;
+            long request;
+            boolean stop;
+            synchronized (lock) {
+                try {
+                    long deadline = System.currentTimeMillis() + flushInterval;
+                    while (!shutdown && flushRequested == flushed && size < capacity) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            if (size > 0) {
+                                break;
+                            }
+                            deadline = System.currentTimeMillis() + flushInterval;
+                            wait = flushInterval;
+                        }
+                        lock.wait(wait);
+                    }
+                }
+                catch (InterruptedException e) {
+                    // Write what we have and stop
+                    shutdown = true;
+                }
+                request = flushRequested;
+                stop = shutdown;
+                batch = pending;
+                pending = new LinkedHashMap<String, TableWrites>();
+                writing = size > 0;
+                size = 0;
+                lock.notifyAll(); // Release blocked callers
+            }
+            for (Map.Entry<String, TableWrites> table : batch.entrySet()) {
+                write(table.getKey(), table.getValue());
+            }
+            synchronized (lock) {
+                flushed = request;
+                writing = false;
+                lock.notifyAll();
+                if (stop && size == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void write(String table, TableWrites writes) {
+        final List<Write> list = new ArrayList<Write>(writes.writes.values());
+        try {
+            database.transaction(new Transaction() {
+                @Override
+                public void execute() throws DatabaseReadException, DatabaseWriteException {
+                    writeBatched(list);
+                }
+            });
+            return;
+        }
+        catch (DatabaseWriteException e) {
+            log.warn("Failed to write queued changes to " + table + " together, writing them one by one: " + e.getMessage());
+        }
+        catch (RuntimeException e) {
+            log.warn("Failed to write queued changes to " + table + " together, writing them one by one", e);
+        }
+        // The transaction was rolled back, retry so only the failing writes are lost
+        for (Write write : list) {
+            try {
+                write.writeTo(database);
+            }
+            catch (DatabaseWriteException e) {
+                log.error("Failed to write a queued change to " + table + ": " + write.data, e);
+            }
+            catch (RuntimeException e) {
+                log.error("Failed to write a queued change to " + table + ": " + write.data, e);
+            }
+        }
+    }
+
+    /* Writes runs of inserts and updates as batches, keeping their order */
+    private void writeBatched(List<Write> writes) throws DatabaseWriteException {
+        int start = 0;
+        while (start < writes.size()) {
+            Kind kind = writes.get(start).kind;
+            int end = start + 1;
+            while (end < writes.size() && writes.get(end).kind == kind) {
+                end++;
+            }
+            List<Write> run = writes.subList(start, end);
+            if (kind == Kind.UPSERT) {
+                for (Write write : run) {
+                    write.writeTo(database); // There is no batch upsert
+                }
+            }
+            else {
+                ArrayList<DataAccess> data = new ArrayList<DataAccess>(run.size());
+                ArrayList<Map<String, Object>> filters = new ArrayList<Map<String, Object>>(run.size());
+                for (Write write : run) {
+                    data.add(write.data);
+                    filters.add(write.filters);
+                }
+                if (kind == Kind.INSERT) {
+                    database.insertBatch(data);
+                }
+                else {
+                    database.updateBatch(data, filters);
+                }
+            }
+            start = end;
+        }
+    }
+
+    private enum Kind {
+        INSERT, UPDATE, UPSERT
+    }
+
+    /** A queued write */
+    private static final class Write {
+        private final Kind kind;
+        private final DataAccess data;
+        private final Map<String, Object> filters; // null for inserts
+
+        private Write(Kind kind, DataAccess data, Map<String, Object> filters) {
+            this.kind = kind;
+            this.data = data;
+            this.filters = filters;
+        }
+
+        /* Updates and upserts are keyed to their row, inserts to themselves */
+        private Object key() {
+            return filters != null ? filters : this;
+        }
+
+        private void writeTo(Database database) throws DatabaseWriteException {
+            if (kind == Kind.INSERT) {
+                database.insert(data);
+            }
+            else if (kind == Kind.UPDATE) {
+                database.update(data, filters);
+            }
+            else {
+                database.upsert(data, filters);
+            }
+        }
+    }
+
+    /** The queued writes of one table, in the order they are written */
+    private static final class TableWrites {
+        private final LinkedHashMap<Object, Write> writes = new LinkedHashMap<Object, Write>();
+    }
+}
@@ -2,8 +2,11 @@ package net.canarymod.database.mysql;
 
 import net.canarymod.database.Column;
 import net.canarymod.database.DataAccess;
+import net.canarymod.database.DataAccessCallback;
 import net.canarymod.database.Database;
 import net.canarymod.database.JdbcConnectionManager;
+import net.canarymod.database.TableIndex;
+import net.canarymod.database.Transaction;
 import net.canarymod.database.exceptions.DatabaseAccessException;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseTableInconsistencyException;
@@ -16,11 +19,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 
@@ -37,6 +44,10 @@ public class MySQLDatabase extends Database {
     private static MySQLDatabase instance;
     private final String LIST_REGEX = "\u00B6";
     private final String NULL_STRING = "NULL";
+    private static final String INDEX_PREFIX = "canary_";
+    private static final int STRING_INDEX_LENGTH = 191; // Longest prefix that fits any key length limit with utf8mb4
+    private final ConcurrentHashMap<StatementKey, String> statementCache = new ConcurrentHashMap<StatementKey, String>();
+    private final ConcurrentHashMap<String, Set<Set<String>>> uniqueKeys = new ConcurrentHashMap<String, Set<Set<String>>>(); // Keyed to table name
 
     private MySQLDatabase() {
         // one does not simply instantiate MySQLDatabase!
@@ -58,34 +69,9 @@ public class MySQLDatabase extends Database {
         PreparedStatement ps = null;
 
         try {
-            StringBuilder fields = new StringBuilder();
-            StringBuilder values = new StringBuilder();
             HashMap<Column, Object> columns = data.toDatabaseEntryList();
-            Iterator<Column> it = columns.keySet().iterator();
-
-            Column column;
-            while (it.hasNext()) {
-                column = it.next();
-                if (!column.autoIncrement()) {
-                    fields.append("`").append(column.columnName()).append("`").append(",");
-                    values.append("?").append(",");
-                }
-            }
-            if (fields.length() > 0) {
-                fields.deleteCharAt(fields.length() - 1);
-            }
-            if (values.length() > 0) {
-                values.deleteCharAt(values.length() - 1);
-            }
-            ps = conn.prepareStatement("INSERT INTO `" + data.getName() + "` (" + fields.toString() + ") VALUES(" + values.toString() + ")");
-
-            int i = 1;
-            for (Column c : columns.keySet()) {
-                if (!c.autoIncrement()) {
-                    setToStatement(i, columns.get(c), ps, c);
-                    i++;
-                }
-            }
+            ps = conn.prepareStatement(getInsertStatement(data.getName(), columns.keySet()));
+            setColumnValues(ps, columns, 1);
 
             if (ps.executeUpdate() == 0) {
                 throw new DatabaseWriteException("Error inserting MySQL: no rows updated!");
@@ -105,135 +91,202 @@ public class MySQLDatabase extends Database {
     }
 
     @Override
-    public void update(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
-        if (!this.doesEntryExist(data)) {
+    public void insertBatch(List<DataAccess> data) throws DatabaseWriteException {
+        if (data.isEmpty()) {
             return;
         }
         Connection conn = JdbcConnectionManager.getConnection();
-        ResultSet rs = null;
+        PreparedStatement ps = null;
 
         try {
-            rs = this.getResultSet(conn, data, filters, true);
-            if (rs != null) {
-                if (rs.next()) {
-                    HashMap<Column, Object> columns = data.toDatabaseEntryList();
-                    Iterator<Column> it = columns.keySet().iterator();
-                    Column column;
-                    while (it.hasNext()) {
-                        column = it.next();
-                        if (column.isList()) {
-                            rs.updateObject(column.columnName(), this.getString((List<?>) columns.get(column)));
-                        }
-                        else {
-                            rs.updateObject(column.columnName(), columns.get(column));
-                        }
+            conn.setAutoCommit(false);
+            String sql = null;
+            for (DataAccess da : data) {
+                HashMap<Column, Object> columns = da.toDatabaseEntryList();
+                String statement = getInsertStatement(da.getName(), columns.keySet());
+                if (!statement.equals(sql)) {
+                    if (ps != null) {
+                        ps.executeBatch();
+                        ps.close();
                     }
-                    rs.updateRow();
-                }
-                else {
-                    throw new DatabaseWriteException("Error updating DataAccess to MySQL, no such entry: " + data.toString());
+                    ps = conn.prepareStatement(statement);
+                    sql = statement;
                 }
+                setColumnValues(ps, columns, 1);
+                ps.addBatch();
+            }
+            if (ps != null) {
+                ps.executeBatch();
             }
+            conn.commit();
         }
         catch (SQLException ex) {
-            log.error(ex.getMessage(), ex);
+            rollback(conn);
+            throw new DatabaseWriteException("Error inserting MySQL batch: " + ex.getMessage(), ex);
         }
         catch (DatabaseTableInconsistencyException dtie) {
-            log.error(dtie.getMessage(), dtie);
-        }
-        catch (DatabaseReadException e) {
-            log.error(e.getMessage(), e);
+            rollback(conn);
+            throw new DatabaseWriteException("Error inserting MySQL batch: " + dtie.getMessage(), dtie);
         }
         finally {
-            PreparedStatement st = null;
-            try {
-                st = rs != null && rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
-            }
-            catch (SQLException e) {
-                log.error(e.getMessage(), e);
-            }
-            close(conn, st, rs);
+            resetAutoCommit(conn);
+            close(conn, ps, null);
         }
     }
 
-
     @Override
-    public void remove(DataAccess dataAccess, Map<String, Object> filters) throws DatabaseWriteException {
+    public void updateBatch(List<DataAccess> data, List<Map<String, Object>> filters) throws DatabaseWriteException {
+        if (data.isEmpty()) {
+            return;
+        }
         Connection conn = JdbcConnectionManager.getConnection();
         PreparedStatement ps = null;
 
         try {
-            if (filters.size() > 0) {
-                StringBuilder sb = new StringBuilder();
-                Object[] fieldNames = filters.keySet().toArray();
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    sb.append("`").append(fieldNames[i]);
-                    if (i + 1 < fieldNames.length) {
-                        sb.append("`=? AND ");
-                    }
-                    else {
-                        sb.append("`=?");
+            conn.setAutoCommit(false);
+            String sql = null;
+            for (int index = 0; index < data.size(); index++) {
+                DataAccess da = data.get(index);
+                HashMap<Column, Object> columns = da.toDatabaseEntryList();
+                List<String> filterNames = getSortedKeys(filters.get(index));
+                String statement = getUpdateStatement(da, columns.keySet(), filterNames);
+                if (!statement.equals(sql)) {
+                    if (ps != null) {
+                        ps.executeBatch();
+                        ps.close();
                     }
+                    ps = conn.prepareStatement(statement);
+                    sql = statement;
                 }
+                int i = setColumnValues(ps, columns, 1);
+                setFilterValues(ps, da, filterNames, filters.get(index), i);
+                ps.addBatch();
+            }
+            if (ps != null) {
+                ps.executeBatch();
+            }
+            conn.commit();
+        }
+        catch (SQLException ex) {
+            rollback(conn);
+            throw new DatabaseWriteException("Error updating MySQL batch: " + ex.getMessage(), ex);
+        }
+        catch (DatabaseTableInconsistencyException dtie) {
+            rollback(conn);
+            throw new DatabaseWriteException("Error updating MySQL batch: " + dtie.getMessage(), dtie);
+        }
+        catch (DatabaseWriteException dwe) {
+            rollback(conn);
+            throw dwe;
+        }
+        finally {
+            resetAutoCommit(conn);
+            close(conn, ps, null);
+        }
+    }
 
-                ps = conn.prepareStatement("DELETE FROM `" + dataAccess.getName() + "` WHERE " + sb.toString() + "LIMIT 1");
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    String fieldName = String.valueOf(fieldNames[i]);
-                    Column col = dataAccess.getColumnForName(fieldName);
-                    if (col == null) {
-                        throw new DatabaseReadException("Error deleting MySQL row in " + dataAccess.getName() + ". Column " + fieldNames[i] + " does not exist!");
-                    }
-                    setToStatement(i + 1, filters.get(fieldName), ps, col);
-                }
+    @Override
+    public void transaction(Transaction transaction) throws DatabaseWriteException {
+        JdbcConnectionManager.transaction(transaction);
+    }
 
-            }
+    @Override
+    public void update(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
+        Connection conn = JdbcConnectionManager.getConnection();
+        PreparedStatement ps = null;
 
-        }
-        catch (DatabaseReadException dre) {
-            log.error(dre.getMessage(), dre);
+        try {
+            HashMap<Column, Object> columns = data.toDatabaseEntryList();
+            List<String> filterNames = getSortedKeys(filters);
+            ps = conn.prepareStatement(getUpdateStatement(data, columns.keySet(), filterNames));
+            int i = setColumnValues(ps, columns, 1);
+            setFilterValues(ps, data, filterNames, filters, i);
+            ps.executeUpdate();
         }
         catch (SQLException ex) {
             log.error(ex.getMessage(), ex);
         }
+        catch (DatabaseTableInconsistencyException dtie) {
+            log.error(dtie.getMessage(), dtie);
+        }
         finally {
             close(conn, ps, null);
         }
     }
 
     @Override
-    public void removeAll(DataAccess dataAccess, Map<String, Object> filters) throws DatabaseWriteException {
+    public void upsert(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
         Connection conn = JdbcConnectionManager.getConnection();
         PreparedStatement ps = null;
 
         try {
-            if (filters.size() > 0) {
-                StringBuilder sb = new StringBuilder();
-                Object[] fieldNames = filters.keySet().toArray();
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    sb.append("`").append(fieldNames[i]);
-                    if (i + 1 < fieldNames.length) {
-                        sb.append("`=? AND ");
-                    }
-                    else {
-                        sb.append("`=?");
-                    }
+            HashMap<Column, Object> columns = data.toDatabaseEntryList();
+            if (isUniqueKey(conn, data, filters.keySet())) {
+                // The filters identify at most one row, let MySQL decide between insert and update
+                ps = conn.prepareStatement(getUpsertStatement(data, columns.keySet()));
+                setColumnValues(ps, columns, 1);
+                ps.executeUpdate();
+            }
+            else {
+                List<String> filterNames = getSortedKeys(filters);
+                ps = conn.prepareStatement(getUpdateStatement(data, columns.keySet(), filterNames));
+                int i = setColumnValues(ps, columns, 1);
+                setFilterValues(ps, data, filterNames, filters, i);
+                if (ps.executeUpdate() == 0) {
+                    ps.close();
+                    ps = conn.prepareStatement(getInsertStatement(data.getName(), columns.keySet()));
+                    setColumnValues(ps, columns, 1);
+                    ps.executeUpdate();
                 }
+            }
+        }
+        catch (SQLException ex) {
+            throw new DatabaseWriteException("Error upserting MySQL entry in " + data.getName() + ": " + ex.getMessage(), ex);
+        }
+        catch (DatabaseTableInconsistencyException dtie) {
+            throw new DatabaseWriteException("Error upserting MySQL entry in " + data.getName() + ": " + dtie.getMessage(), dtie);
+        }
+        finally {
+            close(conn, ps, null);
+        }
+    }
 
-                ps = conn.prepareStatement("DELETE FROM `" + dataAccess.getName() + "` WHERE " + sb.toString());
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    String fieldName = String.valueOf(fieldNames[i]);
-                    Column col = dataAccess.getColumnForName(fieldName);
-                    if (col == null) {
-                        throw new DatabaseReadException("Error deleting MySQL row in " + dataAccess.getName() + ". Column " + fieldNames[i] + " does not exist!");
-                    }
-                    setToStatement(i + 1, filters.get(fieldName), ps, col);
-                }
 
-            }
+    @Override
+    public void remove(DataAccess dataAccess, Map<String, Object> filters) throws DatabaseWriteException {
+        deleteRows(dataAccess, filters, true);
+    }
 
+    @Override
+    public void removeAll(DataAccess dataAccess, Map<String, Object> filters) throws DatabaseWriteException {
+        deleteRows(dataAccess, filters, false);
+    }
+
+    /**
+     * Deletes the rows matching the filters. Nothing is deleted without filters.
+     *
+     * @param dataAccess
+     *         the DataAccess of the table
+     * @param filters
+     *         FieldName->Value map to filter which rows should be deleted
+     * @param limitOne
+     *         {@code true} to delete only the first matching row
+     *
+     * @throws DatabaseWriteException
+     *         when a filter column does not exist
+     */
+    private void deleteRows(DataAccess dataAccess, Map<String, Object> filters, boolean limitOne) throws DatabaseWriteException {
+        if (filters.isEmpty()) {
+            return;
         }
-        catch (DatabaseReadException dre) {
-            log.error(dre.getMessage(), dre);
+        Connection conn = JdbcConnectionManager.getConnection();
+        PreparedStatement ps = null;
+
+        try {
+            List<String> filterNames = getSortedKeys(filters);
+            ps = conn.prepareStatement(getFilteredStatement(dataAccess, "DELETE FROM", filterNames, limitOne));
+            setFilterValues(ps, dataAccess, filterNames, filters, 1);
+            ps.executeUpdate();
         }
         catch (SQLException ex) {
             log.error(ex.getMessage(), ex);
@@ -298,20 +351,9 @@ public class MySQLDatabase extends Database {
         try {
             rs = this.getResultSet(conn, typeTemplate, filters, false);
             if (rs != null) {
+                Set<Column> layout = typeTemplate.getTableLayout();
                 while (rs.next()) {
-                    HashMap<String, Object> dataSet = new HashMap<String, Object>();
-                    for (Column column : typeTemplate.getTableLayout()) {
-                        if (column.isList()) {
-                            dataSet.put(column.columnName(), this.getList(column.dataType(), rs.getString(column.columnName())));
-                        }
-                        else if (rs.getObject(column.columnName()) instanceof Boolean) {
-                            dataSet.put(column.columnName(), rs.getBoolean(column.columnName()));
-                        }
-                        else {
-                            dataSet.put(column.columnName(), rs.getObject(column.columnName()));
-                        }
-                    }
-                    stuff.add(dataSet);
+                    stuff.add(readRow(rs, layout));
                 }
             }
 
@@ -347,6 +389,80 @@ public class MySQLDatabase extends Database {
         }
     }
 
+    @Override
+    public void loadEach(DataAccess typeTemplate, Map<String, Object> filters, DataAccessCallback callback) throws DatabaseReadException {
+        loadEachByPage(typeTemplate, filters, callback);
+    }
+
+    @Override
+    public void loadPage(DataAccess typeTemplate, List<DataAccess> datasets, Map<String, Object> filters, int afterId, int limit) throws DatabaseReadException {
+        Connection conn = JdbcConnectionManager.getConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        List<HashMap<String, Object>> stuff = new ArrayList<HashMap<String, Object>>(limit);
+        try {
+            List<String> filterNames = getSortedKeys(filters);
+            ps = conn.prepareStatement(getPageStatement(typeTemplate, filterNames));
+            ps.setFetchSize(limit);
+            int i = setFilterValues(ps, typeTemplate, filterNames, filters, 1);
+            ps.setInt(i, afterId);
+            ps.setInt(i + 1, limit);
+            rs = ps.executeQuery();
+            Set<Column> layout = typeTemplate.getTableLayout();
+            while (rs.next()) {
+                stuff.add(readRow(rs, layout));
+            }
+        }
+        catch (SQLException ex) {
+            throw new DatabaseReadException("Error loading MySQL page of " + typeTemplate.getName() + ": " + ex.getMessage(), ex);
+        }
+        catch (DatabaseWriteException dwe) {
+            throw new DatabaseReadException("Error loading MySQL page of " + typeTemplate.getName() + ": " + dwe.getMessage(), dwe);
+        }
+        catch (DatabaseTableInconsistencyException dtie) {
+            throw new DatabaseReadException("Error loading MySQL page of " + typeTemplate.getName() + ": " + dtie.getMessage(), dtie);
+        }
+        finally {
+            close(conn, ps, rs);
+        }
+        try {
+            for (HashMap<String, Object> temp : stuff) {
+                DataAccess newData = typeTemplate.getInstance();
+                newData.load(temp);
+                datasets.add(newData);
+            }
+        }
+        catch (DatabaseAccessException dae) {
+            throw new DatabaseReadException(dae.getMessage(), dae);
+        }
+    }
+
+    /**
+     * Reads the current row of a ResultSet
+     *
+     * @param rs
+     *         the ResultSet
+     * @param layout
+     *         the columns to read
+     *
+     * @return ColumnName->Value map of the row
+     *
+     * @throws SQLException
+     *         when a column could not be read
+     */
+    private HashMap<String, Object> readRow(ResultSet rs, Set<Column> layout) throws SQLException {
+        HashMap<String, Object> dataSet = new HashMap<String, Object>(layout.size() * 2);
+        for (Column column : layout) {
+            if (column.isList()) {
+                dataSet.put(column.columnName(), this.getList(column.dataType(), rs.getString(column.columnName())));
+            }
+            else {
+                dataSet.put(column.columnName(), rs.getObject(column.columnName()));
+            }
+        }
+        return dataSet;
+    }
+
     @Override
     public void updateSchema(DataAccess schemaTemplate) throws DatabaseWriteException {
         Connection conn = JdbcConnectionManager.getConnection();
@@ -389,6 +505,7 @@ public class MySQLDatabase extends Database {
                     this.insertColumn(schemaTemplate.getName(), entry.getValue());
                 }
             }
+            this.updateIndexes(conn, schemaTemplate);
         }
         catch (SQLException sqle) {
             throw new DatabaseWriteException("Error updating MySQL schema: " + sqle.getMessage());
@@ -397,10 +514,103 @@ public class MySQLDatabase extends Database {
             log.error("Error updating MySQL schema." + dtie.getMessage(), dtie);
         }
         finally {
+            uniqueKeys.remove(schemaTemplate.getName()); // Indexes may have changed
             close(conn, ps, rs);
         }
     }
 
+    /**
+     * Creates the declared indexes of the table that do not exist yet, recreates changed ones
+     * and drops indexes that were created by us but are no longer declared.
+     * Indexes that cannot be created, like unique indexes over duplicate values, are logged and skipped.
+     *
+     * @param conn
+     *         the connection to use
+     * @param data
+     *         the DataAccess declaring the indexes
+     *
+     * @throws SQLException
+     *         when the existing indexes could not be read
+     * @throws DatabaseTableInconsistencyException
+     *         when an index refers to a column that does not exist
+     */
+    private void updateIndexes(Connection conn, DataAccess data) throws SQLException, DatabaseTableInconsistencyException {
+        HashMap<String, List<String>> existing = new HashMap<String, List<String>>();
+        HashSet<String> existingUnique = new HashSet<String>();
+        ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, data.getName(), false, false);
+        try {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (name == null || column == null || !name.startsWith(INDEX_PREFIX)) {
+                    continue;
+                }
+                if (!existing.containsKey(name)) {
+                    existing.put(name, new ArrayList<String>());
+                }
+                existing.get(name).add(column); // Reported in column order
+                if (!rs.getBoolean("NON_UNIQUE")) {
+                    existingUnique.add(name);
+                }
+            }
+        }
+        finally {
+            rs.close();
+        }
+
+        HashMap<String, TableIndex> declared = new HashMap<String, TableIndex>();
+        for (TableIndex index : data.getIndexes()) {
+            declared.put(INDEX_PREFIX + index.getName(), index);
+        }
+        for (String name : new ArrayList<String>(existing.keySet())) {
+            TableIndex wanted = declared.get(name);
+            if (wanted == null || !wanted.getColumns().equals(existing.get(name)) || wanted.isUnique() != existingUnique.contains(name)) {
+                executeIndexStatement(conn, "DROP INDEX `" + name + "` ON `" + data.getName() + "`");
+                existing.remove(name);
+            }
+        }
+        for (Map.Entry<String, TableIndex> entry : declared.entrySet()) {
+            if (existing.containsKey(entry.getKey())) {
+                continue;
+            }
+            String name = entry.getKey();
+            TableIndex index = entry.getValue();
+            StringBuilder columns = new StringBuilder();
+            for (String columnName : index.getColumns()) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append("`").append(columnName).append("`");
+                Column column = data.getColumnForName(columnName);
+                if (column != null && column.dataType() == Column.DataType.STRING) {
+                    columns.append("(").append(STRING_INDEX_LENGTH).append(")"); // TEXT columns need a prefix length
+                }
+            }
+            executeIndexStatement(conn, "CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX `" + name + "` ON `" + data.getName() + "` (" + columns.toString() + ")");
+        }
+    }
+
+    private void executeIndexStatement(Connection conn, String statement) {
+        Statement st = null;
+        try {
+            st = conn.createStatement();
+            st.execute(statement);
+        }
+        catch (SQLException ex) {
+            log.warn("Failed to update MySQL index (" + statement + "): " + ex.getMessage());
+        }
+        finally {
+            if (st != null) {
+                try {
+                    st.close();
+                }
+                catch (SQLException ex) {
+                    log.error(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
     public void createTable(DataAccess data) throws DatabaseWriteException {
         Connection conn = JdbcConnectionManager.getConnection();
         PreparedStatement ps = null;
@@ -481,54 +691,31 @@ public class MySQLDatabase extends Database {
     }
 
     public boolean doesEntryExist(DataAccess data) throws DatabaseWriteException {
-        Connection conn = JdbcConnectionManager.getConnection();
+        Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         boolean toRet = false;
 
         try {
-            StringBuilder sb = new StringBuilder();
             HashMap<Column, Object> columns = data.toDatabaseEntryList();
-            Iterator<Column> it = columns.keySet().iterator();
-
-            Column column;
-            while (it.hasNext()) {
-                column = it.next();
-                if (!column.autoIncrement()) {
-                    Object o = columns.get(column);
-                    if (o == null) {
-                        continue;
-                    }
-                    if (sb.length() > 0) {
-                        sb.append(" AND `").append(column.columnName()).append("`");
-                    }
-                    else {
-                        sb.append("`").append(column.columnName()).append("`");
-                    }
-                    sb.append(" = ?");
-                    // if (it.hasNext()) {
-                    // sb.append("' = ? AND ");
-                    // } else {
-                    // sb.append("' = ?");
-                    // }
+            ArrayList<Column> filterColumns = new ArrayList<Column>();
+            ArrayList<String> filterNames = new ArrayList<String>();
+            for (Column column : columns.keySet()) {
+                if (!column.autoIncrement() && columns.get(column) != null) {
+                    filterColumns.add(column);
+                    filterNames.add(column.columnName());
                 }
             }
-            ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "` WHERE " + sb.toString());
-            it = columns.keySet().iterator();
+            if (filterColumns.isEmpty()) {
+                return false;
+            }
+            conn = JdbcConnectionManager.getConnection();
+            ps = conn.prepareStatement(getFilteredStatement(data, "SELECT 1 FROM", filterNames, true));
 
             int index = 1;
-
-            while (it.hasNext()) {
-                column = it.next();
-                if (!column.autoIncrement()) {
-                    Object o = columns.get(column);
-                    if (o == null) {
-                        continue;
-                    }
-                    setToStatement(index, columns.get(column), ps, column);
-//                    ps.setObject(index, this.convert(columns.get(column)));
-                    index++;
-                }
+            for (Column column : filterColumns) {
+                setToStatement(index, columns.get(column), ps, column);
+                index++;
             }
             rs = ps.executeQuery();
             if (rs != null) {
@@ -554,41 +741,9 @@ public class MySQLDatabase extends Database {
         ResultSet toRet;
 
         try {
-
-            if (filters.size() > 0) {
-                StringBuilder sb = new StringBuilder();
-                Object[] fieldNames = filters.keySet().toArray();
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    sb.append("`").append(fieldNames[i]);
-                    if (i + 1 < fieldNames.length) {
-                        sb.append("`=? AND ");
-                    }
-                    else {
-                        sb.append("`=?");
-                    }
-                }
-                if (limitOne) {
-                    sb.append(" LIMIT 1");
-                }
-                ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "` WHERE " + sb.toString());
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    String fieldName = String.valueOf(fieldNames[i]);
-                    Column col = data.getColumnForName(fieldName);
-                    if (col == null) {
-                        throw new DatabaseReadException("Error fetching MySQL ResultSet in " + data.getName() + ". Column " + fieldNames[i] + " does not exist!");
-                    }
-                    setToStatement(i + 1, filters.get(fieldName), ps, col);
-                }
-
-            }
-            else {
-                if (limitOne) {
-                    ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "` LIMIT 1");
-                }
-                else {
-                    ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "`");
-                }
-            }
+            List<String> filterNames = getSortedKeys(filters);
+            ps = conn.prepareStatement(getFilteredStatement(data, "SELECT * FROM", filterNames, limitOne));
+            setFilterValues(ps, data, filterNames, filters, 1);
             toRet = ps.executeQuery();
         }
         catch (SQLException ex) {
@@ -601,6 +756,301 @@ public class MySQLDatabase extends Database {
         return toRet;
     }
 
+    /**
+     * Builds the INSERT statement for the given columns, auto increment columns are left out
+     *
+     * @param tableName
+     *         the table to insert into
+     * @param columns
+     *         the columns, in the order the values are set
+     *
+     * @return the SQL statement
+     */
+    private String getInsertStatement(String tableName, Iterable<Column> columns) {
+        StringBuilder fields = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Column column : columns) {
+            if (!column.autoIncrement()) {
+                fields.append("`").append(column.columnName()).append("`").append(",");
+                values.append("?").append(",");
+            }
+        }
+        if (fields.length() > 0) {
+            fields.deleteCharAt(fields.length() - 1);
+        }
+        if (values.length() > 0) {
+            values.deleteCharAt(values.length() - 1);
+        }
+        return "INSERT INTO `" + tableName + "` (" + fields.toString() + ") VALUES(" + values.toString() + ")";
+    }
+
+    /**
+     * Gets a statement of the form {@code <operation> `table` WHERE `filter`=? AND ...}.
+     * The statements are cached per table, operation and filter columns.
+     *
+     * @param data
+     *         the DataAccess of the table
+     * @param operation
+     *         the start of the statement, like {@code SELECT * FROM}
+     * @param filterNames
+     *         the columns to filter by, sorted
+     * @param limitOne
+     *         {@code true} to append {@code LIMIT 1}
+     *
+     * @return the SQL statement
+     */
+    private String getFilteredStatement(DataAccess data, String operation, List<String> filterNames, boolean limitOne) {
+        StatementKey key = new StatementKey(data.getName(), "", limitOne ? operation + " LIMIT 1" : operation, filterNames);
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder sb = new StringBuilder(operation).append(" `").append(data.getName()).append("`");
+        for (int i = 0; i < filterNames.size(); i++) {
+            sb.append(i == 0 ? " WHERE `" : " AND `").append(filterNames.get(i)).append("`=?");
+        }
+        if (limitOne) {
+            sb.append(" LIMIT 1");
+        }
+        statement = sb.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Gets the statement for {@link #loadPage(DataAccess, List, Map, int, int)}. After the filter values
+     * the id to start after and the page size are set. The statements are cached like the other statements.
+     *
+     * @param data
+     *         the DataAccess of the table
+     * @param filterNames
+     *         the columns to filter by, sorted
+     *
+     * @return the SQL statement
+     */
+    private String getPageStatement(DataAccess data, List<String> filterNames) {
+        StatementKey key = new StatementKey(data.getName(), "", "PAGE", filterNames);
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder sb = new StringBuilder("SELECT * FROM `").append(data.getName()).append("` WHERE ");
+        for (String filterName : filterNames) {
+            sb.append("`").append(filterName).append("`=? AND ");
+        }
+        sb.append("`id`>? ORDER BY `id` LIMIT ?");
+        statement = sb.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Gets the filter names in a stable order, so equal filters use the same cached statement
+     *
+     * @param filters
+     *         FieldName->Value map
+     *
+     * @return the sorted field names
+     */
+    private List<String> getSortedKeys(Map<String, Object> filters) {
+        if (filters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> names = new ArrayList<String>(filters.keySet());
+        if (names.size() > 1) {
+            Collections.sort(names);
+        }
+        return names;
+    }
+
+    /**
+     * Gets the UPDATE statement for the given columns, auto increment columns are not updated.
+     * Like {@link #load(DataAccess, Map)} only the first matching row is updated.
+     * The statements are cached per table, columns and filter columns.
+     *
+     * @param data
+     *         the DataAccess to update
+     * @param columns
+     *         the columns to set, in the order the values are set
+     * @param filterNames
+     *         the columns to filter by, in the order the values are set after the column values
+     *
+     * @return the SQL statement
+     */
+    private String getUpdateStatement(DataAccess data, Iterable<Column> columns, List<String> filterNames) throws DatabaseTableInconsistencyException {
+        StatementKey key = new StatementKey(data.getName(), data.getColumnSignature(), "UPDATE", filterNames);
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder sb = new StringBuilder("UPDATE `").append(data.getName()).append("` SET ");
+        boolean first = true;
+        for (Column column : columns) {
+            if (!column.autoIncrement()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append("`").append(column.columnName()).append("`=?");
+                first = false;
+            }
+        }
+        for (int i = 0; i < filterNames.size(); i++) {
+            sb.append(i == 0 ? " WHERE `" : " AND `").append(filterNames.get(i)).append("`=?");
+        }
+        sb.append(" LIMIT 1");
+        statement = sb.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Gets the INSERT ... ON DUPLICATE KEY UPDATE statement for the given columns,
+     * auto increment columns are left out. The statements are cached per table and columns.
+     *
+     * @param data
+     *         the DataAccess to upsert
+     * @param columns
+     *         the columns, in the order the values are set
+     *
+     * @return the SQL statement
+     */
+    private String getUpsertStatement(DataAccess data, Iterable<Column> columns) throws DatabaseTableInconsistencyException {
+        StatementKey key = new StatementKey(data.getName(), data.getColumnSignature(), "UPSERT", Collections.<String>emptyList());
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder updates = new StringBuilder();
+        for (Column column : columns) {
+            if (!column.autoIncrement()) {
+                if (updates.length() > 0) {
+                    updates.append(", ");
+                }
+                updates.append("`").append(column.columnName()).append("`=VALUES(`").append(column.columnName()).append("`)");
+            }
+        }
+        statement = getInsertStatement(data.getName(), columns) + " ON DUPLICATE KEY UPDATE " + updates.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Sets the values of all but the auto increment columns to a prepared statement
+     *
+     * @param ps
+     *         the prepared statement
+     * @param columns
+     *         the columns and their values
+     * @param index
+     *         the index of the first parameter to set
+     *
+     * @return the index of the next parameter
+     *
+     * @throws DatabaseWriteException
+     *         when the value could not be set
+     */
+    private int setColumnValues(PreparedStatement ps, HashMap<Column, Object> columns, int index) throws DatabaseWriteException {
+        for (Column c : columns.keySet()) {
+            if (!c.autoIncrement()) {
+                setToStatement(index, columns.get(c), ps, c);
+                index++;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sets the filter values to a prepared statement
+     *
+     * @param ps
+     *         the prepared statement
+     * @param data
+     *         the DataAccess to look up the filter columns in
+     * @param filterNames
+     *         the filter columns, in order
+     * @param filters
+     *         FieldName->Value map of the filters
+     * @param index
+     *         the index of the first parameter to set
+     *
+     * @return the index of the next parameter
+     *
+     * @throws DatabaseWriteException
+     *         when a filter column does not exist or the value could not be set
+     */
+    private int setFilterValues(PreparedStatement ps, DataAccess data, List<String> filterNames, Map<String, Object> filters, int index) throws DatabaseWriteException {
+        for (String filterName : filterNames) {
+            Column col = data.getColumnForName(filterName);
+            if (col == null) {
+                throw new DatabaseWriteException("Error filtering MySQL rows in " + data.getName() + ". Column " + filterName + " does not exist!");
+            }
+            setToStatement(index, filters.get(filterName), ps, col);
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Checks if the given columns are exactly the columns of a unique index of the table.
+     * The unique indexes are read once per table from the database meta data.
+     * Indexes over STRING columns are left out, they only cover a prefix of the TEXT values and are not unique for whole rows.
+     *
+     * @param conn
+     *         the connection to use
+     * @param data
+     *         the DataAccess of the table
+     * @param columnNames
+     *         the columns
+     *
+     * @return {@code true} if there is such unique index
+     *
+     * @throws SQLException
+     *         when the meta data could not be read
+     */
+    private boolean isUniqueKey(Connection conn, DataAccess data, Set<String> columnNames) throws SQLException {
+        if (columnNames.isEmpty()) {
+            return false;
+        }
+        String tableName = data.getName();
+        Set<Set<String>> keys = uniqueKeys.get(tableName);
+        if (keys == null) {
+            HashMap<String, Set<String>> indexes = new HashMap<String, Set<String>>();
+            ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, tableName, true, false);
+            try {
+                while (rs.next()) {
+                    String index = rs.getString("INDEX_NAME");
+                    String column = rs.getString("COLUMN_NAME");
+                    if (index == null || column == null) {
+                        continue;
+                    }
+                    if (!indexes.containsKey(index)) {
+                        indexes.put(index, new HashSet<String>());
+                    }
+                    indexes.get(index).add(column);
+                }
+            }
+            finally {
+                rs.close();
+            }
+            keys = new HashSet<Set<String>>();
+            for (Set<String> index : indexes.values()) {
+                boolean prefix = false;
+                for (String columnName : index) {
+                    Column column = data.getColumnForName(columnName);
+                    if (column != null && column.dataType() == Column.DataType.STRING) {
+                        prefix = true;
+                        break;
+                    }
+                }
+                if (!prefix) {
+                    keys.add(index);
+                }
+            }
+            uniqueKeys.put(tableName, keys);
+        }
+        return keys.contains(columnNames);
+    }
+
     public List<String> getColumnNames(DataAccess data) {
         Statement statement = null;
         ResultSet resultSet = null;
@@ -875,4 +1325,56 @@ public class MySQLDatabase extends Database {
         }
 
     }
+
+    private void rollback(Connection c) {
+        try {
+            c.rollback();
+        }
+        catch (SQLException e) {
+            log.error("Failed to roll back MySQL transaction", e);
+        }
+    }
+
+    private void resetAutoCommit(Connection c) {
+        try {
+            c.setAutoCommit(true);
+        }
+        catch (SQLException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /** Cache key of a generated SQL statement, made of strings only so it does not keep plugin classes loaded */
+    private static final class StatementKey {
+        private final String table;
+        private final String columns; // Column signature for statements listing the columns, empty otherwise
+        private final String operation;
+        private final List<String> filterNames;
+        private final int hash;
+
+        private StatementKey(String table, String columns, String operation, List<String> filterNames) {
+            this.table = table;
+            this.columns = columns;
+            this.operation = operation;
+            this.filterNames = filterNames;
+            this.hash = 31 * (31 * (31 * table.hashCode() + columns.hashCode()) + operation.hashCode()) + filterNames.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof StatementKey)) {
+                return false;
+            }
+            StatementKey other = (StatementKey) obj;
+            return hash == other.hash && table.equals(other.table) && columns.equals(other.columns) && operation.equals(other.operation) && filterNames.equals(other.filterNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -3,8 +3,11 @@ package net.canarymod.database.sqlite;
 import net.canarymod.database.Column;
 import net.canarymod.database.Column.DataType;
 import net.canarymod.database.DataAccess;
+import net.canarymod.database.DataAccessCallback;
 import net.canarymod.database.Database;
 import net.canarymod.database.JdbcConnectionManager;
+import net.canarymod.database.TableIndex;
+import net.canarymod.database.Transaction;
 import net.canarymod.database.exceptions.DatabaseAccessException;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseTableInconsistencyException;
@@ -19,11 +22,15 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.logging.log4j.LogManager;
 
@@ -39,6 +46,8 @@ public class SQLiteDatabase extends Database {
     private static SQLiteDatabase instance;
     private final String LIST_REGEX = "\u00B6";
     private final String NULL_STRING = "NULL";
+    private static final String INDEX_PREFIX = "canary_"; // Index names are per database in SQLite, the table name follows
+    private final ConcurrentHashMap<StatementKey, String> statementCache = new ConcurrentHashMap<StatementKey, String>();
 
     private SQLiteDatabase() {
         File path = new File("db/");
@@ -66,457 +75,954 @@ public class SQLiteDatabase extends Database {
 
     @Override
     public void insert(DataAccess data) throws DatabaseWriteException {
-        if (doesEntryExist(data)) {
-            return;
-        }
-        PreparedStatement ps = null;
-
+        JdbcConnectionManager.lockConnection();
         try {
-            StringBuilder fields = new StringBuilder();
-            StringBuilder values = new StringBuilder();
-            HashMap<Column, Object> columns = data.toDatabaseEntryList();
-            Iterator<Column> it = columns.keySet().iterator();
+            if (doesEntryExist(data)) {
+                return;
+            }
+            PreparedStatement ps = null;
 
-            Column column;
-            while (it.hasNext()) {
-                column = it.next();
-                if (!column.autoIncrement()) {
-                    fields.append("`").append(column.columnName()).append("`").append(",");
-                    values.append("?").append(",");
+            try {
+                HashMap<Column, Object> columns = data.toDatabaseEntryList();
+                ps = JdbcConnectionManager.getConnection().prepareStatement(getInsertStatement(data.getName(), columns.keySet()));
+
+                int i = 1;
+                for (Column c : columns.keySet()) {
+                    if (!c.autoIncrement()) {
+                        if (c.isList()) {
+                            ps.setString(i, getString((List<?>) columns.get(c)));
+                        }
+                        ps.setObject(i, convert(columns.get(c)));
+                        i++;
+                    }
                 }
+
+                if (ps.executeUpdate() == 0) {
+                    throw new DatabaseWriteException("Error inserting SQLite: no rows updated!");
+                }
+            }
+            catch (SQLException ex) {
+                log.error(ex.getMessage(), ex);
             }
-            if (fields.length() > 0) {
-                fields.deleteCharAt(fields.length() - 1);
+            catch (DatabaseTableInconsistencyException dtie) {
+                log.error(dtie.getMessage(), dtie);
             }
-            if (values.length() > 0) {
-                values.deleteCharAt(values.length() - 1);
+            finally {
+                close(null, ps, null);
             }
-            String state = "INSERT INTO `" + data.getName() + "` (" + fields.toString() + ") VALUES(" + values.toString() + ")";
-            ps = JdbcConnectionManager.getConnection().prepareStatement(state);
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
+        }
+    }
+
+    @Override
+    public void insertBatch(List<DataAccess> data) throws DatabaseWriteException {
+        JdbcConnectionManager.lockConnection();
+        try {
+            if (data.isEmpty()) {
+                return;
+            }
+            // The SQLite connection is shared, it is not closed here
+            Connection conn = JdbcConnectionManager.getConnection();
+            PreparedStatement ps = null;
 
-            int i = 1;
-            for (Column c : columns.keySet()) {
-                if (!c.autoIncrement()) {
-                    if (c.isList()) {
-                        ps.setString(i, getString((List<?>) columns.get(c)));
+            try {
+                conn.setAutoCommit(false);
+                String sql = null;
+                for (DataAccess da : data) {
+                    HashMap<Column, Object> columns = da.toDatabaseEntryList();
+                    String statement = getInsertStatement(da.getName(), columns.keySet());
+                    if (!statement.equals(sql)) {
+                        if (ps != null) {
+                            ps.executeBatch();
+                            ps.close();
+                        }
+                        ps = conn.prepareStatement(statement);
+                        sql = statement;
+                    }
+                    int i = 1;
+                    for (Column c : columns.keySet()) {
+                        if (!c.autoIncrement()) {
+                            setValue(i, columns.get(c), ps, c);
+                            i++;
+                        }
                     }
-                    ps.setObject(i, convert(columns.get(c)));
-                    i++;
+                    ps.addBatch();
+                }
+                if (ps != null) {
+                    ps.executeBatch();
                 }
+                conn.commit();
             }
-
-            if (ps.executeUpdate() == 0) {
-                throw new DatabaseWriteException("Error inserting SQLite: no rows updated!");
+            catch (SQLException ex) {
+                rollback(conn);
+                throw new DatabaseWriteException("Error inserting SQLite batch: " + ex.getMessage(), ex);
+            }
+            catch (DatabaseTableInconsistencyException dtie) {
+                rollback(conn);
+                throw new DatabaseWriteException("Error inserting SQLite batch: " + dtie.getMessage(), dtie);
+            }
+            finally {
+                resetAutoCommit(conn);
+                close(null, ps, null);
             }
-        }
-        catch (SQLException ex) {
-            log.error(ex.getMessage(), ex);
-        }
-        catch (DatabaseTableInconsistencyException dtie) {
-            log.error(dtie.getMessage(), dtie);
         }
         finally {
-            close(null, ps, null);
+            JdbcConnectionManager.unlockConnection();
         }
-
     }
 
     @Override
-    public void update(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
-        if (!doesEntryExist(data)) {
-            return;
-        }
-        Connection conn = JdbcConnectionManager.getConnection();
-        ResultSet rs = null;
-
+    public void updateBatch(List<DataAccess> data, List<Map<String, Object>> filters) throws DatabaseWriteException {
+        JdbcConnectionManager.lockConnection();
         try {
-            rs = this.getResultSet(conn, data, filters, true);
-            if (rs != null) {
-                if (rs.next()) {
-                    HashMap<Column, Object> columns = data.toDatabaseEntryList();
-                    Iterator<Column> it = columns.keySet().iterator();
-                    Column column;
-                    while (it.hasNext()) {
-                        column = it.next();
-                        if (column.isList()) {
-                            rs.updateObject(column.columnName(), this.getString((List<?>) columns.get(column)));
+            if (data.isEmpty()) {
+                return;
+            }
+            Connection conn = JdbcConnectionManager.getConnection();
+            PreparedStatement ps = null;
+
+            try {
+                conn.setAutoCommit(false);
+                String sql = null;
+                for (int index = 0; index < data.size(); index++) {
+                    DataAccess da = data.get(index);
+                    HashMap<Column, Object> columns = da.toDatabaseEntryList();
+                    List<String> filterNames = getSortedKeys(filters.get(index));
+                    String statement = getUpdateStatement(da, columns.keySet(), filterNames);
+                    if (!statement.equals(sql)) {
+                        if (ps != null) {
+                            ps.executeBatch();
+                            ps.close();
                         }
-                        else {
-                            rs.updateObject(column.columnName(), columns.get(column));
+                        ps = conn.prepareStatement(statement);
+                        sql = statement;
+                    }
+                    int i = 1;
+                    for (Column c : columns.keySet()) {
+                        if (!c.autoIncrement()) {
+                            setValue(i, columns.get(c), ps, c);
+                            i++;
                         }
                     }
-                    rs.updateRow();
+                    for (String filterName : filterNames) {
+                        ps.setObject(i, convert(filters.get(index).get(filterName)));
+                        i++;
+                    }
+                    ps.addBatch();
                 }
-                else {
-                    throw new DatabaseWriteException("Error updating DataAccess to SQLite, no such entry: " + data.toString());
+                if (ps != null) {
+                    ps.executeBatch();
                 }
+                conn.commit();
+            }
+            catch (SQLException ex) {
+                rollback(conn);
+                throw new DatabaseWriteException("Error updating SQLite batch: " + ex.getMessage(), ex);
+            }
+            catch (DatabaseTableInconsistencyException dtie) {
+                rollback(conn);
+                throw new DatabaseWriteException("Error updating SQLite batch: " + dtie.getMessage(), dtie);
+            }
+            finally {
+                resetAutoCommit(conn);
+                close(null, ps, null);
             }
-        }
-        catch (SQLException ex) {
-            log.error(ex.getMessage(), ex);
-        }
-        catch (DatabaseTableInconsistencyException dtie) {
-            log.error(dtie.getMessage(), dtie);
-        }
-        catch (DatabaseReadException e) {
-            log.error(e.getMessage(), e);
         }
         finally {
-            PreparedStatement st = null;
+            JdbcConnectionManager.unlockConnection();
+        }
+    }
+
+    @Override
+    public void transaction(Transaction transaction) throws DatabaseWriteException {
+        JdbcConnectionManager.transaction(transaction);
+    }
+
+    @Override
+    public void update(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
+        JdbcConnectionManager.lockConnection();
+        try {
+            Connection conn = JdbcConnectionManager.getConnection();
+            ResultSet rs = null;
+
             try {
-                st = rs != null && rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
+                rs = this.getResultSet(conn, data, filters, true);
+                if (rs != null) {
+                    if (rs.next()) {
+                        HashMap<Column, Object> columns = data.toDatabaseEntryList();
+                        Iterator<Column> it = columns.keySet().iterator();
+                        Column column;
+                        while (it.hasNext()) {
+                            column = it.next();
+                            if (column.isList()) {
+                                rs.updateObject(column.columnName(), this.getString((List<?>) columns.get(column)));
+                            }
+                            else {
+                                rs.updateObject(column.columnName(), columns.get(column));
+                            }
+                        }
+                        rs.updateRow();
+                    }
+                    // No such entry: nothing to update, as in updateBatch and MySQL
+                }
             }
-            catch (SQLException e) {
+            catch (SQLException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+            catch (DatabaseTableInconsistencyException dtie) {
+                log.error(dtie.getMessage(), dtie);
+            }
+            catch (DatabaseReadException e) {
                 log.error(e.getMessage(), e);
             }
-            close(conn, st, rs);
+            finally {
+                PreparedStatement st = null;
+                try {
+                    st = rs != null && rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
+                }
+                catch (SQLException e) {
+                    log.error(e.getMessage(), e);
+                }
+                close(conn, st, rs);
+            }
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
         }
     }
 
     @Override
     public void remove(DataAccess dataAccess, Map<String, Object> filters) throws DatabaseWriteException {
-        Connection conn = JdbcConnectionManager.getConnection();
+        JdbcConnectionManager.lockConnection();
+        try {
+            Connection conn = JdbcConnectionManager.getConnection();
 
-        this.deleteRows(conn, dataAccess, filters, false);
+            this.deleteRows(conn, dataAccess, filters, false);
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
+        }
     }
 
     @Override
     public void removeAll(DataAccess dataAccess, Map<String, Object> filters) throws DatabaseWriteException {
-        Connection conn = JdbcConnectionManager.getConnection();
+        JdbcConnectionManager.lockConnection();
+        try {
+            Connection conn = JdbcConnectionManager.getConnection();
 
-        this.deleteRows(conn, dataAccess, filters, true);
+            this.deleteRows(conn, dataAccess, filters, true);
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
+        }
     }
 
     @Override
     public void load(DataAccess dataset, Map<String, Object> filters) throws DatabaseReadException {
-        ResultSet rs = null;
-        HashMap<String, Object> dataSet = new HashMap<String, Object>();
+        JdbcConnectionManager.lockConnection();
         try {
-            rs = this.getResultSet(JdbcConnectionManager.getConnection(), dataset, filters, true);
-            if (rs != null) {
-                if (rs.next()) {
-                    for (Column column : dataset.getTableLayout()) {
-                        if (column.isList()) {
-                            dataSet.put(column.columnName(), getList(column.dataType(), rs.getString(column.columnName())));
-                        }
-                        else if (column.dataType() == DataType.BOOLEAN) {
-                            dataSet.put(column.columnName(), rs.getBoolean(column.columnName()));
-                        }
-                        else {
-                            dataSet.put(column.columnName(), rs.getObject(column.columnName()));
+            ResultSet rs = null;
+            HashMap<String, Object> dataSet = new HashMap<String, Object>();
+            try {
+                rs = this.getResultSet(JdbcConnectionManager.getConnection(), dataset, filters, true);
+                if (rs != null) {
+                    if (rs.next()) {
+                        for (Column column : dataset.getTableLayout()) {
+                            if (column.isList()) {
+                                dataSet.put(column.columnName(), getList(column.dataType(), rs.getString(column.columnName())));
+                            }
+                            else if (column.dataType() == DataType.BOOLEAN) {
+                                dataSet.put(column.columnName(), rs.getBoolean(column.columnName()));
+                            }
+                            else {
+                                dataSet.put(column.columnName(), rs.getObject(column.columnName()));
+                            }
                         }
                     }
                 }
             }
-        }
-        catch (DatabaseReadException dre) {
-            log.error(dre.getMessage(), dre);
-        }
-        catch (SQLException ex) {
-            log.error(ex.getMessage(), ex);
-        }
-        catch (DatabaseTableInconsistencyException dtie) {
-            log.error(dtie.getMessage(), dtie);
-        }
-        finally {
-            try {
-                if (rs != null) {
-                    PreparedStatement st = rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
-                    close(null, st, rs);
-                }
+            catch (DatabaseReadException dre) {
+                log.error(dre.getMessage(), dre);
             }
             catch (SQLException ex) {
                 log.error(ex.getMessage(), ex);
             }
-        }
-        try {
-            if (!dataSet.isEmpty()) {
-                dataset.load(dataSet);
+            catch (DatabaseTableInconsistencyException dtie) {
+                log.error(dtie.getMessage(), dtie);
+            }
+            finally {
+                try {
+                    if (rs != null) {
+                        PreparedStatement st = rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
+                        close(null, st, rs);
+                    }
+                }
+                catch (SQLException ex) {
+                    log.error(ex.getMessage(), ex);
+                }
+            }
+            try {
+                if (!dataSet.isEmpty()) {
+                    dataset.load(dataSet);
+                }
+            }
+            catch (DatabaseAccessException ex) {
+                log.error(ex.getMessage(), ex);
             }
         }
-        catch (DatabaseAccessException ex) {
-            log.error(ex.getMessage(), ex);
+        finally {
+            JdbcConnectionManager.unlockConnection();
         }
     }
 
     @Override
     public void loadAll(DataAccess typeTemplate, List<DataAccess> datasets, Map<String, Object> filters) throws DatabaseReadException {
-        ResultSet rs = null;
-        List<HashMap<String, Object>> stuff = new ArrayList<HashMap<String, Object>>();
+        JdbcConnectionManager.lockConnection();
         try {
-            rs = this.getResultSet(JdbcConnectionManager.getConnection(), typeTemplate, filters, false);
-            if (rs != null) {
-                while (rs.next()) {
-                    HashMap<String, Object> dataSet = new HashMap<String, Object>();
-                    for (Column column : typeTemplate.getTableLayout()) {
-                        if (column.isList()) {
-                            dataSet.put(column.columnName(), getList(column.dataType(), rs.getString(column.columnName())));
-                        }
-                        else if (column.dataType() == DataType.BOOLEAN) {
-                            dataSet.put(column.columnName(), rs.getBoolean(column.columnName()));
-                        }
-                        else {
-                            dataSet.put(column.columnName(), rs.getObject(column.columnName()));
-                        }
+            ResultSet rs = null;
+            List<HashMap<String, Object>> stuff = new ArrayList<HashMap<String, Object>>();
+            try {
+                rs = this.getResultSet(JdbcConnectionManager.getConnection(), typeTemplate, filters, false);
+                if (rs != null) {
+                    Set<Column> layout = typeTemplate.getTableLayout();
+                    while (rs.next()) {
+                        stuff.add(readRow(rs, layout));
+                    }
+                }
+
+            }
+            catch (DatabaseReadException dre) {
+                log.error(dre.getMessage(), dre);
+            }
+            catch (SQLException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+            catch (DatabaseTableInconsistencyException dtie) {
+                log.error(dtie.getMessage(), dtie);
+            }
+            finally {
+                try {
+                    if (rs != null) {
+                        PreparedStatement st = rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
+                        close(null, st, rs);
                     }
-                    stuff.add(dataSet);
+                }
+                catch (SQLException ex) {
+                    log.error(ex.getMessage(), ex);
                 }
             }
+            try {
+                for (HashMap<String, Object> temp : stuff) {
+                    DataAccess newData = typeTemplate.getInstance();
+                    newData.load(temp);
+                    datasets.add(newData);
+                }
 
-        }
-        catch (DatabaseReadException dre) {
-            log.error(dre.getMessage(), dre);
-        }
-        catch (SQLException ex) {
-            log.error(ex.getMessage(), ex);
-        }
-        catch (DatabaseTableInconsistencyException dtie) {
-            log.error(dtie.getMessage(), dtie);
+            }
+            catch (DatabaseAccessException dae) {
+                log.error(dae.getMessage(), dae);
+            }
         }
         finally {
+            JdbcConnectionManager.unlockConnection();
+        }
+    }
+
+    @Override
+    public void loadEach(DataAccess typeTemplate, Map<String, Object> filters, DataAccessCallback callback) throws DatabaseReadException {
+        // Every page takes the connection lock on its own, other threads get the connection between pages and callbacks
+        loadEachByPage(typeTemplate, filters, callback);
+    }
+
+    @Override
+    public void loadPage(DataAccess typeTemplate, List<DataAccess> datasets, Map<String, Object> filters, int afterId, int limit) throws DatabaseReadException {
+        JdbcConnectionManager.lockConnection();
+        try {
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            List<HashMap<String, Object>> stuff = new ArrayList<HashMap<String, Object>>(limit);
             try {
-                if (rs != null) {
-                    PreparedStatement st = rs.getStatement() instanceof PreparedStatement ? (PreparedStatement) rs.getStatement() : null;
-                    close(null, st, rs);
+                List<String> filterNames = getSortedKeys(filters);
+                ps = JdbcConnectionManager.getConnection().prepareStatement(getPageStatement(typeTemplate, filterNames));
+                ps.setFetchSize(limit);
+                setFilterValues(ps, typeTemplate, filterNames, filters);
+                ps.setInt(filterNames.size() + 1, afterId);
+                ps.setInt(filterNames.size() + 2, limit);
+                rs = ps.executeQuery();
+                Set<Column> layout = typeTemplate.getTableLayout();
+                while (rs.next()) {
+                    stuff.add(readRow(rs, layout));
                 }
             }
             catch (SQLException ex) {
-                log.error(ex.getMessage(), ex);
+                throw new DatabaseReadException("Error loading SQLite page of " + typeTemplate.getName() + ": " + ex.getMessage(), ex);
             }
-        }
-        try {
-            for (HashMap<String, Object> temp : stuff) {
-                DataAccess newData = typeTemplate.getInstance();
-                newData.load(temp);
-                datasets.add(newData);
+            catch (DatabaseWriteException dwe) {
+                throw new DatabaseReadException("Error loading SQLite page of " + typeTemplate.getName() + ": " + dwe.getMessage(), dwe);
+            }
+            catch (DatabaseTableInconsistencyException dtie) {
+                throw new DatabaseReadException("Error loading SQLite page of " + typeTemplate.getName() + ": " + dtie.getMessage(), dtie);
+            }
+            finally {
+                close(null, ps, rs);
+            }
+            try {
+                for (HashMap<String, Object> temp : stuff) {
+                    DataAccess newData = typeTemplate.getInstance();
+                    newData.load(temp);
+                    datasets.add(newData);
+                }
+            }
+            catch (DatabaseAccessException dae) {
+                throw new DatabaseReadException(dae.getMessage(), dae);
             }
-
         }
-        catch (DatabaseAccessException dae) {
-            log.error(dae.getMessage(), dae);
+        finally {
+            JdbcConnectionManager.unlockConnection();
         }
     }
 
+    /**
+     * Reads the current row of a ResultSet
+     *
+     * @param rs
+     *         the ResultSet
+     * @param layout
+     *         the columns to read
+     *
+     * @return ColumnName->Value map of the row
+     *
+     * @throws SQLException
+     *         when a column could not be read
+     */
+    private HashMap<String, Object> readRow(ResultSet rs, Set<Column> layout) throws SQLException {
+        HashMap<String, Object> dataSet = new HashMap<String, Object>(layout.size() * 2);
+        for (Column column : layout) {
+            if (column.isList()) {
+                dataSet.put(column.columnName(), getList(column.dataType(), rs.getString(column.columnName())));
+            }
+            else if (column.dataType() == DataType.BOOLEAN) {
+                dataSet.put(column.columnName(), rs.getBoolean(column.columnName()));
+            }
+            else {
+                dataSet.put(column.columnName(), rs.getObject(column.columnName()));
+            }
+        }
+        return dataSet;
+    }
+
     @Override
     public void updateSchema(DataAccess schemaTemplate) throws DatabaseWriteException {
-        ResultSet rs = null;
-
+        JdbcConnectionManager.lockConnection();
         try {
-            // First check if the table exists, if it doesn't we'll skip the rest
-            // of this method since we're creating it fresh.
-            DatabaseMetaData metadata = JdbcConnectionManager.getConnection().getMetaData();
-            rs = metadata.getTables(null, null, schemaTemplate.getName(), null);
-
-            boolean hasNext = rs.next();
-            rs.close(); // Close here; otherwise we can't drop stuff.
+            ResultSet rs = null;
 
-            if (!hasNext) {
-                createTable(schemaTemplate);
-            }
-            else {
+            try {
+                // First check if the table exists, if it doesn't we'll skip the rest
+                // of this method since we're creating it fresh.
+                DatabaseMetaData metadata = JdbcConnectionManager.getConnection().getMetaData();
+                rs = metadata.getTables(null, null, schemaTemplate.getName(), null);
 
-                LinkedList<String> toRemove = new LinkedList<String>();
-                HashMap<String, Column> toAdd = new HashMap<String, Column>();
-                Iterator<Column> it = schemaTemplate.getTableLayout().iterator();
+                boolean hasNext = rs.next();
+                rs.close(); // Close here; otherwise we can't drop stuff.
 
-                Column column;
-                while (it.hasNext()) {
-                    column = it.next();
-                    toAdd.put(column.columnName(), column);
+                if (!hasNext) {
+                    createTable(schemaTemplate);
                 }
+                else {
 
-                for (String col : getColumnNames(schemaTemplate)) {
-                    if (!toAdd.containsKey(col)) {
-                        toRemove.add(col);
+                    LinkedList<String> toRemove = new LinkedList<String>();
+                    HashMap<String, Column> toAdd = new HashMap<String, Column>();
+                    Iterator<Column> it = schemaTemplate.getTableLayout().iterator();
+
+                    Column column;
+                    while (it.hasNext()) {
+                        column = it.next();
+                        toAdd.put(column.columnName(), column);
                     }
-                    else {
-                        toAdd.remove(col);
+
+                    for (String col : getColumnNames(schemaTemplate)) {
+                        if (!toAdd.containsKey(col)) {
+                            toRemove.add(col);
+                        }
+                        else {
+                            toAdd.remove(col);
+                        }
+                    }
+
+                    if (!toRemove.isEmpty()) {
+                        List<String> columnNames = getColumnNames(schemaTemplate);
+                        columnNames.removeAll(toRemove);
+                        retainColumns(schemaTemplate, columnNames);
+                    }
+                    for (Map.Entry<String, Column> entry : toAdd.entrySet()) {
+                        insertColumn(schemaTemplate.getName(), entry.getValue());
                     }
                 }
+                updateIndexes(JdbcConnectionManager.getConnection(), schemaTemplate);
+            }
+            catch (SQLException sqle) {
+                throw new DatabaseWriteException("Error updating SQLite schema: " + sqle.getMessage(), sqle);
+            }
+            catch (DatabaseTableInconsistencyException dtie) {
+                log.error("Error updating SQLite schema." + dtie.getMessage(), dtie);
+            }
+            finally {
+                close(null, null, rs);
+            }
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
+        }
+    }
 
-                if (!toRemove.isEmpty()) {
-                    List<String> columnNames = getColumnNames(schemaTemplate);
-                    columnNames.removeAll(toRemove);
-                    retainColumns(schemaTemplate, columnNames);
+    /**
+     * Creates the declared indexes of the table that do not exist yet, recreates changed ones
+     * and drops indexes that were created by us but are no longer declared.
+     * Indexes that cannot be created, like unique indexes over duplicate values, are logged and skipped.
+     *
+     * @param conn
+     *         the connection to use
+     * @param data
+     *         the DataAccess declaring the indexes
+     *
+     * @throws SQLException
+     *         when the existing indexes could not be read
+     * @throws DatabaseTableInconsistencyException
+     *         when an index refers to a column that does not exist
+     */
+    private void updateIndexes(Connection conn, DataAccess data) throws SQLException, DatabaseTableInconsistencyException {
+        HashMap<String, List<String>> existing = new HashMap<String, List<String>>();
+        HashSet<String> existingUnique = new HashSet<String>();
+        ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, data.getName(), false, false);
+        try {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (name == null || column == null || !name.startsWith(INDEX_PREFIX + data.getName() + "_")) {
+                    continue;
+                }
+                if (!existing.containsKey(name)) {
+                    existing.put(name, new ArrayList<String>());
                 }
-                for (Map.Entry<String, Column> entry : toAdd.entrySet()) {
-                    insertColumn(schemaTemplate.getName(), entry.getValue());
+                existing.get(name).add(column); // Reported in column order
+                if (!rs.getBoolean("NON_UNIQUE")) {
+                    existingUnique.add(name);
                 }
             }
         }
-        catch (SQLException sqle) {
-            throw new DatabaseWriteException("Error updating SQLite schema: " + sqle.getMessage(), sqle);
+        finally {
+            rs.close();
+        }
+
+        HashMap<String, TableIndex> declared = new HashMap<String, TableIndex>();
+        for (TableIndex index : data.getIndexes()) {
+            declared.put(INDEX_PREFIX + data.getName() + "_" + index.getName(), index);
         }
-        catch (DatabaseTableInconsistencyException dtie) {
-            log.error("Error updating SQLite schema." + dtie.getMessage(), dtie);
+        for (String name : new ArrayList<String>(existing.keySet())) {
+            TableIndex wanted = declared.get(name);
+            if (wanted == null || !wanted.getColumns().equals(existing.get(name)) || wanted.isUnique() != existingUnique.contains(name)) {
+                executeIndexStatement(conn, "DROP INDEX IF EXISTS `" + name + "`");
+                existing.remove(name);
+            }
+        }
+        for (Map.Entry<String, TableIndex> entry : declared.entrySet()) {
+            if (existing.containsKey(entry.getKey())) {
+                continue;
+            }
+            String name = entry.getKey();
+            TableIndex index = entry.getValue();
+            StringBuilder columns = new StringBuilder();
+            for (String columnName : index.getColumns()) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append("`").append(columnName).append("`");
+            }
+            executeIndexStatement(conn, "CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX IF NOT EXISTS `" + name + "` ON `" + data.getName() + "` (" + columns.toString() + ")");
+        }
+    }
+
+    private void executeIndexStatement(Connection conn, String statement) {
+        Statement st = null;
+        try {
+            st = conn.createStatement();
+            st.execute(statement);
+        }
+        catch (SQLException ex) {
+            log.warn("Failed to update SQLite index (" + statement + "): " + ex.getMessage());
         }
         finally {
-            close(null, null, rs);
+            if (st != null) {
+                try {
+                    st.close();
+                }
+                catch (SQLException ex) {
+                    log.error(ex.getMessage(), ex);
+                }
+            }
         }
     }
 
     public void createTable(DataAccess data) throws DatabaseWriteException {
-        PreparedStatement ps = null;
-
+        JdbcConnectionManager.lockConnection();
         try {
-            StringBuilder fields = new StringBuilder();
-            HashMap<Column, Object> columns = data.toDatabaseEntryList();
-            Iterator<Column> it = columns.keySet().iterator();
-            Column column;
-            while (it.hasNext()) {
-                column = it.next();
-                fields.append("`").append(column.columnName()).append("` ");
-                if (column.columnType().equals(Column.ColumnType.PRIMARY) && column.autoIncrement() && column.dataType() == Column.DataType.INTEGER) {
-                    fields.append(" INTEGER PRIMARY KEY ASC");
-                    if (it.hasNext()) {
-                        fields.append(", ");
+            PreparedStatement ps = null;
+
+            try {
+                StringBuilder fields = new StringBuilder();
+                HashMap<Column, Object> columns = data.toDatabaseEntryList();
+                Iterator<Column> it = columns.keySet().iterator();
+                Column column;
+                while (it.hasNext()) {
+                    column = it.next();
+                    fields.append("`").append(column.columnName()).append("` ");
+                    if (column.columnType().equals(Column.ColumnType.PRIMARY) && column.autoIncrement() && column.dataType() == Column.DataType.INTEGER) {
+                        fields.append(" INTEGER PRIMARY KEY ASC");
+                        if (it.hasNext()) {
+                            fields.append(", ");
+                        }
+                        continue;
+                    }
+                    else {
+                        fields.append(getDataTypeSyntax(column.dataType()));
                     }
-                    continue;
-                }
-                else {
-                    fields.append(getDataTypeSyntax(column.dataType()));
-                }
 
 
-                if (column.columnType() == Column.ColumnType.PRIMARY) {
-                    fields.append(" PRIMARY KEY");
-                    if (column.autoIncrement()) {
-                        fields.append(" AUTOINCREMENT");
+                    if (column.columnType() == Column.ColumnType.PRIMARY) {
+                        fields.append(" PRIMARY KEY");
+                        if (column.autoIncrement()) {
+                            fields.append(" AUTOINCREMENT");
+                        }
+                    } else if (column.columnType() == Column.ColumnType.UNIQUE) {
+                        fields.append(" UNIQUE");
+                    }
+                    if (it.hasNext()) {
+                        fields.append(", ");
                     }
-                } else if (column.columnType() == Column.ColumnType.UNIQUE) {
-                    fields.append(" UNIQUE");
                 }
-                if (it.hasNext()) {
-                    fields.append(", ");
+                String state = "CREATE TABLE IF NOT EXISTS `" + data.getName() + "` (" + fields.toString() + ")";
+                ps = JdbcConnectionManager.getConnection().prepareStatement(state);
+                if (ps.execute()) {
+                    log.debug("Statment Executed!");
                 }
             }
-            String state = "CREATE TABLE IF NOT EXISTS `" + data.getName() + "` (" + fields.toString() + ")";
-            ps = JdbcConnectionManager.getConnection().prepareStatement(state);
-            if (ps.execute()) {
-                log.debug("Statment Executed!");
+            catch (SQLException ex) {
+                throw new DatabaseWriteException("Error creating SQLite table '" + data.getName() + "'", ex);
+            }
+            catch (DatabaseTableInconsistencyException ex) {
+                throw new DatabaseWriteException("Error creating SQLite table '" + data.getName() + "'", ex);
+            }
+            finally {
+                close(null, ps, null);
             }
-        }
-        catch (SQLException ex) {
-            throw new DatabaseWriteException("Error creating SQLite table '" + data.getName() + "'", ex);
-        }
-        catch (DatabaseTableInconsistencyException ex) {
-            throw new DatabaseWriteException("Error creating SQLite table '" + data.getName() + "'", ex);
         }
         finally {
-            close(null, ps, null);
+            JdbcConnectionManager.unlockConnection();
         }
     }
 
     public void insertColumn(String tableName, Column column) throws DatabaseWriteException {
-        PreparedStatement ps = null;
-
+        JdbcConnectionManager.lockConnection();
         try {
-            if (column != null && !column.columnName().trim().equals("")) {
-                ps = JdbcConnectionManager.getConnection().prepareStatement("ALTER TABLE `" + tableName + "` ADD `" + column.columnName() + "` " + getDataTypeSyntax(column.dataType()));
-                ps.execute();
+            PreparedStatement ps = null;
+
+            try {
+                if (column != null && !column.columnName().trim().equals("")) {
+                    ps = JdbcConnectionManager.getConnection().prepareStatement("ALTER TABLE `" + tableName + "` ADD `" + column.columnName() + "` " + getDataTypeSyntax(column.dataType()));
+                    ps.execute();
+                }
+            }
+            catch (SQLException ex) {
+                throw new DatabaseWriteException("Error adding SQLite collumn: " + column.columnName());
+            }
+            finally {
+                close(null, ps, null);
             }
-        }
-        catch (SQLException ex) {
-            throw new DatabaseWriteException("Error adding SQLite collumn: " + column.columnName());
         }
         finally {
-            close(null, ps, null);
+            JdbcConnectionManager.unlockConnection();
         }
-
     }
 
     // SQLite sucks.
     // precondition: toRetain is not null and not empty.
     public void retainColumns(DataAccess table, List<String> toRetain) throws DatabaseWriteException {
-        Statement stmt = null;
-
+        JdbcConnectionManager.lockConnection();
         try {
-            StringBuilder concatColumns = new StringBuilder();
-            for (String column : toRetain) {
-                if (concatColumns.length() > 0) {
-                    concatColumns.append(", ");
-                }
+            Statement stmt = null;
 
-                concatColumns.append(column);
-            }
+            try {
+                StringBuilder concatColumns = new StringBuilder();
+                for (String column : toRetain) {
+                    if (concatColumns.length() > 0) {
+                        concatColumns.append(", ");
+                    }
+
+                    concatColumns.append(column);
+                }
 
-            log.debug(concatColumns);
+                log.debug(concatColumns);
 
-            String tableName = table.getName();
-            String tempTable = "" + tableName + "_temp";
+                String tableName = table.getName();
+                String tempTable = "" + tableName + "_temp";
 
-            stmt = JdbcConnectionManager.getConnection().createStatement();
-            stmt.addBatch("CREATE TEMPORARY TABLE " + tempTable + " (" + concatColumns + ")");
-            stmt.addBatch("INSERT INTO " + tempTable + " SELECT " + concatColumns + " FROM " + tableName + ";");
-            stmt.addBatch("DROP TABLE " + tableName + ";");
-            stmt.executeBatch();
+                stmt = JdbcConnectionManager.getConnection().createStatement();
+                stmt.addBatch("CREATE TEMPORARY TABLE " + tempTable + " (" + concatColumns + ")");
+                stmt.addBatch("INSERT INTO " + tempTable + " SELECT " + concatColumns + " FROM " + tableName + ";");
+                stmt.addBatch("DROP TABLE " + tableName + ";");
+                stmt.executeBatch();
 
-            createTable(table);
+                createTable(table);
 
-            stmt.clearBatch();
-            stmt.addBatch("INSERT INTO " + tableName + " SELECT " + concatColumns + " FROM " + tempTable + ";");
-            stmt.addBatch("DROP TABLE " + tempTable + ";");
-            stmt.executeBatch();
-        } catch (SQLException ex) {
-            throw new DatabaseWriteException("Error retaining SQLite columns (something went horribly wrong)", ex);
-        } finally {
-            close(null, stmt, null);
+                stmt.clearBatch();
+                stmt.addBatch("INSERT INTO " + tableName + " SELECT " + concatColumns + " FROM " + tempTable + ";");
+                stmt.addBatch("DROP TABLE " + tempTable + ";");
+                stmt.executeBatch();
+            } catch (SQLException ex) {
+                throw new DatabaseWriteException("Error retaining SQLite columns (something went horribly wrong)", ex);
+            } finally {
+                close(null, stmt, null);
+            }
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
         }
     }
 
     public boolean doesEntryExist(DataAccess data) throws DatabaseWriteException {
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        boolean toRet = false;
-
+        JdbcConnectionManager.lockConnection();
         try {
-            StringBuilder sb = new StringBuilder();
-            HashMap<Column, Object> columns = data.toDatabaseEntryList();
-            Iterator<Column> it = columns.keySet().iterator();
-
-            Column column;
-            while (it.hasNext()) {
-                column = it.next();
-                if (!column.autoIncrement()) {
-                    if (sb.length() > 0) {
-                        sb.append(" AND '").append(column.columnName());
-                    }
-                    else {
-                        sb.append("'").append(column.columnName());
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            boolean toRet = false;
+
+            try {
+                HashMap<Column, Object> columns = data.toDatabaseEntryList();
+                ArrayList<Column> filterColumns = new ArrayList<Column>();
+                ArrayList<String> filterNames = new ArrayList<String>();
+                for (Column column : columns.keySet()) {
+                    if (!column.autoIncrement() && columns.get(column) != null) {
+                        filterColumns.add(column);
+                        filterNames.add(column.columnName());
                     }
-                    sb.append("' = ?");
                 }
-            }
-            ps = JdbcConnectionManager.getConnection().prepareStatement("SELECT * FROM `" + data.getName() + "` WHERE " + sb.toString());
-            it = columns.keySet().iterator();
+                if (filterColumns.isEmpty()) {
+                    return false;
+                }
+                ps = JdbcConnectionManager.getConnection().prepareStatement(getFilteredStatement(data, "SELECT 1 FROM", filterNames, true));
 
-            int index = 1;
-            while (it.hasNext()) {
-                column = it.next();
-                if (!column.autoIncrement()) {
-                    ps.setObject(index, convert(columns.get(column)));
+                int index = 1;
+                for (Column column : filterColumns) {
+                    setValue(index, columns.get(column), ps, column);
                     index++;
                 }
+                rs = ps.executeQuery();
+                if (rs != null) {
+                    toRet = rs.next();
+                }
+
             }
-            rs = ps.executeQuery();
-            if (rs != null) {
-                toRet = rs.next();
+            catch (SQLException ex) {
+                throw new DatabaseWriteException(ex.getMessage() + " Error checking SQLite Entry Key in "
+                        + data.toString());
+            }
+            catch (DatabaseTableInconsistencyException ex) {
+                LogManager.getLogger().error("", ex);
             }
+            finally {
+                close(null, ps, rs);
+            }
+            return toRet;
+        }
+        finally {
+            JdbcConnectionManager.unlockConnection();
+        }
+    }
 
+    /**
+     * Builds the INSERT statement for the given columns, auto increment columns are left out
+     *
+     * @param tableName
+     *         the table to insert into
+     * @param columns
+     *         the columns, in the order the values are set
+     *
+     * @return the SQL statement
+     */
+    private String getInsertStatement(String tableName, Iterable<Column> columns) {
+        StringBuilder fields = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (Column column : columns) {
+            if (!column.autoIncrement()) {
+                fields.append("`").append(column.columnName()).append("`").append(",");
+                values.append("?").append(",");
+            }
         }
-        catch (SQLException ex) {
-            throw new DatabaseWriteException(ex.getMessage() + " Error checking SQLite Entry Key in "
-                    + data.toString());
+        if (fields.length() > 0) {
+            fields.deleteCharAt(fields.length() - 1);
         }
-        catch (DatabaseTableInconsistencyException ex) {
-            LogManager.getLogger().error("", ex);
+        if (values.length() > 0) {
+            values.deleteCharAt(values.length() - 1);
         }
-        finally {
-            close(null, ps, rs);
+        return "INSERT INTO `" + tableName + "` (" + fields.toString() + ") VALUES(" + values.toString() + ")";
+    }
+
+    /**
+     * Gets the UPDATE statement for the given columns, auto increment columns are not updated.
+     * The statements are cached per table, columns and filter columns.
+     *
+     * @param data
+     *         the DataAccess to update
+     * @param columns
+     *         the columns to set, in the order the values are set
+     * @param filterNames
+     *         the columns to filter by, in the order the values are set after the column values
+     *
+     * @return the SQL statement
+     */
+    private String getUpdateStatement(DataAccess data, Iterable<Column> columns, List<String> filterNames) throws DatabaseTableInconsistencyException {
+        StatementKey key = new StatementKey(data.getName(), data.getColumnSignature(), "UPDATE", filterNames);
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder sb = new StringBuilder("UPDATE `").append(data.getName()).append("` SET ");
+        boolean first = true;
+        for (Column column : columns) {
+            if (!column.autoIncrement()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append("`").append(column.columnName()).append("`=?");
+                first = false;
+            }
         }
-        return toRet;
+        for (int i = 0; i < filterNames.size(); i++) {
+            sb.append(i == 0 ? " WHERE `" : " AND `").append(filterNames.get(i)).append("`=?");
+        }
+        statement = sb.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Gets a statement of the form {@code <operation> `table` WHERE `filter`=? AND ...}.
+     * The statements are cached per table, operation and filter columns.
+     *
+     * @param data
+     *         the DataAccess of the table
+     * @param operation
+     *         the start of the statement, like {@code SELECT * FROM}
+     * @param filterNames
+     *         the columns to filter by, sorted
+     * @param limitOne
+     *         {@code true} to append {@code LIMIT 1}
+     *
+     * @return the SQL statement
+     */
+    private String getFilteredStatement(DataAccess data, String operation, List<String> filterNames, boolean limitOne) {
+        StatementKey key = new StatementKey(data.getName(), "", limitOne ? operation + " LIMIT 1" : operation, filterNames);
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder sb = new StringBuilder(operation).append(" `").append(data.getName()).append("`");
+        for (int i = 0; i < filterNames.size(); i++) {
+            sb.append(i == 0 ? " WHERE `" : " AND `").append(filterNames.get(i)).append("`=?");
+        }
+        if (limitOne) {
+            sb.append(" LIMIT 1");
+        }
+        statement = sb.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Gets the statement for {@link #loadPage(DataAccess, List, Map, int, int)}. After the filter values
+     * the id to start after and the page size are set. The statements are cached like the other statements.
+     *
+     * @param data
+     *         the DataAccess of the table
+     * @param filterNames
+     *         the columns to filter by, sorted
+     *
+     * @return the SQL statement
+     */
+    private String getPageStatement(DataAccess data, List<String> filterNames) {
+        StatementKey key = new StatementKey(data.getName(), "", "PAGE", filterNames);
+        String statement = statementCache.get(key);
+        if (statement != null) {
+            return statement;
+        }
+        StringBuilder sb = new StringBuilder("SELECT * FROM `").append(data.getName()).append("` WHERE ");
+        for (String filterName : filterNames) {
+            sb.append("`").append(filterName).append("`=? AND ");
+        }
+        sb.append("`id`>? ORDER BY `id` LIMIT ?");
+        statement = sb.toString();
+        statementCache.put(key, statement);
+        return statement;
+    }
+
+    /**
+     * Gets the filter names in a stable order, so equal filters use the same cached statement
+     *
+     * @param filters
+     *         FieldName->Value map
+     *
+     * @return the sorted field names
+     */
+    private List<String> getSortedKeys(Map<String, Object> filters) {
+        if (filters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> names = new ArrayList<String>(filters.keySet());
+        if (names.size() > 1) {
+            Collections.sort(names);
+        }
+        return names;
     }
 
+    /**
+     * Sets the filter values to a prepared statement, starting at the first parameter
+     *
+     * @param ps
+     *         the prepared statement
+     * @param data
+     *         the DataAccess to look up the filter columns in
+     * @param filterNames
+     *         the filter columns, in order
+     * @param filters
+     *         FieldName->Value map of the filters
+     *
+     * @throws DatabaseWriteException
+     *         when a filter column does not exist or the value could not be set
+     */
+    private void setFilterValues(PreparedStatement ps, DataAccess data, List<String> filterNames, Map<String, Object> filters) throws DatabaseWriteException {
+        for (int i = 0; i < filterNames.size(); i++) {
+            Column col = data.getColumnForName(filterNames.get(i));
+            if (col == null) {
+                throw new DatabaseWriteException("Error filtering SQLite rows in " + data.getName() + ". Column " + filterNames.get(i) + " does not exist!");
+            }
+            setToStatement(i + 1, filters.get(filterNames.get(i)), ps, col.dataType());
+        }
+    }
+
+    /**
+     * Sets a column value to a prepared statement, lists are stored as their String representation
+     */
+    private void setValue(int index, Object o, PreparedStatement ps, Column column) throws SQLException {
+        if (column.isList()) {
+            ps.setString(index, getString((List<?>) o));
+        }
+        else {
+            ps.setObject(index, convert(o));
+        }
+    }
 
     /**
      * Close a set of working data.
@@ -548,46 +1054,32 @@ public class SQLiteDatabase extends Database {
 
     }
 
+    private void rollback(Connection c) {
+        try {
+            c.rollback();
+        }
+        catch (SQLException e) {
+            log.error("Failed to roll back SQLite transaction", e);
+        }
+    }
+
+    private void resetAutoCommit(Connection c) {
+        try {
+            c.setAutoCommit(true);
+        }
+        catch (SQLException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
     public ResultSet getResultSet(Connection conn, DataAccess data, Map<String, Object> filters, boolean limitOne) throws DatabaseReadException {
         PreparedStatement ps;
         ResultSet toRet;
 
         try {
-
-            if (filters.size() > 0) {
-                StringBuilder sb = new StringBuilder();
-                Object[] fieldNames = filters.keySet().toArray();
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    sb.append("`").append(fieldNames[i]);
-                    if (i + 1 < fieldNames.length) {
-                        sb.append("`=? AND ");
-                    }
-                    else {
-                        sb.append("`=?");
-                    }
-                }
-                if (limitOne) {
-                    sb.append(" LIMIT 1");
-                }
-                ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "` WHERE " + sb.toString());
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    String fieldName = String.valueOf(fieldNames[i]);
-                    Column col = data.getColumnForName(fieldName);
-                    if (col == null) {
-                        throw new DatabaseReadException("Error fetching SQLite ResultSet in " + data.getName() + ". Column " + fieldNames[i] + " does not exist!");
-                    }
-                    setToStatement(i + 1, filters.get(fieldName), ps, col.dataType());
-                }
-
-            }
-            else {
-                if (limitOne) {
-                    ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "` LIMIT 1");
-                }
-                else {
-                    ps = conn.prepareStatement("SELECT * FROM `" + data.getName() + "`");
-                }
-            }
+            List<String> filterNames = getSortedKeys(filters);
+            ps = conn.prepareStatement(getFilteredStatement(data, "SELECT * FROM", filterNames, limitOne));
+            setFilterValues(ps, data, filterNames, filters);
             toRet = ps.executeQuery();
         }
         catch (SQLException ex) {
@@ -603,41 +1095,15 @@ public class SQLiteDatabase extends Database {
     public void deleteRows(Connection conn, DataAccess data, Map<String, Object> filters, boolean limitOne) throws DatabaseWriteException {
         PreparedStatement ps;
         try {
-            if (filters.size() > 0) {
-                StringBuilder sb = new StringBuilder();
-                Object[] fieldNames = filters.keySet().toArray();
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    sb.append("`").append(fieldNames[i]);
-                    if (i + 1 < fieldNames.length) {
-                        sb.append("`=? AND ");
-                    }
-                    else {
-                        sb.append("`=?");
-                    }
-                }
-                if (limitOne) {
-                    sb.append(" LIMIT 1");
-                }
-                ps = conn.prepareStatement("DELETE FROM `" + data.getName() + "` WHERE " + sb.toString());
-                for (int i = 0; i < fieldNames.length && i < fieldNames.length; i++) {
-                    String fieldName = String.valueOf(fieldNames[i]);
-                    Column col = data.getColumnForName(fieldName);
-                    if (col == null) {
-                        throw new DatabaseReadException("Error deleting from SQLite table " + data.getName() + ". Column " + fieldNames[i] + " does not exist!");
-                    }
-                    setToStatement(i + 1, filters.get(fieldName), ps, col.dataType());
-                }
-
+            if (filters.size() > 0 || limitOne) {
+                List<String> filterNames = getSortedKeys(filters);
+                ps = conn.prepareStatement(getFilteredStatement(data, "DELETE FROM", filterNames, limitOne));
+                setFilterValues(ps, data, filterNames, filters);
             }
             else {
-                if (limitOne) {
-                    ps = conn.prepareStatement("DELETE FROM `" + data.getName() + "` LIMIT 1");
-                }
-                else {
-                    // TODO: This will not work because sqlite sucks.
-                    // What needs to be done is each row must be deleted, then sqlite knows a "VACUUM" command which clears the table.
-                    ps = conn.prepareStatement("TRUNCATE `" + data.getName() + "`");
-                }
+                // TODO: This will not work because sqlite sucks.
+                // What needs to be done is each row must be deleted, then sqlite knows a "VACUUM" command which clears the table.
+                ps = conn.prepareStatement("TRUNCATE `" + data.getName() + "`");
             }
             ps.execute();
         }
@@ -693,28 +1159,34 @@ public class SQLiteDatabase extends Database {
     }
 
     public List<String> getColumnNames(DataAccess data) {
-        Statement s = null;
-        ResultSet rs = null;
+        JdbcConnectionManager.lockConnection();
+        try {
+            Statement s = null;
+            ResultSet rs = null;
 
-        ArrayList<String> columns = new ArrayList<String>();
-        String columnName;
+            ArrayList<String> columns = new ArrayList<String>();
+            String columnName;
 
-        try {
-            s = JdbcConnectionManager.getConnection().createStatement();
-            rs = s.executeQuery("SELECT * FROM '" + data.getName() + "'");
-            ResultSetMetaData rsMeta = rs.getMetaData();
-            for (int index = 1; index <= rsMeta.getColumnCount(); index++) {
-                columnName = rsMeta.getColumnLabel(index);
-                columns.add(columnName);
+            try {
+                s = JdbcConnectionManager.getConnection().createStatement();
+                rs = s.executeQuery("SELECT * FROM '" + data.getName() + "'");
+                ResultSetMetaData rsMeta = rs.getMetaData();
+                for (int index = 1; index <= rsMeta.getColumnCount(); index++) {
+                    columnName = rsMeta.getColumnLabel(index);
+                    columns.add(columnName);
+                }
             }
-        }
-        catch (SQLException ex) {
-            log.error(ex.getMessage(), ex);
+            catch (SQLException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+            finally {
+                close(null, s, rs);
+            }
+            return columns;
         }
         finally {
-            close(null, s, rs);
+            JdbcConnectionManager.unlockConnection();
         }
-        return columns;
     }
 
     public String getDataTypeSyntax(Column.DataType type) {
@@ -865,4 +1337,38 @@ public class SQLiteDatabase extends Database {
         }
         return sb.toString();
     }
+
+    /** Cache key of a generated SQL statement, made of strings only so it does not keep plugin classes loaded */
+    private static final class StatementKey {
+        private final String table;
+        private final String columns; // Column signature for statements listing the columns, empty otherwise
+        private final String operation;
+        private final List<String> filterNames;
+        private final int hash;
+
+        private StatementKey(String table, String columns, String operation, List<String> filterNames) {
+            this.table = table;
+            this.columns = columns;
+            this.operation = operation;
+            this.filterNames = filterNames;
+            this.hash = 31 * (31 * (31 * table.hashCode() + columns.hashCode()) + operation.hashCode()) + filterNames.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof StatementKey)) {
+                return false;
+            }
+            StatementKey other = (StatementKey) obj;
+            return hash == other.hash && table.equals(other.table) && columns.equals(other.columns) && operation.equals(other.operation) && filterNames.equals(other.filterNames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
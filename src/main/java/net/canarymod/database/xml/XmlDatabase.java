@@ -3,12 +3,14 @@ package net.canarymod.database.xml;
 import net.canarymod.database.Column;
 import net.canarymod.database.Column.DataType;
 import net.canarymod.database.DataAccess;
+import net.canarymod.database.DataAccessCallback;
 import net.canarymod.database.Database;
+import net.canarymod.database.TableIndex;
+import net.canarymod.database.Transaction;
 import net.canarymod.database.exceptions.DatabaseAccessException;
 import net.canarymod.database.exceptions.DatabaseReadException;
 import net.canarymod.database.exceptions.DatabaseTableInconsistencyException;
 import net.canarymod.database.exceptions.DatabaseWriteException;
-import org.jdom2.Content;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
@@ -18,22 +20,39 @@ import org.jdom2.output.XMLOutputter;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static net.canarymod.Canary.log;
 
 /**
  * Represent access to an XML database
+ * <p/>
+ * Every table is parsed once and kept in memory, with hash indexes on the columns that are filtered by.
+ * Changes are written back to disk in the background, at most once per {@link #WRITE_DELAY} per table,
+ * by writing a temporary file and renaming it over the table file. A table file that was changed
+ * on disk while there were no pending changes is read again.
  *
  * @author Chris (damagefilter)
  */
 public class XmlDatabase extends Database {
+    /** Milliseconds changes to a table are held back before the table is written */
+    private static final long WRITE_DELAY = 1000;
 
     private XmlDatabase() {
         File path = new File("db/");
@@ -41,6 +60,20 @@ public class XmlDatabase extends Database {
         if (!path.exists()) {
             path.mkdirs();
         }
+        writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Canary XML Writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, "Canary XML Shutdown Writer"));
     }
 
     private static XmlDatabase instance;
@@ -57,26 +90,17 @@ public class XmlDatabase extends Database {
 
     private SAXBuilder fileBuilder = new SAXBuilder();
 
+    private final HashMap<String, Table> tables = new HashMap<String, Table>(); // Keyed to table name, guarded by itself
+    private final ScheduledExecutorService writer;
+    private final ThreadLocal<Set<Table>> transactions = new ThreadLocal<Set<Table>>(); // Tables changed by the transaction of a thread
+
     @Override
     public void insert(DataAccess data) throws DatabaseWriteException {
-        File file = new File("db/" + data.getName() + ".xml");
-
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-                initFile(file, data.getName());
-            }
-            catch (IOException e) {
-                throw new DatabaseWriteException(e.getMessage());
-            }
-        }
-        Document dbTable;
-
         try {
-            FileInputStream in = new FileInputStream(file);
-            dbTable = fileBuilder.build(in);
-            in.close();
-            insertData(file, data, dbTable);
+            Table table = getTable(data.getName(), true);
+            synchronized (table) {
+                insertData(table, data);
+            }
         }
         catch (JDOMException e) {
             throw new DatabaseWriteException(e.getMessage(), e);
@@ -91,24 +115,18 @@ public class XmlDatabase extends Database {
 
     @Override
     public void load(DataAccess data, Map<String, Object> filters) throws DatabaseReadException {
-        File file = new File("db/" + data.getName() + ".xml");
-
-        if (!file.exists()) {
-            throw new DatabaseReadException("Table " + data.getName() + " does not exist!");
-        }
-
         try {
-            FileInputStream in = new FileInputStream(file);
-            Document table = fileBuilder.build(in);
-            in.close();
-
-            loadData(data, table, filters);
-        }
-        catch (JDOMException e) {
-            throw new DatabaseReadException(e.getMessage(), e);
-        }
-        catch (IOException e) {
-            throw new DatabaseReadException(e.getMessage(), e);
+            Table table = getReadableTable(data.getName());
+            HashMap<String, Object> dataSet = null;
+            synchronized (table) {
+                List<Element> found = table.find(filters, true);
+                if (!found.isEmpty()) {
+                    dataSet = toDataSet(found.get(0));
+                }
+            }
+            if (dataSet != null) {
+                data.load(dataSet);
+            }
         }
         catch (DatabaseAccessException e) {
             throw new DatabaseReadException(e.getMessage(), e);
@@ -116,46 +134,56 @@ public class XmlDatabase extends Database {
     }
 
     @Override
-    public void loadAll(DataAccess typeTemplate, List<DataAccess> datasets, Map<String, Object> filters) throws DatabaseReadException {
-        File file = new File("db/" + typeTemplate.getName() + ".xml");
+    public void loadAll(DataAccess typeTemplate, final List<DataAccess> datasets, Map<String, Object> filters) throws DatabaseReadException {
+        loadEach(typeTemplate, filters, new DataAccessCallback() {
+            @Override
+            public boolean onLoad(DataAccess data) {
+                datasets.add(data);
+                return true;
+            }
+        });
+    }
 
-        if (!file.exists()) {
-            throw new DatabaseReadException("Table " + typeTemplate.getName() + " does not exist!");
+    @Override
+    public void loadEach(DataAccess typeTemplate, Map<String, Object> filters, DataAccessCallback callback) throws DatabaseReadException {
+        Table table = getReadableTable(typeTemplate.getName());
+        ArrayList<HashMap<String, Object>> dataSets = new ArrayList<HashMap<String, Object>>();
+        synchronized (table) {
+            for (Element element : table.find(filters, false)) {
+                dataSets.add(toDataSet(element));
+            }
         }
-
+        // Callbacks run without holding the table, they may write to it
         try {
-            FileInputStream in = new FileInputStream(file);
-            Document table = fileBuilder.build(in);
-            in.close();
+            for (HashMap<String, Object> dataSet : dataSets) {
+                DataAccess da = typeTemplate.getInstance();
 
-            loadAllData(typeTemplate, datasets, table, filters);
-        }
-        catch (JDOMException e) {
-            throw new DatabaseReadException(e.getMessage(), e);
-        }
-        catch (IOException e) {
-            throw new DatabaseReadException(e.getMessage(), e);
+                da.load(dataSet);
+                if (!callback.onLoad(da)) {
+                    return;
+                }
+            }
         }
         catch (DatabaseAccessException e) {
             throw new DatabaseReadException(e.getMessage(), e);
         }
-
     }
 
     @Override
     public void update(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
-        File file = new File("db/" + data.getName() + ".xml");
-
-        if (!file.exists()) {
-            throw new DatabaseWriteException("Table " + data.getName() + " does not exist!");
-        }
-
         try {
-            FileInputStream in = new FileInputStream(file);
-            Document table = fileBuilder.build(in);
-            in.close();
-
-            updateData(file, table, data, filters);
+            Table table = getTable(data.getName(), false);
+            if (table == null) {
+                throw new DatabaseWriteException("Table " + data.getName() + " does not exist!");
+            }
+            boolean updated;
+            synchronized (table) {
+                updated = updateData(table, data, filters);
+            }
+            if (!updated) {
+                // No fields found, that means it is a new entry
+                insert(data);
+            }
         }
         catch (JDOMException e) {
             throw new DatabaseWriteException(e.getMessage(), e);
@@ -170,18 +198,34 @@ public class XmlDatabase extends Database {
 
     @Override
     public void remove(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
-        File file = new File("db/" + data.getName() + ".xml");
+        removeData(data, filters, false);
+    }
 
-        if (!file.exists()) {
-            throw new DatabaseWriteException("Table " + data.getName() + " does not exist!");
-        }
+    @Override
+    public void removeAll(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
+        removeData(data, filters, true);
+    }
 
+    @Override
+    public void updateSchema(DataAccess data) throws DatabaseWriteException {
         try {
-            FileInputStream in = new FileInputStream(file);
-            Document table = fileBuilder.build(in);
-            in.close();
+            Table table = getTable(data.getName(), true);
+            HashSet<Column> tableLayout = data.getTableLayout();
 
-            removeData(file, table, filters, false);
+            synchronized (table) {
+                for (Element element : table.document.getRootElement().getChildren()) {
+                    addFields(element, tableLayout);
+                    removeFields(element, tableLayout);
+                    sortFields(element);
+                }
+                table.indexes.clear(); // Rebuilt when used, declared indexes right away
+                for (TableIndex index : data.getIndexes()) {
+                    for (String column : index.getColumns()) {
+                        table.getIndex(column);
+                    }
+                }
+                scheduleWrite(table);
+            }
         }
         catch (JDOMException e) {
             throw new DatabaseWriteException(e.getMessage(), e);
@@ -189,75 +233,109 @@ public class XmlDatabase extends Database {
         catch (IOException e) {
             throw new DatabaseWriteException(e.getMessage(), e);
         }
+        catch (DatabaseTableInconsistencyException e) {
+            throw new DatabaseWriteException(e.getMessage(), e);
+        }
     }
 
+    /**
+     * Runs the transaction, writing the tables it changed once it ended instead of in the background.
+     * Changes made before a failure are kept, XML cannot roll back.
+     */
     @Override
-    public void removeAll(DataAccess data, Map<String, Object> filters) throws DatabaseWriteException {
-        File file = new File("db/" + data.getName() + ".xml");
-
-        if (!file.exists()) {
-            throw new DatabaseWriteException("Table " + data.getName() + " does not exist!");
+    public void transaction(Transaction transaction) throws DatabaseWriteException {
+        if (transactions.get() != null) {
+            super.transaction(transaction); // Joins the outer transaction
+            return;
         }
-
+        LinkedHashSet<Table> changed = new LinkedHashSet<Table>();
+        transactions.set(changed);
         try {
-            FileInputStream in = new FileInputStream(file);
-            Document table = fileBuilder.build(in);
-            in.close();
-
-            removeData(file, table, filters, true);
+            super.transaction(transaction);
         }
-        catch (JDOMException e) {
-            throw new DatabaseWriteException(e.getMessage(), e);
+        finally {
+            transactions.remove();
+            for (Table table : changed) {
+                writeTable(table);
+            }
         }
-        catch (IOException e) {
-            throw new DatabaseWriteException(e.getMessage(), e);
+    }
+
+    /** Writes all pending table changes to disk now */
+    public void flush() {
+        ArrayList<Table> toWrite;
+        synchronized (tables) {
+            toWrite = new ArrayList<Table>(tables.values());
+        }
+        for (Table table : toWrite) {
+            writeTable(table);
         }
     }
 
-    @Override
-    public void updateSchema(DataAccess data) throws DatabaseWriteException {
-        File file = new File("db/" + data.getName() + ".xml");
+    /**
+     * Gets the in-memory table, reading it if it is not cached yet or was changed on disk
+     *
+     * @param name
+     *         the table name
+     * @param create
+     *         {@code true} to create the table if it does not exist
+     *
+     * @return the {@link Table}; {@code null} if it does not exist and should not be created
+     *
+     * @throws IOException
+     *         when the table file could not be read or created
+     * @throws JDOMException
+     *         when the table file is not valid XML
+     */
+    private Table getTable(String name, boolean create) throws IOException, JDOMException {
+        File file = new File("db/" + name + ".xml");
 
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-                initFile(file, data.getName());
+        synchronized (tables) {
+            Table table = tables.get(name);
+            if (table != null && !table.isStale()) {
+                return table;
             }
-            catch (IOException e) {
-                throw new DatabaseWriteException(e.getMessage(), e);
+            Document document;
+            if (file.exists()) {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    document = fileBuilder.build(in);
+                }
+                finally {
+                    in.close();
+                }
+            }
+            else if (create) {
+                document = new Document();
+                document.setRootElement(new Element(name));
+                writeAtomically(file, xmlSerializer.outputString(document));
             }
+            else {
+                tables.remove(name);
+                return null;
+            }
+            table = new Table(file, document);
+            tables.put(name, table);
+            return table;
         }
-        try {
-            FileInputStream in = new FileInputStream(file);
-            Document table = fileBuilder.build(in);
-            in.close();
-
-            HashSet<Column> tableLayout = data.getTableLayout();
+    }
 
-            for (Element element : table.getRootElement().getChildren()) {
-                addFields(element, tableLayout);
-                removeFields(element, tableLayout);
+    private Table getReadableTable(String name) throws DatabaseReadException {
+        try {
+            Table table = getTable(name, false);
+            if (table == null) {
+                throw new DatabaseReadException("Table " + name + " does not exist!");
             }
-            write(file.getPath(), table);
+            return table;
         }
         catch (JDOMException e) {
-            throw new DatabaseWriteException(e.getMessage(), e);
+            throw new DatabaseReadException(e.getMessage(), e);
         }
         catch (IOException e) {
-            throw new DatabaseWriteException(e.getMessage(), e);
-        }
-        catch (DatabaseTableInconsistencyException e) {
-            throw new DatabaseWriteException(e.getMessage(), e);
+            throw new DatabaseReadException(e.getMessage(), e);
         }
     }
 
-    private void initFile(File file, String rootName) throws IOException {
-        Document doc = new Document();
-
-        doc.setRootElement(new Element(rootName));
-        write(file.getPath(), doc);
-    }
-
     /**
      * Adds new fields to the Element, according to the given layout set.
      *
@@ -292,7 +370,7 @@ public class XmlDatabase extends Database {
      * @param layout
      */
     private void removeFields(Element element, HashSet<Column> layout) {
-        for (Element child : element.getChildren()) {
+        for (Element child : new ArrayList<Element>(element.getChildren())) {
             boolean found = false;
 
             for (Column column : layout) {
@@ -306,19 +384,26 @@ public class XmlDatabase extends Database {
         }
     }
 
+    private void sortFields(Element element) {
+        element.sortChildren(new Comparator<Element>() {
+            @Override
+            public int compare(Element o1, Element o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+    }
+
     /**
-     * Inserts data into the XML file. This does NOT update data.
-     * It will create a new entry if there isn't the exact same already present
+     * Inserts data into the table. This does NOT update data.
+     * Called holding the table.
      *
-     * @param file
+     * @param table
      * @param data
-     * @param dbTable
      *
-     * @throws IOException
      * @throws DatabaseTableInconsistencyException
      *
      */
-    private void insertData(File file, DataAccess data, Document dbTable) throws IOException, DatabaseTableInconsistencyException {
+    private void insertData(Table table, DataAccess data) throws DatabaseTableInconsistencyException {
         HashMap<Column, Object> entry = data.toDatabaseEntryList();
 
         if (data.isInconsistent()) {
@@ -335,216 +420,98 @@ public class XmlDatabase extends Database {
             col.setAttribute("data-type", column.dataType().name());
             col.setAttribute("column-type", column.columnType().name());
             col.setAttribute("is-list", String.valueOf(column.isList()));
-            addToElement(dbTable, col, entry.get(column), column);
+            addToElement(table.document, col, entry.get(column), column);
             set.addContent(col);
-
-            boolean foundDupe = false;
-
-            for (Element c : dbTable.getRootElement().getChildren()) {
-                if (elementEquals(set, c)) {
-                    foundDupe = true;
-                }
-            }
-            if (!foundDupe) {
-            }
         }
-        dbTable.getRootElement().addContent(set);
-        write(file.getPath(), dbTable);
+        sortFields(set);
+        table.document.getRootElement().addContent(set);
+        table.add(set);
+        scheduleWrite(table);
     }
 
     /**
-     * Updates an already existing element in the document.
-     * IMPORTANT: the lengths of fields and content array must have been checked before this method is called!
+     * Updates all elements of the table that match the filters.
+     * Called holding the table.
      *
-     * @param file
      * @param table
+     * @param data
      * @param filters
-     * @throws IOException
+     *
+     * @return {@code true} if an element was updated
+     *
      * @throws DatabaseTableInconsistencyException
      *
-     * @throws DatabaseWriteException
      */
-    private void updateData(File file, Document table, DataAccess data, Map<String, Object> filters) throws IOException, DatabaseTableInconsistencyException, DatabaseWriteException {
+    private boolean updateData(Table table, DataAccess data, Map<String, Object> filters) throws DatabaseTableInconsistencyException {
         boolean hasUpdated = false;
-        String[] fields = new String[filters.size()];
-        filters.keySet().toArray(fields); // We know those are strings
-        for (Element element : table.getRootElement().getChildren()) {
-            int equalFields = 0;
-
-            for (String field : fields) {
-                Element child = element.getChild(field);
-
-                if (child != null) {
-                    if (child.getText().equals(String.valueOf(filters.get(field)))) {
-                        equalFields++;
-                    }
-                }
-            }
-            if (equalFields != fields.length) {
-                continue; // Not the entry we're looking for
-            }
-
+        for (Element element : table.find(filters, false)) {
             if (data.isInconsistent()) {
                 // Just an extra precaution
                 throw new DatabaseTableInconsistencyException("DataAccess is marked inconsistent!");
             }
 
             HashMap<Column, Object> dataSet = data.toDatabaseEntryList();
-            for (Column column : dataSet.keySet()) {
-                Element child = element.getChild(column.columnName());
+            table.unindex(element);
+            try {
+                for (Column column : dataSet.keySet()) {
+                    Element child = element.getChild(column.columnName());
 
-                if (child == null) {
-                    throw new DatabaseTableInconsistencyException("Column " + column.columnName() + " does not exist. Update table schema or fix DataAccess!");
-                }
-                // Do not change auto-increment fields
-                if (column.autoIncrement()) {
-                    continue;
+                    if (child == null) {
+                        throw new DatabaseTableInconsistencyException("Column " + column.columnName() + " does not exist. Update table schema or fix DataAccess!");
+                    }
+                    // Do not change auto-increment fields
+                    if (column.autoIncrement()) {
+                        continue;
+                    }
+                    addToElement(table.document, child, dataSet.get(column), column);
+                    hasUpdated = true;
                 }
-                addToElement(table, child, dataSet.get(column), column);
-                hasUpdated = true;
+            }
+            finally {
+                table.index(element);
             }
         }
         if (hasUpdated) {
-            write(file.getPath(), table);
-        }
-        else {
-            // No fields found, that means it is a new entry
-            insert(data);
+            scheduleWrite(table);
         }
+        return hasUpdated;
     }
 
-    private void removeData(File file, Document table, Map<String, Object> filters, boolean removeAll) throws IOException {
-        ArrayList<Element> toremove = new ArrayList<Element>();
-        String[] fields = new String[filters.size()];
-        filters.keySet().toArray(fields); // We know those are strings
-        for (Element element : table.getRootElement().getChildren()) {
-            int equalFields = 0;
-
-            for (String field : fields) {
-                Element child = element.getChild(field);
-
-                if (child != null) {
-                    if (child.getText().equals(String.valueOf(filters.get(field)))) {
-                        equalFields++;
-                    }
-                }
-            }
-            if (equalFields != fields.length) {
-                continue; // Not the entry we're looking for
-            }
-            // table.getRootElement().removeContent(element);
-            toremove.add(element);
-            if(!removeAll) {
-                // Just remove one row
-                break;
-            }
+    private void removeData(DataAccess data, Map<String, Object> filters, boolean removeAll) throws DatabaseWriteException {
+        Table table;
+        try {
+            table = getTable(data.getName(), false);
         }
-        for (Element e : toremove) {
-            e.detach();
+        catch (JDOMException e) {
+            throw new DatabaseWriteException(e.getMessage(), e);
         }
-        write(file.getPath(), table);
-    }
-
-    private void loadData(DataAccess data, Document table, Map<String, Object> filters) throws DatabaseAccessException {
-        String[] fields = new String[filters.size()];
-        filters.keySet().toArray(fields); // We know those are strings
-        for (Element element : table.getRootElement().getChildren()) {
-            int equalFields = 0;
-
-            for (String field : fields) {
-                Element child = element.getChild(field);
-
-                if (child != null) {
-                    if (child.getText().equals(String.valueOf(filters.get(field)))) {
-                        equalFields++;
-                    }
-                }
-            }
-            if (equalFields != fields.length) {
-                continue; // Not the entry we're looking for
-            }
-            HashMap<String, Object> dataSet = new HashMap<String, Object>();
-            for (Element child : element.getChildren()) {
-                DataType type = DataType.fromString(child.getAttributeValue("data-type"));
-                addTypeToMap(child, dataSet, type);
-            }
-            data.load(dataSet);
-            return;
+        catch (IOException e) {
+            throw new DatabaseWriteException(e.getMessage(), e);
         }
-    }
-
-    private void loadAllData(DataAccess template, List<DataAccess> datasets, Document table, Map<String, Object> filters) throws DatabaseAccessException {
-        String[] fields = new String[filters.size()];
-        filters.keySet().toArray(fields); // We know those are strings
-        for (Element element : table.getRootElement().getChildren()) {
-            int equalFields = 0;
-
-            for (String field : fields) {
-                Element child = element.getChild(field);
-
-                if (child != null) {
-                    if (child.getText().equals(String.valueOf(filters.get(field)))) {
-                        equalFields++;
-                    }
-                }
-            }
-            if (equalFields != fields.length) {
-                continue; // Not the entry we're looking for
+        if (table == null) {
+            throw new DatabaseWriteException("Table " + data.getName() + " does not exist!");
+        }
+        synchronized (table) {
+            List<Element> toremove = table.find(filters, !removeAll);
+            for (Element e : toremove) {
+                table.remove(e);
+                e.detach();
             }
-            HashMap<String, Object> dataSet = new HashMap<String, Object>();
-
-            for (Element child : element.getChildren()) {
-                DataType type = DataType.fromString(child.getAttributeValue("data-type"));
-
-                addTypeToMap(child, dataSet, type);
+            if (!toremove.isEmpty()) {
+                scheduleWrite(table);
             }
-            DataAccess da = template.getInstance();
-
-            da.load(dataSet);
-            datasets.add(da);
         }
     }
 
-    /**
-     * Performs a field-by-field comparison for the two given Contents.
-     * First they must be of type Element and then the fields are checked against each other.
-     * If the number of equal fields does not match the number of child elements ot Content a,
-     * this method will return false, true otherwise
-     *
-     * @param a
-     * @param b
-     *
-     * @return
-     */
-    private boolean elementEquals(Content a, Content b) {
-        if (!(b instanceof Element)) {
-            return false;
-        }
-        if (!(a instanceof Element)) {
-            return false;
-        }
-        if (a == b) {
-            return true;
-        }
+    private HashMap<String, Object> toDataSet(Element element) {
+        HashMap<String, Object> dataSet = new HashMap<String, Object>();
 
-        Element elB = (Element) b;
-        Element elA = (Element) a;
-
-        if (elA.getContentSize() != elB.getContentSize()) {
-            return false;
-        }
-        int equalHits = 0;
+        for (Element child : element.getChildren()) {
+            DataType type = DataType.fromString(child.getAttributeValue("data-type"));
 
-        for (Element el : elA.getChildren()) {
-            for (Element other : elB.getChildren()) {
-                if (el.getName().equals(other.getName())) {
-                    if (el.getText().equalsIgnoreCase(other.getText())) {
-                        equalHits++;
-                    }
-                }
-            }
+            addTypeToMap(child, dataSet, type);
         }
-        return equalHits == elA.getChildren().size();
+        return dataSet;
     }
 
     /**
@@ -746,25 +713,250 @@ public class XmlDatabase extends Database {
         }
     }
 
-    private void write(String path, Document doc) throws IOException {
-        sortElements(doc);
-        File file = new File(path);
-        RandomAccessFile f = new RandomAccessFile(file.getPath(), "rw");
-        f.getChannel().lock();
-        f.setLength(0);
-        f.write(xmlSerializer.outputString(doc).getBytes(Charset.forName("UTF-8")));
-        f.close();
+    /**
+     * Marks the table as changed and schedules it to be written, called holding the table
+     *
+     * @param table
+     *         the changed table
+     */
+    private void scheduleWrite(final Table table) {
+        table.dirty = true;
+        Set<Table> transaction = transactions.get();
+        if (transaction != null) {
+            transaction.add(table); // Written when the transaction ends
+            return;
+        }
+        if (table.scheduled) {
+            return;
+        }
+        table.scheduled = true;
+        writer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (table) {
+                    table.scheduled = false;
+                }
+                writeTable(table);
+            }
+        }, WRITE_DELAY, TimeUnit.MILLISECONDS);
     }
 
-    private void sortElements(Document doc) {
-        for (Element e : doc.getRootElement().getChildren()) {
-            e.sortChildren(new Comparator<Element>() {
-                @Override
-                public int compare(Element o1, Element o2) {
-                    return o1.getName().compareTo(o2.getName());
+    /**
+     * Writes the table to disk if it has pending changes
+     *
+     * @param table
+     *         the table to write
+     */
+    private void writeTable(Table table) {
+        synchronized (table.writeLock) { // Keeps an older snapshot from replacing a newer one
+            String xml;
+            synchronized (table) {
+                if (!table.dirty) {
+                    return;
                 }
-            });
+                xml = xmlSerializer.outputString(table.document);
+                table.dirty = false;
+                table.writing = true;
+            }
+            try {
+                writeAtomically(table.file, xml);
+            }
+            catch (IOException e) {
+                log.error("Failed to write XML table " + table.file.getPath(), e);
+                synchronized (table) {
+                    table.dirty = true; // Try again with the next change or flush
+                }
+            }
+            finally {
+                synchronized (table) {
+                    table.modified = table.file.lastModified();
+                    table.writing = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes to a temporary file and renames it over the target, so the target is never half written
+     *
+     * @param file
+     *         the file to write
+     * @param xml
+     *         the content
+     *
+     * @throws IOException
+     *         when the file could not be written
+     */
+    private void writeAtomically(File file, String xml) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(xml.getBytes(Charset.forName("UTF-8")));
+            out.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            // Some platforms do not replace existing files on rename
+            if (!file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file.getPath() + " with " + temp.getPath());
+            }
         }
     }
 
+    /**
+     * A parsed table with hash indexes on the columns that have been filtered by.
+     * Guarded by itself, except for the write state.
+     */
+    private static final class Table {
+        private final File file;
+        private final Document document;
+        private final HashMap<String, HashMap<String, Set<Element>>> indexes = new HashMap<String, HashMap<String, Set<Element>>>(); // Column -> text -> entries
+        private final IdentityHashMap<Element, Integer> positions = new IdentityHashMap<Element, Integer>(); // Document order of the entries
+        private final Object writeLock = new Object();
+        private int nextPosition;
+        private boolean scheduled;
+        private volatile boolean dirty;
+        private volatile boolean writing;
+        private volatile long modified;
+
+        private Table(File file, Document document) {
+            this.file = file;
+            this.document = document;
+            this.modified = file.lastModified();
+            for (Element element : document.getRootElement().getChildren()) {
+                positions.put(element, nextPosition++);
+            }
+        }
+
+        /**
+         * Checks if the file was changed by someone else and there are no own changes to lose
+         *
+         * @return {@code true} if the table should be read again
+         */
+        private boolean isStale() {
+            return !dirty && !writing && file.lastModified() != modified;
+        }
+
+        /**
+         * Finds the entries that match all filters, in document order
+         *
+         * @param filters
+         *         FieldName->Value map, the values are compared by their String representation
+         * @param first
+         *         {@code true} to only find the first match
+         *
+         * @return the matching entries
+         */
+        private List<Element> find(Map<String, Object> filters, boolean first) {
+            List<Element> all = document.getRootElement().getChildren();
+            if (filters.isEmpty()) {
+                if (first) {
+                    return all.isEmpty() ? Collections.<Element>emptyList() : Collections.singletonList(all.get(0));
+                }
+                return new ArrayList<Element>(all);
+            }
+            // Start with the smallest candidate set
+            Set<Element> candidates = null;
+            for (Map.Entry<String, Object> filter : filters.entrySet()) {
+                Set<Element> matches = getIndex(filter.getKey()).get(String.valueOf(filter.getValue()));
+                if (matches == null) {
+                    return Collections.emptyList();
+                }
+                if (candidates == null || matches.size() < candidates.size()) {
+                    candidates = matches;
+                }
+            }
+            ArrayList<Element> found = new ArrayList<Element>();
+            for (Element element : candidates) {
+                if (matches(element, filters)) {
+                    found.add(element);
+                }
+            }
+            if (found.size() > 1) {
+                Collections.sort(found, new Comparator<Element>() {
+                    @Override
+                    public int compare(Element o1, Element o2) {
+                        return positions.get(o1).compareTo(positions.get(o2));
+                    }
+                });
+            }
+            if (first && found.size() > 1) {
+                return found.subList(0, 1);
+            }
+            return found;
+        }
+
+        private boolean matches(Element element, Map<String, Object> filters) {
+            for (Map.Entry<String, Object> filter : filters.entrySet()) {
+                Element child = element.getChild(filter.getKey());
+                if (child == null || !child.getText().equals(String.valueOf(filter.getValue()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private HashMap<String, Set<Element>> getIndex(String column) {
+            HashMap<String, Set<Element>> index = indexes.get(column);
+            if (index == null) {
+                index = new HashMap<String, Set<Element>>();
+                for (Element element : document.getRootElement().getChildren()) {
+                    addToIndex(index, column, element);
+                }
+                indexes.put(column, index);
+            }
+            return index;
+        }
+
+        private void addToIndex(HashMap<String, Set<Element>> index, String column, Element element) {
+            Element child = element.getChild(column);
+            if (child == null) {
+                return;
+            }
+            Set<Element> elements = index.get(child.getText());
+            if (elements == null) {
+                elements = new LinkedHashSet<Element>();
+                index.put(child.getText(), elements);
+            }
+            elements.add(element);
+        }
+
+        /** Adds a new entry, it must have been appended to the document */
+        private void add(Element element) {
+            positions.put(element, nextPosition++);
+            index(element);
+        }
+
+        /** Removes an entry, before it is detached from the document */
+        private void remove(Element element) {
+            unindex(element);
+            positions.remove(element);
+        }
+
+        /** Adds the entry to the indexes with its current values */
+        private void index(Element element) {
+            for (Map.Entry<String, HashMap<String, Set<Element>>> index : indexes.entrySet()) {
+                addToIndex(index.getValue(), index.getKey(), element);
+            }
+        }
+
+        /** Removes the entry from the indexes, call before changing its values */
+        private void unindex(Element element) {
+            for (Map.Entry<String, HashMap<String, Set<Element>>> index : indexes.entrySet()) {
+                Element child = element.getChild(index.getKey());
+                if (child == null) {
+                    continue;
+                }
+                Set<Element> elements = index.getValue().get(child.getText());
+                if (elements != null) {
+                    elements.remove(element);
+                    if (elements.isEmpty()) {
+                        index.getValue().remove(child.getText());
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,205 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.Plugin;
+import net.canarymod.plugin.RegisteredPluginListener;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.canarymod.Canary.log;
+
+/**
+ * Runs {@link HookHandler#async()} handlers off the calling thread.
+ * <p/>
+ * Every {@link net.canarymod.plugin.PluginListener} is bound to one single threaded lane, so the hooks
+ * one listener receives are handled in the order they were called. Each lane has a bounded queue;
+ * if it is full the calling thread waits for room, which throttles the caller without reordering hooks.
+ */
+final class AsyncHookQueue {
+    private static final int QUEUE_CAPACITY = 4096;
+    private final ThreadPoolExecutor[] lanes;
+    private volatile boolean shutdown;
+    private final AtomicBoolean warnedFull = new AtomicBoolean();
+
+    AsyncHookQueue() {
+        lanes = new ThreadPoolExecutor[Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = createLane(i); // Threads are only started with the first submitted hook
+        }
+    }
+
+    /**
+     * Queues the hook for the listener
+     *
+     * @param listener
+     *         the async {@link RegisteredPluginListener}
+     * @param hook
+     *         the {@link Hook} to pass
+     */
+    void submit(RegisteredPluginListener listener, Hook hook) {
+        Job job = new Job(listener, hook);
+        if (shutdown) {
+            job.run();
+            return;
+        }
+        lanes[(System.identityHashCode(listener.getListener()) & 0x7FFFFFFF) % lanes.length].execute(job);
+    }
+
+    /**
+     * Lets the queued hooks of a plugin finish before it is disabled.
+     * The plugin's listeners have to be unregistered already, so no new hooks are queued for it.
+     * Hooks that did not run within the timeout are discarded.
+     *
+     * @param plugin
+     *         the {@link Plugin} whose listeners were unregistered
+     * @param timeout
+     *         milliseconds to wait for each lane
+     */
+    void drain(Plugin plugin, long timeout) {
+        if (shutdown) {
+            return; // Lanes already finished, later hooks ran on the calling thread
+        }
+        if (!(Thread.currentThread() instanceof LaneThread)) {
+            // An async handler cannot wait for the lanes, its own one would never get to the barrier
+            for (ThreadPoolExecutor lane : lanes) {
+                if (lane.getPoolSize() == 0 || !hasJobs(lane, plugin)) {
+                    continue;
+                }
+                final CountDownLatch barrier = new CountDownLatch(1);
+                lane.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        barrier.countDown();
+                    }
+                });
+                try {
+                    if (!barrier.await(timeout, TimeUnit.MILLISECONDS)) {
+                        log.warn("Async hook handlers of " + plugin.getName() + " did not finish in time");
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        int dropped = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            Iterator<Runnable> itr = lane.getQueue().iterator();
+            while (itr.hasNext()) {
+                Runnable job = itr.next();
+                if (job instanceof Job && ((Job) job).listener.getPlugin().equals(plugin)) {
+                    itr.remove();
+                    dropped++;
+                }
+            }
+        }
+        if (dropped > 0) {
+            log.warn(dropped + " async hooks for " + plugin.getName() + " were dropped, the plugin is being disabled");
+        }
+    }
+
+    private boolean hasJobs(ThreadPoolExecutor lane, Plugin plugin) {
+        if (lane.getActiveCount() > 0) {
+            return true; // May be running one of the plugin's hooks
+        }
+        for (Runnable job : lane.getQueue()) {
+            if (job instanceof Job && ((Job) job).listener.getPlugin().equals(plugin)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ThreadPoolExecutor createLane(final int index) {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new LaneThread(r, "Canary Async Hooks #" + index);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                if (executor.isShutdown() || Thread.currentThread() instanceof LaneThread) {
+                    // Shut down, or an async handler called a hook: waiting for its own lane would never end
+                    r.run();
+                    return;
+                }
+                if (warnedFull.compareAndSet(false, true)) {
+                    log.warn("Async hook queue is full, callers wait for async hook handlers to catch up");
+                }
+                try {
+                    executor.getQueue().put(r);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Interrupted while waiting for the async hook queue, a hook was dropped");
+                    return;
+                }
+                if (executor.isShutdown() && executor.getQueue().remove(r)) {
+                    r.run(); // Queued after the lane stopped taking hooks
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new hooks and waits for the queued ones to finish.
+     * Hooks submitted afterwards are handled on the calling thread.
+     *
+     * @param timeout
+     *         milliseconds to wait for each lane
+     */
+    void shutdown(long timeout) {
+        shutdown = true;
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+            try {
+                if (!lane.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                    log.warn("Async hook handlers did not finish in time, " + lane.getQueue().size() + " hooks were dropped");
+                    lane.shutdownNow();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** A queued hook for one listener */
+    private static final class Job implements Runnable {
+        private final RegisteredPluginListener listener;
+        private final Hook hook;
+
+        private Job(RegisteredPluginListener listener, Hook hook) {
+            this.listener = listener;
+            this.hook = hook;
+        }
+
+        @Override
+        public void run() {
+            try {
+                listener.execute(hook);
+            }
+            catch (HookExecutionException hexex) {
+                log.error("Exception while executing Hook: " + hook.getHookName() + " asynchronously in PluginListener: " +
+                        listener.getListener().getClass().getSimpleName() + " (Plugin: " + listener.getPlugin().getName() + ")", hexex.getCause());
+            }
+        }
+    }
+
+    /** Thread of a lane */
+    private static final class LaneThread extends Thread {
+        private LaneThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.PluginListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.canarymod.Canary.log;
+
+/**
+ * Creates the {@link Dispatcher}s used by the {@link HookExecutor}.
+ * <p/>
+ * For every handler method a small class is generated that calls the handler
+ * directly (checkcast + invokevirtual) instead of going through {@link Method#invoke(Object, Object...)}.
+ * If that is not possible (non-public listener, handler or hook class, or a class loader
+ * that cannot see the involved classes) a reflection based dispatcher is used instead.
+ */
+public final class DispatcherFactory {
+    private static final String GENERATED_PACKAGE = "net.canarymod.hook.generated.";
+    private static final String SUPER_NAME = internalName(GeneratedDispatcher.class);
+    private static final String DISPATCH_DESC = "(" + descriptor(PluginListener.class) + descriptor(Hook.class) + ")V";
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private DispatcherFactory() {
+    }
+
+    /**
+     * Creates a {@link Dispatcher} for the given handler method.
+     * Tries to generate a direct call dispatcher first and falls back to reflection.
+     *
+     * @param listenerCls
+     *         the class of the {@link PluginListener} the handler belongs to
+     * @param method
+     *         the handler method
+     * @param hookCls
+     *         the {@link Hook} class the handler accepts
+     *
+     * @return the {@link Dispatcher}
+     */
+    public static Dispatcher createDispatcher(Class<? extends PluginListener> listenerCls, Method method, Class<? extends Hook> hookCls) {
+        Dispatcher dispatcher = createGeneratedDispatcher(listenerCls, method, hookCls);
+        return dispatcher != null ? dispatcher : createReflectiveDispatcher(method);
+    }
+
+    /**
+     * Creates a {@link Dispatcher} that invokes the handler method through reflection
+     *
+     * @param method
+     *         the handler method
+     *
+     * @return the {@link Dispatcher}
+     */
+    public static Dispatcher createReflectiveDispatcher(final Method method) {
+        return new Dispatcher() {
+
+            @Override
+            public void execute(PluginListener listener, Hook hook) {
+                try {
+                    method.invoke(listener, hook);
+                }
+                catch (Exception ex) {
+                    throw new HookExecutionException(ex.getMessage(), ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * Generates a {@link Dispatcher} class that calls the handler method directly
+     *
+     * @param listenerCls
+     *         the class of the {@link PluginListener} the handler belongs to
+     * @param method
+     *         the handler method
+     * @param hookCls
+     *         the {@link Hook} class the handler accepts
+     *
+     * @return the generated {@link Dispatcher}; {@code null} if no class could be generated for this handler
+     */
+    public static Dispatcher createGeneratedDispatcher(Class<? extends PluginListener> listenerCls, Method method, Class<? extends Hook> hookCls) {
+        Class<?> owner = method.getDeclaringClass();
+        int mod = method.getModifiers();
+
+        // The generated class lives in another runtime package, so everything it touches must be public
+        if (!Modifier.isPublic(mod) || Modifier.isStatic(mod) || owner.isInterface()
+                || !Modifier.isPublic(owner.getModifiers()) || !Modifier.isPublic(hookCls.getModifiers())
+                || !owner.isAssignableFrom(listenerCls)) {
+            return null;
+        }
+        ClassLoader parent = listenerCls.getClassLoader() != null ? listenerCls.getClassLoader() : DispatcherFactory.class.getClassLoader();
+        try {
+            if (!isVisible(parent, owner) || !isVisible(parent, hookCls) || !isVisible(parent, GeneratedDispatcher.class)) {
+                return null;
+            }
+            String name = GENERATED_PACKAGE + listenerCls.getSimpleName() + "_" + method.getName() + "_" + counter.incrementAndGet();
+            byte[] bytes = generateClass(name.replace('.', '/'), owner, method, hookCls);
+            Class<?> generated = new DispatcherClassLoader(parent).define(name, bytes);
+
+            return (Dispatcher) generated.newInstance();
+        }
+        catch (Throwable t) {
+            log.debug("Could not generate a dispatcher for " + owner.getName() + "." + method.getName() + ", falling back to reflection", t);
+            return null;
+        }
+    }
+
+    private static boolean isVisible(ClassLoader loader, Class<?> cls) {
+        try {
+            return Class.forName(cls.getName(), false, loader) == cls;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /*
+     * Writes a class file equivalent to:
+     *
+     * public final class <name> extends GeneratedDispatcher {
+     *     public void dispatch(PluginListener listener, Hook hook) {
+     *         ((<owner>) listener).<method>((<hookCls>) hook);
+     *     }
+     * }
+     */
+    private static byte[] generateClass(String name, Class<?> owner, Method method, Class<?> hookCls) throws IOException {
+        Class<?> returnType = method.getReturnType();
+        String methodDesc = "(" + descriptor(hookCls) + ")" + descriptor(returnType);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0); // minor
+        out.writeShort(49); // major, Java 5 - no stack map frames required
+
+        // Constant pool
+        out.writeShort(20); // entry count + 1
+        utf8(out, name); // #1
+        out.writeByte(7); // #2 Class #1
+        out.writeShort(1);
+        utf8(out, SUPER_NAME); // #3
+        out.writeByte(7); // #4 Class #3
+        out.writeShort(3);
+        utf8(out, "<init>"); // #5
+        utf8(out, "()V"); // #6
+        out.writeByte(12); // #7 NameAndType #5:#6
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeByte(10); // #8 Methodref #4.#7
+        out.writeShort(4);
+        out.writeShort(7);
+        utf8(out, internalName(owner)); // #9
+        out.writeByte(7); // #10 Class #9
+        out.writeShort(9);
+        utf8(out, internalName(hookCls)); // #11
+        out.writeByte(7); // #12 Class #11
+        out.writeShort(11);
+        utf8(out, method.getName()); // #13
+        utf8(out, methodDesc); // #14
+        out.writeByte(12); // #15 NameAndType #13:#14
+        out.writeShort(13);
+        out.writeShort(14);
+        out.writeByte(10); // #16 Methodref #10.#15
+        out.writeShort(10);
+        out.writeShort(15);
+        utf8(out, "dispatch"); // #17
+        utf8(out, DISPATCH_DESC); // #18
+        utf8(out, "Code"); // #19
+
+        out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+        out.writeShort(2); // this
+        out.writeShort(4); // super
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        // public <init>() { super(); }
+        byte[] init = {
+                0x2A, // aload_0
+                (byte) 0xB7, 0x00, 0x08, // invokespecial #8
+                (byte) 0xB1 // return
+        };
+        method(out, 5, 6, 1, 1, init);
+
+        // public void dispatch(PluginListener, Hook)
+        ByteArrayOutputStream code = new ByteArrayOutputStream(16);
+        code.write(0x2B); // aload_1
+        code.write(0xC0); // checkcast #10
+        code.write(0x00);
+        code.write(0x0A);
+        code.write(0x2C); // aload_2
+        code.write(0xC0); // checkcast #12
+        code.write(0x00);
+        code.write(0x0C);
+        code.write(0xB6); // invokevirtual #16
+        code.write(0x00);
+        code.write(0x10);
+        if (returnType == long.class || returnType == double.class) {
+            code.write(0x58); // pop2
+        }
+        else if (returnType != void.class) {
+            code.write(0x57); // pop
+        }
+        code.write(0xB1); // return
+        method(out, 17, 18, 2, 3, code.toByteArray());
+
+        out.writeShort(0); // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void method(DataOutputStream out, int nameIndex, int descIndex, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(nameIndex);
+        out.writeShort(descIndex);
+        out.writeShort(1); // attributes
+        out.writeShort(19); // Code
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // code attributes
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static String internalName(Class<?> cls) {
+        return cls.getName().replace('.', '/');
+    }
+
+    private static String descriptor(Class<?> cls) {
+        if (cls.isArray()) {
+            return internalName(cls);
+        }
+        if (!cls.isPrimitive()) {
+            return "L" + internalName(cls) + ";";
+        }
+        if (cls == void.class) {
+            return "V";
+        }
+        if (cls == boolean.class) {
+            return "Z";
+        }
+        if (cls == byte.class) {
+            return "B";
+        }
+        if (cls == char.class) {
+            return "C";
+        }
+        if (cls == short.class) {
+            return "S";
+        }
+        if (cls == int.class) {
+            return "I";
+        }
+        if (cls == long.class) {
+            return "J";
+        }
+        if (cls == float.class) {
+            return "F";
+        }
+        return "D";
+    }
+
+    /** One loader per generated class, so a dispatcher can be collected along with its plugin */
+    private static final class DispatcherClassLoader extends ClassLoader {
+
+        DispatcherClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
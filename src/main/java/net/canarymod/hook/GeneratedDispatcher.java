@@ -0,0 +1,37 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.PluginListener;
+
+/**
+ * Base class for the dispatchers generated by {@link DispatcherFactory}.
+ * Subclasses are created at runtime and only implement {@link #dispatch(PluginListener, Hook)}
+ * as a direct call to the handler method.
+ * <p/>
+ * This class has to be public as the generated classes live in their own class loader.
+ */
+public abstract class GeneratedDispatcher extends Dispatcher {
+
+    @Override
+    public final void execute(PluginListener listener, Hook hook) {
+        try {
+            dispatch(listener, hook);
+        }
+        catch (Throwable t) {
+            // Same contract as Method.invoke: everything the handler throws ends up here
+            throw new HookExecutionException(t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Directly invokes the handler method on the listener
+     *
+     * @param listener
+     *         the {@link PluginListener} to invoke the handler on
+     * @param hook
+     *         the {@link Hook} to pass to the handler
+     *
+     * @throws Throwable
+     *         whatever the handler method throws
+     */
+    public abstract void dispatch(PluginListener listener, Hook hook) throws Throwable;
+}
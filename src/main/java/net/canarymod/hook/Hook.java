@@ -1,5 +1,6 @@
 package net.canarymod.hook;
 
+import com.google.common.base.Supplier;
 import net.canarymod.Canary;
 
 /**
@@ -38,6 +39,28 @@ public abstract class Hook {
         return this;
     }
 
+    /**
+     * Builds and calls a Hook only if something listens for it.
+     * Use this where creating the hook itself is costly (new Locations etc.) and fired very often.
+     *
+     * @param hookCls
+     *         the class of the hook the supplier builds
+     * @param hook
+     *         supplies the hook, only used if there are listeners
+     * @param <T>
+     *         the hook type
+     *
+     * @return the called hook; {@code null} if nothing listens for it and the hook was not built
+     */
+    public static <T extends Hook> T call(Class<T> hookCls, Supplier<T> hook) {
+        if (!Canary.hooks().hasListeners(hookCls)) {
+            return null;
+        }
+        T built = hook.get();
+        Canary.hooks().callHook(built);
+        return built;
+    }
+
     // Check for execution
     final boolean executed() {
         return executed;
@@ -0,0 +1,78 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.Plugin;
+import net.canarymod.plugin.PluginListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static net.canarymod.Canary.log;
+
+/**
+ * Collects hooks for a {@link HookBatchListener} until the batch is flushed.
+ * Registered as the dispatcher of a passive listener, so it sees the hooks after all other handlers ran.
+ *
+ * @param <T>
+ *         the hook type
+ */
+final class HookBatch<T extends Hook> extends Dispatcher {
+    private final Class<T> hookCls;
+    private final HookBatchListener<T> listener;
+    private final HookKey<T> key;
+    private final Plugin plugin;
+    private List<T> hooks = new ArrayList<T>();
+    private LinkedHashMap<Object, T> latest = new LinkedHashMap<Object, T>();
+
+    HookBatch(Class<T> hookCls, HookBatchListener<T> listener, HookKey<T> key, Plugin plugin) {
+        this.hookCls = hookCls;
+        this.listener = listener;
+        this.key = key;
+        this.plugin = plugin;
+    }
+
+    Plugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public void execute(PluginListener listener, Hook hook) {
+        T cast = hookCls.cast(hook);
+        synchronized (this) {
+            if (key == null) {
+                hooks.add(cast);
+            }
+            else {
+                latest.put(key.getKey(cast), cast);
+            }
+        }
+    }
+
+    /** Hands the hooks collected so far to the listener */
+    void flush() {
+        List<T> batch;
+        synchronized (this) {
+            if (key == null) {
+                if (hooks.isEmpty()) {
+                    return;
+                }
+                batch = hooks;
+                hooks = new ArrayList<T>();
+            }
+            else {
+                if (latest.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<T>(latest.values());
+                latest = new LinkedHashMap<Object, T>();
+            }
+        }
+        try {
+            listener.onBatch(batch);
+        }
+        catch (Throwable t) {
+            log.error("Exception while delivering a batch of " + hookCls.getSimpleName() + " to " +
+                    listener.getClass().getSimpleName() + " (Plugin: " + plugin.getName() + ")", t);
+        }
+    }
+}
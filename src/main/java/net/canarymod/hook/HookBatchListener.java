@@ -0,0 +1,28 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.PluginListener;
+
+import java.util.List;
+
+/**
+ * Receives the hooks of one type collected over a tick in a single call,
+ * instead of one handler call per hook.
+ * <p/>
+ * Only hooks that were not canceled are collected. Batches are delivered when the next
+ * {@link net.canarymod.hook.system.ServerTickHook} is called.
+ *
+ * @param <T>
+ *         the hook type
+ *
+ * @see HookExecutor#registerBatchListener(Class, HookBatchListener, net.canarymod.plugin.Plugin)
+ */
+public interface HookBatchListener<T extends Hook> extends PluginListener {
+
+    /**
+     * Called once per tick with the collected hooks, if there were any
+     *
+     * @param hooks
+     *         the hooks in call order
+     */
+    void onBatch(List<T> hooks);
+}
@@ -1,15 +1,22 @@
 package net.canarymod.hook;
 
-import com.google.common.collect.ArrayListMultimap;
 import net.canarymod.ToolBox;
+import net.canarymod.hook.system.ServerTickHook;
 import net.canarymod.plugin.Plugin;
 import net.canarymod.plugin.PluginListener;
+import net.canarymod.plugin.Priority;
 import net.canarymod.plugin.RegisteredPluginListener;
 
 import java.lang.reflect.Method;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static net.canarymod.Canary.log;
 
@@ -21,8 +28,20 @@ import static net.canarymod.Canary.log;
  * @author Yariv Livay
  */
 public class HookExecutor implements HookExecutorInterface {
+    private static final RegisteredPluginListener[] NO_LISTENERS = new RegisteredPluginListener[0];
     private final PluginComparator listener_comp = new PluginComparator();
-    final ArrayListMultimap<Class<? extends Hook>, RegisteredPluginListener> listeners = ArrayListMultimap.create();
+    /** Listeners per hook class they were registered for. Guarded by {@link #lock} */
+    final HashMap<Class<? extends Hook>, RegisteredPluginListener[]> listeners = new HashMap<Class<? extends Hook>, RegisteredPluginListener[]>();
+    /**
+     * Priority sorted listener chain per concrete hook class, including the listeners of all its super classes.
+     * The arrays are never modified once published and the whole cache is dropped whenever registration changes,
+     * so dispatch can read them without locking.
+     */
+    private final ConcurrentHashMap<Class<? extends Hook>, RegisteredPluginListener[]> resolved = new ConcurrentHashMap<Class<? extends Hook>, RegisteredPluginListener[]>();
+    private final Object lock = new Object();
+    private final HookTimings timings = new HookTimings(this);
+    private final AsyncHookQueue asyncQueue = new AsyncHookQueue();
+    private final CopyOnWriteArrayList<HookBatch<?>> batches = new CopyOnWriteArrayList<HookBatch<?>>();
 
     /** Register a {@link PluginListener} for a system hook */
     @Override
@@ -48,23 +67,99 @@ public class HookExecutor implements HookExecutorInterface {
                 throw new HookConsistencyException("Hook is not assignable from " + hookCls.getName());
             }
 
-            Dispatcher dispatcher = new Dispatcher() {
-
-                @Override
-                public void execute(PluginListener listener, Hook hook) {
-                    try {
-                        method.invoke(listener, hook);
-                    }
-                    catch (Exception ex) {
-                        throw new HookExecutionException(ex.getMessage(), ex);
-                    }
-                }
-            };
+            Dispatcher dispatcher = DispatcherFactory.createDispatcher(listener.getClass(), method, (Class<? extends Hook>) hookCls);
+            if (handler.async() && CancelableHook.class.isAssignableFrom(hookCls)) {
+                throw new HookConsistencyException("Handler " + method.getName() + " can not be async, " + hookCls.getSimpleName() + " is cancelable");
+            }
             dispatcher.ignoreCanceled = handler.ignoreCanceled();
+            dispatcher.async = handler.async();
 
             // We checked the class above, ignore unchecked warnings.
-            listeners.put((Class<? extends Hook>) hookCls, new RegisteredPluginListener(listener, plugin, dispatcher, handler.priority()));
-            Collections.sort(listeners.get((Class<? extends Hook>) hookCls), listener_comp);
+            addListener((Class<? extends Hook>) hookCls, new RegisteredPluginListener(listener, plugin, dispatcher, handler.priority(), method));
+        }
+    }
+
+    /**
+     * Register a {@link HookBatchListener} that receives all (not canceled) hooks of the given type once per tick.
+     * Use this for listeners that only need to know what happened, like statistics on move hooks.
+     * Listeners that want to cancel or alter hooks still need a regular {@link HookHandler}.
+     *
+     * @param hookCls
+     *         the {@link Hook} class to collect
+     * @param listener
+     *         the {@link HookBatchListener}
+     * @param plugin
+     *         the {@link Plugin}
+     * @param <T>
+     *         the hook type
+     */
+    public <T extends Hook> void registerBatchListener(Class<T> hookCls, HookBatchListener<T> listener, Plugin plugin) {
+        registerBatchListener(hookCls, listener, null, plugin);
+    }
+
+    /**
+     * Register a {@link HookBatchListener} that receives the latest (not canceled) hook per key once per tick,
+     * for example the last {@link net.canarymod.hook.player.PlayerMoveHook} of each player with {@link HookKey#PLAYER_MOVE}.
+     *
+     * @param hookCls
+     *         the {@link Hook} class to collect
+     * @param listener
+     *         the {@link HookBatchListener}
+     * @param key
+     *         the {@link HookKey} to coalesce hooks by; {@code null} to receive every hook
+     * @param plugin
+     *         the {@link Plugin}
+     * @param <T>
+     *         the hook type
+     */
+    public <T extends Hook> void registerBatchListener(Class<T> hookCls, HookBatchListener<T> listener, HookKey<T> key, Plugin plugin) {
+        HookBatch<T> batch = new HookBatch<T>(hookCls, listener, key, plugin);
+        batches.add(batch);
+        addListener(hookCls, new RegisteredPluginListener(listener, plugin, batch, Priority.PASSIVE));
+    }
+
+    private void addListener(Class<? extends Hook> hookCls, RegisteredPluginListener listener) {
+        synchronized (lock) {
+            RegisteredPluginListener[] current = listeners.get(hookCls);
+            if (current == null) {
+                current = NO_LISTENERS;
+            }
+            RegisteredPluginListener[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+            Arrays.sort(updated, listener_comp); // stable, equal priorities keep registration order
+            listeners.put(hookCls, updated);
+            resolved.clear();
+        }
+    }
+
+    /**
+     * Gets the listener chain for a concrete hook class, resolving and caching it if needed
+     *
+     * @param hookCls
+     *         the {@link Hook} class
+     *
+     * @return the priority sorted listeners for the hook class and its super classes
+     */
+    RegisteredPluginListener[] getListenerChain(Class<? extends Hook> hookCls) {
+        RegisteredPluginListener[] chain = resolved.get(hookCls);
+        if (chain != null) {
+            return chain;
+        }
+        synchronized (lock) {
+            chain = resolved.get(hookCls);
+            if (chain == null) {
+                List<RegisteredPluginListener> merged = new ArrayList<RegisteredPluginListener>();
+                for (Class<?> cls = hookCls; cls != null && Hook.class.isAssignableFrom(cls); cls = cls.getSuperclass()) {
+                    RegisteredPluginListener[] registered = listeners.get(cls);
+                    if (registered != null) {
+                        merged.addAll(Arrays.asList(registered));
+                    }
+                }
+                chain = merged.isEmpty() ? NO_LISTENERS : merged.toArray(new RegisteredPluginListener[merged.size()]);
+                Arrays.sort(chain, listener_comp); // stable, so the most specific hook class goes first on equal priority
+                resolved.put(hookCls, chain);
+            }
+            return chain;
         }
     }
 
@@ -76,13 +171,77 @@ public class HookExecutor implements HookExecutorInterface {
      */
     @Override
     public void unregisterPluginListeners(Plugin plugin) {
-        Iterator<RegisteredPluginListener> iter = listeners.values().iterator();
-        while (iter.hasNext()) {
-            RegisteredPluginListener listener = iter.next();
-            if (listener.getPlugin().equals(plugin)) {
-                iter.remove();
+        synchronized (lock) {
+            Iterator<Map.Entry<Class<? extends Hook>, RegisteredPluginListener[]>> iter = listeners.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<Class<? extends Hook>, RegisteredPluginListener[]> entry = iter.next();
+                List<RegisteredPluginListener> remaining = new ArrayList<RegisteredPluginListener>();
+                for (RegisteredPluginListener listener : entry.getValue()) {
+                    if (!listener.getPlugin().equals(plugin)) {
+                        remaining.add(listener);
+                    }
+                }
+                if (remaining.isEmpty()) {
+                    iter.remove();
+                }
+                else if (remaining.size() != entry.getValue().length) {
+                    entry.setValue(remaining.toArray(new RegisteredPluginListener[remaining.size()]));
+                }
+            }
+            resolved.clear();
+        }
+        for (HookBatch<?> batch : batches) {
+            if (batch.getPlugin().equals(plugin)) {
+                batches.remove(batch);
+            }
+        }
+        // Nothing new is queued for the plugin now, let the queued hooks finish before it is disabled
+        asyncQueue.drain(plugin, 5000);
+    }
+
+    /**
+     * Gets all currently registered listeners
+     *
+     * @return list of {@link RegisteredPluginListener}s
+     */
+    List<RegisteredPluginListener> getRegisteredListeners() {
+        List<RegisteredPluginListener> all = new ArrayList<RegisteredPluginListener>();
+        synchronized (lock) {
+            for (RegisteredPluginListener[] registered : listeners.values()) {
+                all.addAll(Arrays.asList(registered));
             }
         }
+        return all;
+    }
+
+    /**
+     * Gets the timing instrumentation of this executor
+     *
+     * @return the {@link HookTimings}
+     */
+    public HookTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Waits for queued asynchronous hook handlers to finish and stops the async threads.
+     * Hooks called afterwards are handled on the calling thread. Used when shutting down the server.
+     */
+    public void shutdownAsync() {
+        asyncQueue.shutdown(5000);
+    }
+
+    /**
+     * Checks if anything listens for the given hook class, including listeners for its super classes.
+     * Call sites that are expensive to build a hook for can use this to skip creating the hook entirely.
+     *
+     * @param hookCls
+     *         the {@link Hook} class
+     *
+     * @return {@code true} if calling a hook of this class would reach a listener; {@code false} if not
+     */
+    public boolean hasListeners(Class<? extends Hook> hookCls) {
+        return getListenerChain(hookCls).length != 0;
     }
 
     /** Call a system hook */
@@ -92,14 +251,34 @@ public class HookExecutor implements HookExecutorInterface {
             return;
         }
         hook.hasExecuted();
-        if (!this.listeners.containsKey(hook.getClass())) {
-            return;
+        if (hook.getClass() == ServerTickHook.class) {
+            timings.endTick();
+            for (HookBatch<?> batch : batches) {
+                batch.flush();
+            }
         }
-        Iterator<RegisteredPluginListener> iter = this.listeners.get(hook.getClass()).iterator();
-        while (iter.hasNext()) {
-            RegisteredPluginListener listener = iter.next();
+        RegisteredPluginListener[] snapshot = getListenerChain(hook.getClass());
+        boolean timed = snapshot.length != 0 && timings.sample(hook.getClass());
+        for (int i = 0; i < snapshot.length; i++) {
+            RegisteredPluginListener listener = snapshot[i];
+            if (listener.isAsync() && !(hook instanceof CancelableHook)) {
+                // A handler for a base hook type can still receive cancelable hooks, those stay synchronous
+                asyncQueue.submit(listener, hook);
+                continue;
+            }
             try {
-                listener.execute(hook);
+                if (timed) {
+                    long start = System.nanoTime();
+                    try {
+                        listener.execute(hook);
+                    }
+                    finally {
+                        timings.record(listener, hook.getClass(), System.nanoTime() - start);
+                    }
+                }
+                else {
+                    listener.execute(hook);
+                }
             }
             catch (HookExecutionException hexex) {
                 log.error("Exception while executing Hook: " + hook.getHookName() + " in PluginListener: " +
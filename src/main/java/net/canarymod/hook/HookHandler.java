@@ -18,4 +18,12 @@ public @interface HookHandler {
     Priority priority() default Priority.NORMAL;
 
     boolean ignoreCanceled() default false;
+
+    /**
+     * Handle the hook off the server thread. Only for observing handlers:
+     * the hook may already be outdated once the handler runs and changes to it have no effect.
+     * Not allowed for {@link CancelableHook}s, which are always handled on the calling thread.
+     * Hooks one listener receives asynchronously are still handled in the order they were called.
+     */
+    boolean async() default false;
 }
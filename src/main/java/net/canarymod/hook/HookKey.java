@@ -0,0 +1,50 @@
+package net.canarymod.hook;
+
+import net.canarymod.hook.entity.EntityMoveHook;
+import net.canarymod.hook.entity.VehicleMoveHook;
+import net.canarymod.hook.player.PlayerMoveHook;
+
+/**
+ * Extracts the key hooks are coalesced by when batching only the latest hook per key
+ *
+ * @param <T>
+ *         the hook type
+ *
+ * @see HookExecutor#registerBatchListener(Class, HookBatchListener, HookKey, net.canarymod.plugin.Plugin)
+ */
+public interface HookKey<T extends Hook> {
+
+    /** Latest {@link PlayerMoveHook} per player */
+    public static final HookKey<PlayerMoveHook> PLAYER_MOVE = new HookKey<PlayerMoveHook>() {
+        @Override
+        public Object getKey(PlayerMoveHook hook) {
+            return hook.getPlayer();
+        }
+    };
+
+    /** Latest {@link EntityMoveHook} per entity */
+    public static final HookKey<EntityMoveHook> ENTITY_MOVE = new HookKey<EntityMoveHook>() {
+        @Override
+        public Object getKey(EntityMoveHook hook) {
+            return hook.getEntity();
+        }
+    };
+
+    /** Latest {@link VehicleMoveHook} per vehicle */
+    public static final HookKey<VehicleMoveHook> VEHICLE_MOVE = new HookKey<VehicleMoveHook>() {
+        @Override
+        public Object getKey(VehicleMoveHook hook) {
+            return hook.getVehicle();
+        }
+    };
+
+    /**
+     * Gets the key of the hook
+     *
+     * @param hook
+     *         the hook
+     *
+     * @return the key; hooks with equal keys replace each other within a tick
+     */
+    Object getKey(T hook);
+}
@@ -0,0 +1,108 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.RegisteredPluginListener;
+
+/**
+ * Timing record for one listener method and one hook class
+ *
+ * @see HookTimings
+ */
+public final class HookTiming {
+    private final RegisteredPluginListener listener;
+    private final Class<? extends Hook> hookCls;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public HookTiming(RegisteredPluginListener listener, Class<? extends Hook> hookCls) {
+        this.listener = listener;
+        this.hookCls = hookCls;
+    }
+
+    synchronized void record(long nanos) {
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    synchronized void reset() {
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * Gets the {@link RegisteredPluginListener} this timing belongs to
+     *
+     * @return the listener
+     */
+    public RegisteredPluginListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Gets the name of the owning plugin
+     *
+     * @return plugin name
+     */
+    public String getPluginName() {
+        return listener.getPlugin().getName();
+    }
+
+    /**
+     * Gets a readable name of the handler method, as {@code ListenerClass.method}
+     *
+     * @return handler name
+     */
+    public String getHandlerName() {
+        String cls = listener.getListener().getClass().getSimpleName();
+        return listener.getMethod() != null ? cls + "." + listener.getMethod().getName() : cls;
+    }
+
+    /**
+     * Gets the hook class that was timed
+     *
+     * @return hook class
+     */
+    public Class<? extends Hook> getHookClass() {
+        return hookCls;
+    }
+
+    /**
+     * Gets the number of timed (sampled) invocations
+     *
+     * @return invocation count
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the summed up time of all timed invocations
+     *
+     * @return total nanoseconds
+     */
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Gets the longest timed invocation
+     *
+     * @return max nanoseconds
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Gets the average time of a timed invocation
+     *
+     * @return average nanoseconds
+     */
+    public synchronized long getAverageNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+}
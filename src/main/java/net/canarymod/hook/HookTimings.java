@@ -0,0 +1,165 @@
+package net.canarymod.hook;
+
+import net.canarymod.plugin.RegisteredPluginListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional timing instrumentation for the {@link HookExecutor}.
+ * <p/>
+ * When enabled every n-th call of each hook class (the sample rate) is timed for each listener it reaches.
+ * Timings are kept per plugin, listener method and hook class. Additionally the time spent per plugin
+ * is summed up between two {@link net.canarymod.hook.system.ServerTickHook}s for a per tick breakdown,
+ * scaled by the sample rate to estimate the time of all calls.
+ * When disabled, the cost on dispatch is a single field read.
+ */
+public class HookTimings {
+    private final HookExecutor executor;
+    private volatile int sampleRate; // 0 = disabled
+    // Calls since the last sample per hook class name, names do not keep plugin hook classes loaded.
+    // Only decides what to sample, races do not matter
+    private final ConcurrentHashMap<String, int[]> sampleCounters = new ConcurrentHashMap<String, int[]>();
+    private volatile ConcurrentHashMap<String, AtomicLong> currentTick = new ConcurrentHashMap<String, AtomicLong>();
+    private volatile Map<String, Long> lastTick = Collections.emptyMap();
+
+    HookTimings(HookExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the sample rate. 1 times every hook call, n times every n-th hook call, 0 or less disables timings.
+     *
+     * @param sampleRate
+     *         the sample rate
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(0, sampleRate);
+    }
+
+    /**
+     * Gets the sample rate
+     *
+     * @return the sample rate; 0 if disabled
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Checks if timings are being recorded
+     *
+     * @return {@code true} if enabled; {@code false} if not
+     */
+    public boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    /** Clears all recorded timings */
+    public void reset() {
+        for (HookTiming timing : collect()) {
+            timing.reset();
+        }
+        currentTick = new ConcurrentHashMap<String, AtomicLong>();
+        lastTick = Collections.emptyMap();
+    }
+
+    /**
+     * Gets the recorded timings of all registered listeners, most expensive first
+     *
+     * @return list of {@link HookTiming}s
+     */
+    public List<HookTiming> getTimings() {
+        List<HookTiming> timings = collect();
+        Collections.sort(timings, new Comparator<HookTiming>() {
+            @Override
+            public int compare(HookTiming o1, HookTiming o2) {
+                long diff = o2.getTotalNanos() - o1.getTotalNanos();
+                return diff == 0 ? 0 : diff > 0 ? 1 : -1;
+            }
+        });
+        return timings;
+    }
+
+    /**
+     * Gets the nanoseconds each plugin spent in hook calls during the last complete tick.
+     * With a sample rate above 1 these are estimates: the timed calls multiplied by the sample rate.
+     *
+     * @return plugin name to nanoseconds
+     */
+    public Map<String, Long> getLastTickBreakdown() {
+        return lastTick;
+    }
+
+    private List<HookTiming> collect() {
+        List<HookTiming> timings = new ArrayList<HookTiming>();
+        for (RegisteredPluginListener listener : executor.getRegisteredListeners()) {
+            timings.addAll(listener.getTimings());
+        }
+        return timings;
+    }
+
+    /**
+     * Decides if the current hook call is to be timed, every n-th call of each hook class is
+     *
+     * @param hookCls
+     *         the class of the called hook
+     *
+     * @return {@code true} to time it
+     */
+    boolean sample(Class<? extends Hook> hookCls) {
+        int rate = sampleRate;
+        if (rate <= 0) {
+            return false;
+        }
+        int[] counter = sampleCounters.get(hookCls.getName());
+        if (counter == null) {
+            int[] created = new int[1];
+            counter = sampleCounters.putIfAbsent(hookCls.getName(), created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        if (++counter[0] >= rate) {
+            counter[0] = 0;
+            return true;
+        }
+        return false;
+    }
+
+    void record(RegisteredPluginListener listener, Class<? extends Hook> hookCls, long nanos) {
+        listener.getTiming(hookCls).record(nanos);
+        nanos *= Math.max(1, sampleRate); // Stands for the calls in between that were not timed
+        String plugin = listener.getPlugin().getName();
+        ConcurrentHashMap<String, AtomicLong> tick = currentTick;
+        AtomicLong total = tick.get(plugin);
+        if (total == null) {
+            AtomicLong created = new AtomicLong();
+            total = tick.putIfAbsent(plugin, created);
+            if (total == null) {
+                total = created;
+            }
+        }
+        total.addAndGet(nanos);
+    }
+
+    /** Rolls the per tick breakdown over, called when a new tick starts */
+    void endTick() {
+        if (!isEnabled()) {
+            return;
+        }
+        ConcurrentHashMap<String, AtomicLong> finished = currentTick;
+        currentTick = new ConcurrentHashMap<String, AtomicLong>();
+        Map<String, Long> breakdown = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : finished.entrySet()) {
+            breakdown.put(entry.getKey(), entry.getValue().get());
+        }
+        lastTick = Collections.unmodifiableMap(breakdown);
+    }
+}
@@ -0,0 +1,147 @@
+package net.canarymod.permissionsystem;
+
+import net.canarymod.user.Group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The effective permissions of a player (or group) in one world, with the permissions of all its groups
+ * and their parent groups merged into one lookup.
+ * <p/>
+ * The providers are asked in this order: the player's provider, then every group followed by its parent groups.
+ * Each provider is followed by its parent, the global provider of a world provider.
+ * The first provider that covers a permission decides, if none does the permission is denied.
+ * This is the order {@link Group#hasPermission(String)} walks the group chain in.
+ * <p/>
+ * The merged lookup is compiled on first use. It is compiled again once the permissions of a provider changed,
+ * or a group in the chain got another parent or provider, which is checked with every query.
+ * Keep one instance per player and world, and create a new one if the groups of the player change.
+ * If any provider is not a {@link MultiworldPermissionProvider}, the providers are asked one by one instead.
+ */
+public final class EffectivePermissions {
+    private final PermissionProvider player;
+    private final Group[] groups;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates the effective permissions view
+     *
+     * @param player
+     *         the {@link PermissionProvider} of the player, may be {@code null} for groups only
+     * @param groups
+     *         the groups, in the order they are asked in
+     */
+    public EffectivePermissions(PermissionProvider player, Group... groups) {
+        this.player = player;
+        this.groups = groups == null ? new Group[0] : groups.clone();
+    }
+
+    /**
+     * Checks if the permission is granted by the first provider that covers it
+     *
+     * @param permission
+     *         the permission to check
+     *
+     * @return {@code true} if granted; {@code false} if denied or not covered by any provider
+     */
+    public boolean hasPermission(String permission) {
+        if (permission.isEmpty() || permission.equals(" ")) {
+            return true;
+        }
+        Snapshot current = snapshot;
+        if (current == null || !current.isValid()) {
+            current = new Snapshot(player, groups);
+            snapshot = current;
+        }
+        return current.query(permission);
+    }
+
+    /** The merged lookup and the state it was compiled from */
+    private static final class Snapshot {
+        private final Group[] chain;
+        private final Group[] parents;
+        private final PermissionProvider[] groupProviders;
+        private final MultiworldPermissionProvider[] sources;
+        private final int[] versions;
+        private final PermissionProvider[] providers; // Asked one by one if there is no trie
+        private final PermissionTrie trie;
+
+        private Snapshot(PermissionProvider player, Group[] groups) {
+            ArrayList<PermissionProvider> providers = new ArrayList<PermissionProvider>();
+            if (player != null) {
+                providers.add(player);
+            }
+            ArrayList<Group> chain = new ArrayList<Group>();
+            Set<Group> seen = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+            for (Group group : groups) {
+                for (Group g = group; g != null && seen.add(g); g = g.getParent()) {
+                    chain.add(g);
+                    if (g.getPermissionProvider() != null) {
+                        providers.add(g.getPermissionProvider());
+                    }
+                }
+            }
+            this.chain = chain.toArray(new Group[chain.size()]);
+            this.parents = new Group[this.chain.length];
+            this.groupProviders = new PermissionProvider[this.chain.length];
+            for (int i = 0; i < this.chain.length; i++) {
+                parents[i] = this.chain[i].getParent();
+                groupProviders[i] = this.chain[i].getPermissionProvider();
+            }
+            this.providers = providers.toArray(new PermissionProvider[providers.size()]);
+
+            ArrayList<MultiworldPermissionProvider> sources = new ArrayList<MultiworldPermissionProvider>();
+            ArrayList<Integer> versions = new ArrayList<Integer>();
+            ArrayList<PermissionTrie> tries = new ArrayList<PermissionTrie>();
+            boolean compiled = true;
+            Set<PermissionProvider> added = Collections.newSetFromMap(new IdentityHashMap<PermissionProvider, Boolean>());
+            for (PermissionProvider provider : providers) {
+                for (PermissionProvider p = provider; p != null && added.add(p); p = p.getParent()) {
+                    if (!(p instanceof MultiworldPermissionProvider)) {
+                        compiled = false;
+                        break;
+                    }
+                    MultiworldPermissionProvider source = (MultiworldPermissionProvider) p;
+                    versions.add(source.getVersion()); // Before compiling, so a concurrent change is noticed next time
+                    sources.add(source);
+                    tries.add(source.getTrie());
+                }
+            }
+            this.sources = sources.toArray(new MultiworldPermissionProvider[sources.size()]);
+            this.versions = new int[versions.size()];
+            for (int i = 0; i < this.versions.length; i++) {
+                this.versions[i] = versions.get(i);
+            }
+            this.trie = compiled && !tries.isEmpty() ? PermissionTrie.merge(tries) : null;
+        }
+
+        private boolean isValid() {
+            for (int i = 0; i < chain.length; i++) {
+                if (chain[i].getParent() != parents[i] || chain[i].getPermissionProvider() != groupProviders[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].getVersion() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean query(String permission) {
+            if (trie != null) {
+                return Boolean.TRUE.equals(trie.query(permission));
+            }
+            for (PermissionProvider provider : providers) {
+                if (provider.pathExists(permission)) {
+                    return provider.queryPermission(permission);
+                }
+            }
+            return false;
+        }
+    }
+}
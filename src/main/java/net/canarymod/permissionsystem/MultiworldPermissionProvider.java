@@ -11,21 +11,25 @@ import net.canarymod.database.Database;
 import net.canarymod.database.exceptions.DatabaseReadException;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 /**
  * A PermissionProvider implementation based on PermissionNode objects,
- * with multiworld support
+ * with multiworld support.
+ * Permissions may be queried from any thread, results are kept in a bounded {@link PermissionCache}.
  *
  * @author Chris (damagefilter)
  */
 public class MultiworldPermissionProvider implements PermissionProvider {
+    private static final int CACHE_CAPACITY = 256;
     private List<PermissionNode> permissions;
-    private Map<String, Boolean> permissionCache = new HashMap<String, Boolean>(35);
+    private final PermissionCache permissionCache = new PermissionCache(CACHE_CAPACITY);
     private boolean isPlayerProvider;
     private String owner; // This can either be a player uuid or group name
     private String world;
     private PermissionProvider parent = null;
+    private final Object lock = new Object(); // Guards permissions and the compilation of the trie
+    private volatile PermissionTrie trie; // Compiled from permissions when queried, dropped by addPermission and reload
+    private volatile int version; // Counts the changes to permissions, for EffectivePermissions
 
     /**
      * Constructs a new PermissionProvider that's valid for the given world
@@ -53,36 +57,6 @@ public class MultiworldPermissionProvider implements PermissionProvider {
         }
     }
 
-    /**
-     * Add a given permission to the permissions cache. The cache is limited and
-     * will prune itself if it gets too big.
-     *
-     * @param path
-     * @param value
-     */
-    private void addPermissionToCache(String path, boolean value) {
-        if (permissionCache.size() > 35) {
-            Iterator<Entry<String, Boolean>> it = permissionCache.entrySet().iterator();
-
-            while (it.hasNext() && permissionCache.size() > 10) {
-                it.next();
-                it.remove();
-            }
-        }
-        permissionCache.put(path, value);
-    }
-
-    /**
-     * Check the permission cache if we have something already
-     *
-     * @param permission
-     *
-     * @return
-     */
-    private Boolean checkCached(String permission) {
-        return permissionCache.get(permission);
-    }
-
     @Override
     public List<PermissionNode> getChildNodes(PermissionNode node, List<PermissionNode> childs) {
         childs.add(node);
@@ -103,7 +77,7 @@ public class MultiworldPermissionProvider implements PermissionProvider {
      */
     private PermissionNode getRootNode(String name) {
         for (PermissionNode n : permissions) {
-            if (n.getName().equals(name) || n.isAsterisk()) {
+            if (n.getName().equals(name)) {
                 return n;
             }
         }
@@ -157,85 +131,23 @@ public class MultiworldPermissionProvider implements PermissionProvider {
     }
 
     /**
-     * Resolve the string path and return the result
-     *
-     * @param path
-     *
-     * @return
-     */
-    private boolean resolvePath(String[] path) {
-        PermissionNode node = getRootNode(path[0]);
-        boolean hasAsterisk = getRootNode("*") != null, asteriskValue = hasAsterisk ? getRootNode("*").getValue() : false;
-
-        for (int current = 0; current < path.length; current++) {
-            if (node == null) {
-                return false;
-            }
-            if (node.isAsterisk()) {
-                // File the value only and continue with resolving
-                hasAsterisk = true;
-                asteriskValue = node.getValue();
-            }
-            if (node.hasChildNode("*")) {
-                // Register that we had an asterisk on the way, that's all we need to know!
-                hasAsterisk = true;
-                asteriskValue = node.getChildNode("*").getValue();
-            }
-            if (current + 1 < path.length) {
-                if (node.hasChildNode(path[current + 1])) {
-                    node = node.getChildNode(path[current + 1]);
-                }
-                else {
-                    if (hasAsterisk) { // No subsequent nodes, the asterisk value wins
-                        return asteriskValue;
-                    }
-                    // No asterisk was before this point, so it's false
-                    return false;
-                }
-            }
-        }
-        // Path was fully resolved, check if there was an asterisk on the way
-        if (hasAsterisk) {
-            // Only use asterisk if there's no overriding value behind it on the path
-            if (asteriskValue == node.getValue()) {
-                return asteriskValue;
-            }
-        }
-        // No asterisk or asterisk value is not the same.
-        // The overriding node will be used
-        return node.getValue();
-    }
-
-    /**
-     * Checks if this permission provider actually has the given path loaded.
+     * Gets the compiled permissions, compiling them if they changed
      *
-     * @param path
-     *
-     * @return
+     * @return the {@link PermissionTrie}
      */
-    private boolean hasPath(String[] path) {
-        PermissionNode node = getRootNode(path[0]);
-
-        for (int current = 0; current < path.length; current++) {
-            if (current == 0) {
-                node = getRootNode("*");
-                if (node == null) {
-                    node = getRootNode(path[0]);
-                }
-            }
-            if (current + 1 < path.length) {
-                if (node == null) {
-                    return false;
-                }
-                if (node.hasChildNode(path[current + 1])) {
-                    node = node.getChildNode(path[current + 1]);
-                }
-                else if (node.hasChildNode("*")) {
-                    node = node.getChildNode("*");
+    PermissionTrie getTrie() {
+        PermissionTrie compiled = trie;
+        if (compiled == null) {
+            // Compiled under the lock of addPermission and reload, so no change can slip in between
+            synchronized (lock) {
+                compiled = trie;
+                if (compiled == null) {
+                    compiled = new PermissionTrie(permissions);
+                    trie = compiled;
                 }
             }
         }
-        return node != null && (node.getName().equals(path[path.length - 1]) || node.isAsterisk());
+        return compiled;
     }
 
     @Override
@@ -245,16 +157,20 @@ public class MultiworldPermissionProvider implements PermissionProvider {
         if (paths.length == 0) {
             paths = new String[]{ path }; // we have only one node (root)
         }
-        PermissionNode node = addPath(paths, value);
+        synchronized (lock) {
+            PermissionNode node = addPath(paths, value);
 
-        node.setId(id);
+            node.setId(id);
+            trie = null;
+            version++;
+            permissionCache.invalidate(path);
+        }
     }
 
     @Override
     public void addPermission(String path, boolean value) {
         addPermission(path, value, Canary.permissionManager().addPermission(path, value, owner, isPlayerProvider ? "player" : "group", this.world));
         // addPermission(path, value, permissions.size()); //Testing
-        flushCache();
     }
 
     @Override
@@ -262,25 +178,38 @@ public class MultiworldPermissionProvider implements PermissionProvider {
         if (permission.isEmpty() || permission.equals(" ")) {
             return true;
         }
-        Boolean b = checkCached(permission);
-        if (b != null) {
-            return b;
-        }
-        String[] path = permission.split("\\.");
-        if (!this.hasPath(path)) {
-            if (parent != null) {
-                return parent.queryPermission(permission);
-            }
+        PermissionCache.Result result = lookup(permission);
+        if (result == PermissionCache.Result.NOT_COVERED) {
+            return parent != null && parent.queryPermission(permission);
         }
-        boolean result = resolvePath(permission.split("\\."));
-        addPermissionToCache(permission, result);
-
-        return result;
+        return result == PermissionCache.Result.GRANTED;
     }
 
     @Override
     public boolean pathExists(String permission) {
-        return permission.trim().isEmpty() || hasPath(permission.split("\\.")) || (parent != null && parent.pathExists(permission));
+        return permission.trim().isEmpty() || lookup(permission) != PermissionCache.Result.NOT_COVERED || (parent != null && parent.pathExists(permission));
+    }
+
+    /**
+     * Resolves a permission with this provider's own permissions, using the cache
+     *
+     * @param permission
+     *         the permission
+     *
+     * @return the {@link PermissionCache.Result}
+     */
+    private PermissionCache.Result lookup(String permission) {
+        PermissionCache.Result result = permissionCache.get(permission);
+        if (result == null) {
+            int expected = version; // Read before the trie, a change after this is noticed below
+            Boolean value = getTrie().query(permission);
+            result = value == null ? PermissionCache.Result.NOT_COVERED : value ? PermissionCache.Result.GRANTED : PermissionCache.Result.DENIED;
+            permissionCache.put(permission, result);
+            if (version != expected) {
+                permissionCache.remove(permission); // Changed while resolving, the result may be outdated
+            }
+        }
+        return result;
     }
 
     @Override
@@ -290,15 +219,21 @@ public class MultiworldPermissionProvider implements PermissionProvider {
 
     @Override
     public void reload() {
-        permissions.clear();
-        permissionCache.clear();
+        List<PermissionNode> loaded;
         if (isPlayerProvider) {
             PermissionProvider p = Canary.permissionManager().getPlayerProvider(owner, world);
-            permissions = p.getPermissionMap();
+            loaded = p.getPermissionMap();
         }
         else {
             PermissionProvider p = Canary.permissionManager().getGroupsProvider(owner, world);
-            permissions = p.getPermissionMap();
+            loaded = p.getPermissionMap();
+        }
+        synchronized (lock) {
+            permissions.clear();
+            permissions = loaded;
+            trie = null;
+            version++;
+            permissionCache.clear();
         }
     }
 
@@ -356,6 +291,24 @@ public class MultiworldPermissionProvider implements PermissionProvider {
         }
     }
 
+    /**
+     * Gets the result cache of this provider, for its hit and miss counters
+     *
+     * @return the {@link PermissionCache}
+     */
+    public PermissionCache getPermissionCache() {
+        return permissionCache;
+    }
+
+    /**
+     * Gets the number of changes to the permissions of this provider
+     *
+     * @return the version
+     */
+    int getVersion() {
+        return version;
+    }
+
     @Override
     public String getWorld() {
         return world;
@@ -0,0 +1,148 @@
+package net.canarymod.permissionsystem;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Bounded, thread safe cache of the permission results of one {@link MultiworldPermissionProvider}.
+ * <p/>
+ * Permissions the provider does not cover are cached as well, so they go to the parent provider without a lookup.
+ * When the cache grows over its capacity, arbitrary entries are evicted down to three quarters of it.
+ * Adding a permission only evicts the entries it can affect, see {@link #invalidate(String)}.
+ */
+public final class PermissionCache {
+    private final ConcurrentHashMap<String, Result> results = new ConcurrentHashMap<String, Result>();
+    private final int capacity;
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    // Statistics only: written with lazySet, which cannot tear but may lose increments of concurrent queries,
+    // as an atomic increment would cost more than the cached lookup itself
+    private static final AtomicLongFieldUpdater<PermissionCache> HITS = AtomicLongFieldUpdater.newUpdater(PermissionCache.class, "hits");
+    private static final AtomicLongFieldUpdater<PermissionCache> MISSES = AtomicLongFieldUpdater.newUpdater(PermissionCache.class, "misses");
+    private volatile long hits;
+    private volatile long misses;
+
+    /** A cached result */
+    enum Result {
+        GRANTED, DENIED, NOT_COVERED
+    }
+
+    /**
+     * Creates a new cache
+     *
+     * @param capacity
+     *         the maximum number of cached permissions
+     */
+    PermissionCache(int capacity) {
+        this.capacity = Math.max(4, capacity);
+    }
+
+    Result get(String permission) {
+        Result result = results.get(permission);
+        if (result == null) {
+            MISSES.lazySet(this, misses + 1);
+        }
+        else {
+            HITS.lazySet(this, hits + 1);
+        }
+        return result;
+    }
+
+    void put(String permission, Result result) {
+        if (results.put(permission, result) == null && results.size() > capacity) {
+            prune();
+        }
+    }
+
+    void remove(String permission) {
+        results.remove(permission);
+    }
+
+    /**
+     * Evicts the results a new or changed permission can affect:
+     * the permission itself, the nodes on its path and everything below it.
+     * For foo.bar.* that is foo, foo.bar and everything starting with foo.bar.
+     *
+     * @param path
+     *         the added or changed permission
+     */
+    void invalidate(String path) {
+        String base = path;
+        while (base.endsWith(".*")) {
+            base = base.substring(0, base.length() - 2);
+        }
+        if (base.isEmpty() || base.equals("*")) {
+            clear();
+            return;
+        }
+        String below = base + ".";
+        Iterator<String> itr = results.keySet().iterator();
+        while (itr.hasNext()) {
+            String cached = itr.next();
+            if (cached.startsWith(below) || (base.startsWith(cached) && (cached.length() == base.length() || base.charAt(cached.length()) == '.'))) {
+                itr.remove();
+            }
+        }
+    }
+
+    /** Evicts all results */
+    void clear() {
+        results.clear();
+    }
+
+    private void prune() {
+        if (!pruning.compareAndSet(false, true)) {
+            return; // Another thread is on it
+        }
+        try {
+            int target = capacity * 3 / 4;
+            Iterator<String> itr = results.keySet().iterator();
+            while (itr.hasNext() && results.size() > target) {
+                itr.next();
+                itr.remove();
+            }
+        }
+        finally {
+            pruning.set(false);
+        }
+    }
+
+    /**
+     * Gets the number of queries answered from the cache.
+     * Not synchronized, so approximate while other threads are querying.
+     *
+     * @return the hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of queries that had to be resolved.
+     * Not synchronized, so approximate while other threads are querying.
+     *
+     * @return the misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of cached permissions
+     *
+     * @return the size
+     */
+    public int size() {
+        return results.size();
+    }
+
+    /**
+     * Gets the maximum number of cached permissions
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
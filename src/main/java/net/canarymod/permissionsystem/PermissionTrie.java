@@ -0,0 +1,210 @@
+package net.canarymod.permissionsystem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Immutable lookup structure compiled from the {@link PermissionNode}s of a provider.
+ * <p/>
+ * Every node knows the value of the closest asterisk on its path, so a permission is resolved
+ * in a single pass over the permission string. Child lookups hash the segment in place,
+ * nothing is allocated per query.
+ */
+final class PermissionTrie {
+    private final Node root;
+
+    /**
+     * Compiles the permission nodes
+     *
+     * @param roots
+     *         the top level nodes of the provider
+     */
+    PermissionTrie(List<PermissionNode> roots) {
+        Boolean asterisk = null;
+        for (PermissionNode node : roots) {
+            if (node.isAsterisk()) {
+                asterisk = node.getValue();
+            }
+        }
+        this.root = new Node(Boolean.FALSE, asterisk, roots);
+    }
+
+    private PermissionTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Merges tries into one that answers every query like the first of them that covers it
+     *
+     * @param layers
+     *         the tries, in order of precedence
+     *
+     * @return the merged trie
+     */
+    static PermissionTrie merge(List<PermissionTrie> layers) {
+        if (layers.size() == 1) {
+            return layers.get(0);
+        }
+        Node[] roots = new Node[layers.size()];
+        Boolean[] asterisks = new Boolean[layers.size()];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = layers.get(i).root;
+        }
+        return new PermissionTrie(merge(roots, asterisks));
+    }
+
+    /**
+     * Merges the nodes of one path
+     *
+     * @param nodes
+     *         the node of each layer, {@code null} where a layer does not have the path
+     * @param asterisks
+     *         for layers without the path, the value of the closest asterisk on the part of the path they have
+     *
+     * @return the merged node
+     */
+    private static Node merge(Node[] nodes, Boolean[] asterisks) {
+        Boolean value = null;
+        Boolean asterisk = null;
+        Boolean[] childAsterisks = new Boolean[nodes.length];
+        LinkedHashSet<String> keys = new LinkedHashSet<String>();
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            childAsterisks[i] = node != null ? node.asterisk : asterisks[i];
+            if (value == null) {
+                value = node != null ? node.value : asterisks[i];
+            }
+            if (asterisk == null) {
+                asterisk = childAsterisks[i];
+            }
+            if (node != null && node.keys != null) {
+                for (String key : node.keys) {
+                    if (key != null) {
+                        keys.add(key);
+                    }
+                }
+            }
+        }
+        ArrayList<Node> children = new ArrayList<Node>(keys.size());
+        for (String key : keys) {
+            Node[] childNodes = new Node[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] != null) {
+                    childNodes[i] = nodes[i].getChild(key, 0, key.length());
+                }
+            }
+            children.add(merge(childNodes, childAsterisks));
+        }
+        return new Node(value, asterisk, new ArrayList<String>(keys), children);
+    }
+
+    /**
+     * Resolves a permission
+     *
+     * @param permission
+     *         the dot separated permission
+     *
+     * @return the value of the permission or the asterisk covering it;
+     * {@code null} if no node of this trie covers the permission
+     */
+    Boolean query(String permission) {
+        int end = permission.length();
+        while (end > 0 && permission.charAt(end - 1) == '.') {
+            end--; // Trailing separators do not make up a node
+        }
+        if (end == 0) {
+            return null;
+        }
+        Node node = root;
+        int start = 0;
+        while (true) {
+            int dot = permission.indexOf('.', start);
+            if (dot < 0 || dot > end) {
+                dot = end;
+            }
+            Node next = node.getChild(permission, start, dot);
+            if (next == null) {
+                return node.asterisk;
+            }
+            node = next;
+            if (dot == end) {
+                return node.value;
+            }
+            start = dot + 1;
+        }
+    }
+
+    /** A compiled node with an open addressed table of its children */
+    private static final class Node {
+        private final Boolean value; // null if not covered, only in merged tries
+        private final Boolean asterisk; // Value of the closest asterisk on the way here, null if none
+        private String[] keys;
+        private Node[] children;
+
+        private Node(Boolean value, Boolean asterisk, Collection<PermissionNode> childs) {
+            this.value = value;
+            this.asterisk = asterisk;
+            ArrayList<String> names = new ArrayList<String>(childs.size());
+            ArrayList<Node> nodes = new ArrayList<Node>(childs.size());
+            for (PermissionNode child : childs) {
+                PermissionNode childAsterisk = child.getChildNode("*");
+                names.add(child.getName());
+                nodes.add(new Node(child.getValue(), childAsterisk != null ? Boolean.valueOf(childAsterisk.getValue()) : asterisk, child.getChilds().values()));
+            }
+            fill(names, nodes);
+        }
+
+        private Node(Boolean value, Boolean asterisk, List<String> names, List<Node> nodes) {
+            this.value = value;
+            this.asterisk = asterisk;
+            fill(names, nodes);
+        }
+
+        private void fill(List<String> names, List<Node> nodes) {
+            if (names.isEmpty()) {
+                return;
+            }
+            int size = 2;
+            while (size < names.size() * 2) {
+                size <<= 1;
+            }
+            keys = new String[size];
+            children = new Node[size];
+            for (int n = 0; n < names.size(); n++) {
+                String key = names.get(n).intern();
+                int i = index(key.hashCode(), size);
+                while (keys[i] != null && !keys[i].equals(key)) {
+                    i = (i + 1) & (size - 1);
+                }
+                keys[i] = key;
+                children[i] = nodes.get(n);
+            }
+        }
+
+        private Node getChild(String path, int start, int end) {
+            if (keys == null) {
+                return null;
+            }
+            int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i); // Same as String.hashCode()
+            }
+            for (int i = index(hash, keys.length); ; i = (i + 1) & (keys.length - 1)) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (key.length() == length && path.regionMatches(start, key, 0, length)) {
+                    return children[i];
+                }
+            }
+        }
+
+        private static int index(int hash, int size) {
+            return (hash ^ (hash >>> 16)) & (size - 1);
+        }
+    }
+}
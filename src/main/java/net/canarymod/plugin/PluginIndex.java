@@ -0,0 +1,282 @@
+package net.canarymod.plugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.canarymod.Canary.log;
+
+/**
+ * Persistent index of the plugin jars in the plugins folder.
+ * <p/>
+ * For every jar the size, modification time and the relevant parts of its Canary.inf are remembered,
+ * so unchanged jars are not opened again while scanning and plugins can be found by name without scanning every jar.
+ * An entry is only used while size and modification time of the jar still match.
+ * <p/>
+ * Safe for concurrent use by the plugin scanning threads.
+ */
+final class PluginIndex {
+    private static final String[] INF_KEYS = { "name", "main-class", "version", "dependencies", "optional-dependencies" };
+    private final File file;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>(); // Keyed to jar file name
+    private final ConcurrentHashMap<String, String> jars = new ConcurrentHashMap<String, String>(); // Plugin name to jar file name
+    private volatile boolean dirty;
+
+    PluginIndex(String path) {
+        this.file = new File(path);
+        load();
+    }
+
+    /**
+     * Gets the entry for a jar if the jar did not change since it was indexed
+     *
+     * @param jar
+     *         the jar file
+     *
+     * @return the {@link Entry}; {@code null} if the jar is not indexed or changed
+     */
+    Entry get(File jar) {
+        Entry entry = entries.get(jar.getName());
+        if (entry == null) {
+            return null;
+        }
+        if (entry.size != jar.length() || entry.modified != jar.lastModified()) {
+            // Replaced or updated jar
+            remove(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the name of the jar that contained the plugin when it was last indexed
+     *
+     * @param name
+     *         the plugin name
+     *
+     * @return the jar file name; {@code null} if unknown
+     */
+    String getJar(String name) {
+        return jars.get(name);
+    }
+
+    /**
+     * Indexes a jar with a valid Canary.inf
+     *
+     * @param jar
+     *         the jar file
+     * @param inf
+     *         its Canary.inf, with the name already set
+     *
+     * @return the new {@link Entry}
+     */
+    Entry put(File jar, Properties inf) {
+        Entry old = entries.get(jar.getName());
+        if (old != null) {
+            remove(old);
+        }
+        Entry entry = new Entry(jar.getName(), jar.length(), jar.lastModified(), true);
+        for (String key : INF_KEYS) {
+            if (inf.containsKey(key)) {
+                entry.inf.put(key, inf.getProperty(key));
+            }
+        }
+        add(entry);
+        dirty = true;
+        return entry;
+    }
+
+    /**
+     * Indexes a jar without a (valid) Canary.inf
+     *
+     * @param jar
+     *         the jar file
+     */
+    void putInvalid(File jar) {
+        Entry old = entries.get(jar.getName());
+        if (old != null) {
+            remove(old);
+        }
+        add(new Entry(jar.getName(), jar.length(), jar.lastModified(), false));
+        dirty = true;
+    }
+
+    /**
+     * Removes the entries of jars that are no longer present
+     *
+     * @param jars
+     *         the file names of the present jars
+     */
+    void retain(Collection<String> jars) {
+        HashSet<String> present = new HashSet<String>(jars);
+        Iterator<Entry> itr = entries.values().iterator();
+        while (itr.hasNext()) {
+            Entry entry = itr.next();
+            if (!present.contains(entry.jar)) {
+                remove(entry);
+            }
+        }
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.jar, entry);
+        if (entry.getName() != null) {
+            jars.put(entry.getName(), entry.jar);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.jar, entry)) {
+            if (entry.getName() != null) {
+                jars.remove(entry.getName(), entry.jar);
+            }
+            dirty = true;
+        }
+    }
+
+    /** Writes the index if it changed */
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Properties props = new Properties();
+        int i = 0;
+        for (Entry entry : entries.values()) {
+            String prefix = "jar." + i++;
+            props.setProperty(prefix, entry.jar);
+            props.setProperty(prefix + ".size", String.valueOf(entry.size));
+            props.setProperty(prefix + ".modified", String.valueOf(entry.modified));
+            props.setProperty(prefix + ".valid", String.valueOf(entry.valid));
+            for (Map.Entry<String, String> inf : entry.inf.entrySet()) {
+                props.setProperty(prefix + ".inf." + inf.getKey(), inf.getValue());
+            }
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            props.store(out, "Plugin index, generated on plugin scans. Safe to delete.");
+        }
+        catch (IOException ioex) {
+            log.warn("Failed to save the plugin index to " + file.getPath(), ioex);
+        }
+        finally {
+            close(out);
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        Properties props = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            props.load(in);
+        }
+        catch (IOException ioex) {
+            log.warn("Failed to read the plugin index from " + file.getPath() + ". Jars will be rescanned.", ioex);
+            return;
+        }
+        finally {
+            close(in);
+        }
+        for (int i = 0; props.containsKey("jar." + i); i++) {
+            String prefix = "jar." + i;
+            try {
+                Entry entry = new Entry(props.getProperty(prefix), Long.parseLong(props.getProperty(prefix + ".size")),
+                        Long.parseLong(props.getProperty(prefix + ".modified")), Boolean.parseBoolean(props.getProperty(prefix + ".valid")));
+                for (String key : INF_KEYS) {
+                    String value = props.getProperty(prefix + ".inf." + key);
+                    if (value != null) {
+                        entry.inf.put(key, value);
+                    }
+                }
+                add(entry);
+            }
+            catch (NumberFormatException nfex) {
+                // Broken entry, that jar is rescanned
+            }
+        }
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch (IOException ioex) {
+                // Ignored
+            }
+        }
+    }
+
+    /** Indexed state of one plugin jar */
+    static final class Entry {
+        private final String jar;
+        private final long size;
+        private final long modified;
+        private final boolean valid;
+        private final Map<String, String> inf = new ConcurrentHashMap<String, String>();
+
+        private Entry(String jar, long size, long modified, boolean valid) {
+            this.jar = jar;
+            this.size = size;
+            this.modified = modified;
+            this.valid = valid;
+        }
+
+        /**
+         * Checks if the jar had a valid Canary.inf
+         *
+         * @return {@code true} if valid
+         */
+        boolean isValid() {
+            return valid;
+        }
+
+        String getName() {
+            return inf.get("name");
+        }
+
+        String getMainClass() {
+            return inf.get("main-class");
+        }
+
+        /**
+         * Gets the hard dependencies as listed in the Canary.inf
+         *
+         * @return the dependency names, may be empty
+         */
+        String[] getDependencies() {
+            return split(inf.get("dependencies"));
+        }
+
+        /**
+         * Gets the optional dependencies as listed in the Canary.inf
+         *
+         * @return the dependency names, may be empty
+         */
+        String[] getOptionalDependencies() {
+            return split(inf.get("optional-dependencies"));
+        }
+
+        private static String[] split(String deps) {
+            if (deps == null || deps.trim().isEmpty()) {
+                return new String[0];
+            }
+            return deps.trim().split("[,;]+");
+        }
+    }
+}
@@ -5,19 +5,37 @@ import net.canarymod.CanaryClassLoader;
 import net.canarymod.chat.Colors;
 import net.canarymod.hook.system.PluginDisableHook;
 import net.canarymod.hook.system.PluginEnableHook;
+import net.canarymod.tasks.ServerTask;
 import net.canarymod.tasks.ServerTaskManager;
+import net.canarymod.tasks.TaskOwner;
 import net.visualillusionsent.utils.PropertiesFile;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 import static net.canarymod.Canary.log;
 import org.apache.logging.log4j.Logger;
@@ -35,12 +53,17 @@ public final class PluginLoader {
     private final Map<String, Plugin> plugins; // This is keyed to set Plugin name
     private final Map<String, PropertiesFile> pluginInf; // This is keyed to main class name
     private final PropertiesFile pluginPriorities;
+    private final PluginIndex index;
     private static final Object lock = new Object();
+    private static final TaskOwner reloadTaskOwner = new TaskOwner() {
+    };
+    private final AtomicBoolean stagedReloadPending = new AtomicBoolean();
 
     public PluginLoader() {
         plugins = new LinkedHashMap<String, Plugin>();
-        pluginInf = new HashMap<String, PropertiesFile>();
+        pluginInf = new ConcurrentHashMap<String, PropertiesFile>(); // Read by plugin constructors on the loader threads
         this.pluginPriorities = new PropertiesFile("config" + File.separator + "plugin_priorities.cfg");
+        this.index = new PluginIndex("config" + File.separator + "plugin_index.cfg");
     }
 
     public final void scanPlugins() {
@@ -65,66 +88,235 @@ public final class PluginLoader {
             }
             jars.add(jarfile);
         }
-        HashMap<String, PropertiesFile> canLoad = new HashMap<String, PropertiesFile>();
-        int numLoaded = 1;
-        for (String jar : jars) {
-            PropertiesFile check = scan(jar, numLoaded);
-            if (check == null) {
-                continue;
+        index.retain(jars);
+        ExecutorService pool = createLoaderPool(jars.size());
+        try {
+            // Opening the jars and parsing the Canary.inf files is independent for every jar
+            List<Future<PluginIndex.Entry>> infs = new ArrayList<Future<PluginIndex.Entry>>(jars.size());
+            for (final String jar : jars) {
+                infs.add(pool.submit(new Callable<PluginIndex.Entry>() {
+                    @Override
+                    public PluginIndex.Entry call() {
+                        return readInf(jar);
+                    }
+                }));
             }
-            else {
-                canLoad.put(jar, check);
+            HashMap<String, PluginIndex.Entry> canLoad = new HashMap<String, PluginIndex.Entry>();
+            int numLoaded = 1;
+            for (int i = 0; i < jars.size(); i++) {
+                // Priorities are handed out in directory order, as before
+                PluginIndex.Entry check = scan(await(infs.get(i), jars.get(i)), numLoaded);
+                if (check == null) {
+                    continue;
+                }
+                else {
+                    canLoad.put(jars.get(i), check);
+                }
+                numLoaded++;
             }
-            numLoaded++;
+            LinkedList<DependencyNode> loadOrder = new LinkedList<DependencyNode>();
+            buildDepTree(canLoad, loadOrder);
+
+            log.info("Found " + loadOrder.size() + " loadable plugins. Attempting load...");
+            load(loadOrder, pool);
+        }
+        finally {
+            pool.shutdown();
+            index.save();
         }
-        LinkedList<DependencyNode> loadOrder = new LinkedList<DependencyNode>();
-        buildDepTree(canLoad, loadOrder);
+    }
 
-        log.info("Found " + loadOrder.size() + " loadable plugins. Attempting load...");
+    /**
+     * Loads the plugins of a solved dependency tree.
+     * Plugins that do not depend on each other are loaded concurrently, one dependency level at a time.
+     * The plugins are still registered in load order, so enabling them keeps the dependency order.
+     *
+     * @param loadOrder
+     *         the topologically sorted nodes
+     * @param pool
+     *         the pool to load on
+     */
+    private final void load(List<DependencyNode> loadOrder, ExecutorService pool) {
+        HashMap<DependencyNode, Integer> depths = new HashMap<DependencyNode, Integer>();
+        ArrayList<List<DependencyNode>> levels = new ArrayList<List<DependencyNode>>();
         for (DependencyNode node : loadOrder) {
-            load(node.getJarName(), node.getInf());
+            int depth = 0;
+            for (DependencyNode edge : node.edges) {
+                Integer edgeDepth = depths.get(edge);
+                if (edgeDepth != null) {
+                    depth = Math.max(depth, edgeDepth + 1);
+                }
+            }
+            depths.put(node, depth);
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<DependencyNode>());
+            }
+            levels.get(depth).add(node);
+        }
+
+        for (List<DependencyNode> level : levels) {
+            List<Future<Plugin>> instances = new ArrayList<Future<Plugin>>(level.size());
+            for (final DependencyNode node : level) {
+                if (!isLoadable(node.getName(), node.getEntry().getDependencies())) {
+                    instances.add(null);
+                    continue;
+                }
+                instances.add(pool.submit(new Callable<Plugin>() {
+                    @Override
+                    public Plugin call() {
+                        // Only the plugins that are loaded need the full Canary.inf, the scan ran on the index
+                        PropertiesFile inf = openInf(new File("plugins/" + node.getJarName()));
+                        if (inf == null) {
+                            return null;
+                        }
+                        pluginInf.put(simpleMain(inf.getString("main-class")), inf);
+                        return instantiate(node.getJarName(), inf);
+                    }
+                }));
+            }
+            // The next level depends on this one, so wait for it and register in order
+            for (int i = 0; i < level.size(); i++) {
+                if (instances.get(i) == null) {
+                    continue;
+                }
+                DependencyNode node = level.get(i);
+                Plugin plugin = await(instances.get(i), node.getJarName());
+                if (plugin == null) {
+                    pluginInf.remove(simpleMain(node.getEntry().getMainClass()));
+                    continue;
+                }
+                synchronized (lock) {
+                    this.plugins.put(node.getName(), plugin);
+                }
+            }
         }
     }
 
+    private ExecutorService createLoaderPool(int jars) {
+        int threads = Math.max(1, Math.min(jars, Runtime.getRuntime().availableProcessors()));
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Canary Plugin Loader #" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private <T> T await(Future<T> future, String jar) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while loading plugin jar '" + jar + "'");
+        }
+        catch (ExecutionException ex) {
+            log.error("Exception while loading plugin jar '" + jar + "'", ex.getCause());
+        }
+        return null;
+    }
+
     /**
-     * Get the Canary.inf from a jar file
+     * Get the indexed Canary.inf of a jar file.
+     * Unchanged jars are answered from the {@link PluginIndex} without opening them.
+     * This does not touch any shared state besides the index, so it is safe to call for several jars at once.
      *
      * @param filename
-     * @param priorityBase
-     *         The base for plugin priority which is used to calculate the priority of new Plugins
      *
-     * @return
+     * @return the index entry; {@code null} if the Canary.inf is missing, invalid or could not be read
      */
-    private final PropertiesFile scan(String filename, int priorityBase) {
-        PropertiesFile inf;
-        try {
-            File file = new File("plugins/" + filename);
-            String jarName = filename.substring(0, filename.lastIndexOf("."));
-            inf = new PropertiesFile(file.getAbsolutePath(), "Canary.inf");
+    private final PluginIndex.Entry readInf(String filename) {
+        File file = new File("plugins/" + filename);
+        PluginIndex.Entry indexed = index.get(file);
+        if (indexed != null) {
+            if (!indexed.isValid()) {
+                log.debug("Skipping plugin jar '" + filename + "', it had no valid Canary.inf when last scanned and is unchanged");
+                return null;
+            }
+            return indexed;
+        }
+        return indexInf(file);
+    }
 
-            if (!inf.containsKey("main-class")) {
-                log.error("Failed to read main-class for '" + file.getName() + "' in Canary.inf Please specify a main-class entry in Canary.inf");
+    /**
+     * Reads the Canary.inf of a changed or new jar file and indexes it.
+     * Jars without a (valid) Canary.inf are remembered as invalid, jars that could not be read are not.
+     *
+     * @param file
+     *         the jar file
+     *
+     * @return the new index entry; {@code null} if the Canary.inf is missing, invalid or could not be read
+     */
+    private final PluginIndex.Entry indexInf(File file) {
+        Properties inf = new Properties();
+        JarFile jar = null;
+        try {
+            jar = new JarFile(file);
+            JarEntry entry = jar.getJarEntry("Canary.inf");
+            if (entry == null) {
+                log.error("Skipping plugin jar '" + file.getName() + "', it has no Canary.inf");
+                index.putInvalid(file);
                 return null;
             }
-            inf.setString("jarName", jarName);
-            inf.setString("jarPath", "plugins/".concat(filename));
-            if (!inf.containsKey("name")) {
-                inf.setString("name", simpleMain(inf.getString("main-class")));
+            InputStream in = jar.getInputStream(entry);
+            try {
+                inf.load(in);
             }
-
-            if (!pluginPriorities.containsKey(inf.getString("name"))) {
-                pluginPriorities.setInt(inf.getString("name"), priorityBase * 10);
-                pluginPriorities.save();
+            finally {
+                in.close();
             }
-            else if (pluginPriorities.getInt(inf.getString("name")) < 0) {
-                return null;
+        }
+        catch (IOException ioex) {
+            // Not remembered, the jar may be readable on the next scan
+            log.error("Exception while reading plugin jar '" + file.getName() + "'", ioex);
+            return null;
+        }
+        finally {
+            if (jar != null) {
+                try {
+                    jar.close();
+                }
+                catch (IOException ioex) {
+                    // Ignored
+                }
             }
         }
-        catch (Throwable ex) {
-            log.error("Exception while loading plugin jar '" + filename + "' (Canary.inf missing?)", ex);
+        if (!inf.containsKey("main-class")) {
+            log.error("Failed to read main-class for '" + file.getName() + "' in Canary.inf Please specify a main-class entry in Canary.inf");
+            index.putInvalid(file);
             return null;
         }
+        if (!inf.containsKey("name")) {
+            inf.setProperty("name", simpleMain(inf.getProperty("main-class")));
+        }
+        return index.put(file, inf);
+    }
 
+    /**
+     * Checks the priority of a scanned plugin and assigns one to new Plugins
+     *
+     * @param inf
+     *         the indexed Canary.inf as returned by {@link #readInf(String)}
+     * @param priorityBase
+     *         The base for plugin priority which is used to calculate the priority of new Plugins
+     *
+     * @return the indexed Canary.inf; {@code null} if it was invalid or the plugin is disabled
+     */
+    private final PluginIndex.Entry scan(PluginIndex.Entry inf, int priorityBase) {
+        if (inf == null) {
+            return null;
+        }
+        if (!pluginPriorities.containsKey(inf.getName())) {
+            pluginPriorities.setInt(inf.getName(), priorityBase * 10);
+            pluginPriorities.save();
+        }
+        else if (pluginPriorities.getInt(inf.getName()) < 0) {
+            return null;
+        }
         return inf;
     }
 
@@ -150,35 +342,52 @@ public final class PluginLoader {
         if (!dir.isDirectory()) {
             return null;
         }
+        // Try the jar the plugin was last indexed in first
+        String indexedJar = index.getJar(name);
+        if (indexedJar != null) {
+            File jar = new File(dir, indexedJar);
+            PluginIndex.Entry entry = index.get(jar);
+            if (entry != null && entry.isValid() && name.equals(entry.getName())) {
+                for (String dep : entry.getDependencies()) {
+                    if (!plugins.containsKey(dep.trim())) {
+                        // Unsatisfied dependency
+                        return null;
+                    }
+                }
+                try {
+                    return load(jar) ? plugins.get(name) : null;
+                }
+                catch (Throwable thrown) {
+                    log.error("Something broke. Here's what we know: ", thrown);
+                    return null;
+                }
+            }
+        }
+        Plugin plugin = null;
         for (File jar : dir.listFiles()) {
             if (!jar.isFile() || !jar.getName().endsWith(".jar")) {
                 continue;
             }
             try {
-                PropertiesFile inf = new PropertiesFile(jar.getAbsolutePath(), "Canary.inf");
-                if (!inf.containsKey("name")) {
-                    if (!simpleMain(inf.getString("main-class")).equals(name)) {
-                        continue;
-                    }
-                    inf.setString("name", simpleMain(inf.getString("main-class")));
+                PluginIndex.Entry inf = index.get(jar);
+                if (inf == null) {
+                    inf = indexInf(jar);
                 }
-                else if (!inf.getString("name").equals(name)) {
+                if (inf == null || !inf.isValid() || !name.equals(inf.getName())) {
                     continue;
                 }
-                inf.setString("jarPath", "plugins/".concat(jar.getName()));
-                inf.setString("jarName", jar.getName().replace(".jar", ""));
 
-                if (inf.containsKey("dependencies")) {
-                    for (String dep : inf.getStringArray("dependencies", ";")) {
-                        if (!plugins.containsKey(dep)) {
-                            // Unsatisfied dependency
-                            return null;
-                        }
+                for (String dep : inf.getDependencies()) {
+                    if (!plugins.containsKey(dep.trim())) {
+                        // Unsatisfied dependency
+                        index.save();
+                        return null;
                     }
                 }
 
                 if (load(jar)) {
-                    return plugins.get(name);
+                    plugin = plugins.get(name);
+                    break;
                 }
 
             }
@@ -186,7 +395,8 @@ public final class PluginLoader {
                 log.error("Something broke. Here's what we know: ", thrown);
             }
         }
-        return null;
+        index.save();
+        return plugin;
     }
 
     /**
@@ -195,53 +405,49 @@ public final class PluginLoader {
      * @param knownJars
      * @param loadOrder
      */
-    private final void buildDepTree(Map<String, PropertiesFile> knownJars, List<DependencyNode> loadOrder) {
+    private final void buildDepTree(Map<String, PluginIndex.Entry> knownJars, List<DependencyNode> loadOrder) {
         HashMap<String, DependencyNode> nodes = new HashMap<String, DependencyNode>();
         // Make the flat dep tree
         for (String jar : knownJars.keySet()) {
-            PropertiesFile inf = knownJars.get(jar);
-            nodes.put(inf.getString("name"), new DependencyNode(inf.getString("name"), jar, inf));
+            PluginIndex.Entry inf = knownJars.get(jar);
+            nodes.put(inf.getName(), new DependencyNode(inf.getName(), jar, inf));
         }
         // Create the basic dependency list
         Iterator<String> itr = nodes.keySet().iterator();
         while (itr.hasNext()) {
             String jar = itr.next();
             DependencyNode node = nodes.get(jar);
-            PropertiesFile inf = node.getInf();
-
-            if (inf.containsKey("dependencies")) {
-                String[] dependencies = inf.getStringArray("dependencies", "[,;]+");
-                for (String dependency : dependencies) {
-                    dependency = dependency.trim();
-                    // Remove empty entries
-                    if (dependency.length() == 0) {
-                        continue;
-                    }
-                    if (!nodes.containsKey(dependency)) {
-                        log.error("Cannot find dependency " + dependency + " but " + jar + " depends on it. Removing.");
-                        itr.remove();
-                        continue;
-                    }
-                    if (!node.edges.contains(nodes.get(dependency))) {
-                        node.edges.add(nodes.get(dependency));
-                    }
+            PluginIndex.Entry inf = node.getEntry();
+
+            String[] dependencies = inf.getDependencies();
+            for (String dependency : dependencies) {
+                dependency = dependency.trim();
+                // Remove empty entries
+                if (dependency.length() == 0) {
+                    continue;
+                }
+                if (!nodes.containsKey(dependency)) {
+                    log.error("Cannot find dependency " + dependency + " but " + jar + " depends on it. Removing.");
+                    itr.remove();
+                    continue;
+                }
+                if (!node.edges.contains(nodes.get(dependency))) {
+                    node.edges.add(nodes.get(dependency));
                 }
             }
 
-            if (inf.containsKey("optional-dependencies")) {
-                String[] softDependencies = inf.getStringArray("optional-dependencies", "[,;]+");
-                for (String dependency : softDependencies) {
-                    dependency = dependency.trim();
-                    // Remove empty entries
-                    if (dependency.length() == 0) {
-                        continue;
-                    }
-                    if (!nodes.containsKey(dependency)) {
-                        continue; // ignore soft dependencies
-                    }
-                    if (!node.edges.contains(nodes.get(dependency))) {
-                        node.edges.add(nodes.get(dependency));
-                    }
+            String[] softDependencies = inf.getOptionalDependencies();
+            for (String dependency : softDependencies) {
+                dependency = dependency.trim();
+                // Remove empty entries
+                if (dependency.length() == 0) {
+                    continue;
+                }
+                if (!nodes.containsKey(dependency)) {
+                    continue; // ignore soft dependencies
+                }
+                if (!node.edges.contains(nodes.get(dependency))) {
+                    node.edges.add(nodes.get(dependency));
                 }
             }
             // Detect if we have a circular dependency inside this node
@@ -271,18 +477,59 @@ public final class PluginLoader {
      */
     private final boolean load(String pluginJar, PropertiesFile inf) {
         try {
-            String name = inf.getString("name");
-            String mainClass = inf.getString("main-class");
+            if (!isLoadable(inf)) {
+                return false;
+            }
+            pluginInf.put(simpleMain(inf.getString("main-class")), inf);
+            Plugin plugin = instantiate(pluginJar, inf);
+            if (plugin == null) {
+                return false;
+            }
+            synchronized (lock) {
+                this.plugins.put(inf.getString("name"), plugin);
+            }
+        }
+        catch (Throwable ex) {
+            log.error("Exception while loading plugin '" + pluginJar + "'", ex);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks that the plugin is not loaded yet and all its dependencies are
+     *
+     * @param inf
+     *         the plugin's Canary.inf
+     *
+     * @return {@code true} if the plugin can be loaded
+     */
+    private final boolean isLoadable(PropertiesFile inf) {
+        String[] deps = new String[0];
+        if (inf.containsKey("dependencies")) {
+            deps = inf.getStringArray("dependencies", "[,;]+");
+        }
+        return isLoadable(inf.getString("name"), deps);
+    }
+
+    /**
+     * Checks that the plugin is not loaded yet and all its dependencies are
+     *
+     * @param name
+     *         the plugin name
+     * @param deps
+     *         the names of the hard dependencies
+     *
+     * @return {@code true} if the plugin can be loaded
+     */
+    private final boolean isLoadable(String name, String[] deps) {
+        synchronized (lock) {
             if (plugins.containsKey(name)) {
                 log.warn(name + " is already loaded, skipping");
                 return false; // Already loaded
             }
 
-            String[] deps = new String[0];
-            if (inf.containsKey("dependencies")) {
-                deps = inf.getStringArray("dependencies", "[,;]+");
-            }
-
             if (deps == null) {
                 log.error("There was a problem while fetching " + name + "'s dependency list.");
                 return false;
@@ -292,8 +539,8 @@ public final class PluginLoader {
                 ArrayList<String> missingDeps = new ArrayList<String>(1);
 
                 for (String dep : deps) {
-                    if (!plugins.containsKey(dep)) {
-                        missingDeps.add(dep);
+                    if (!plugins.containsKey(dep.trim())) {
+                        missingDeps.add(dep.trim());
                     }
                 }
                 if (!missingDeps.isEmpty()) {
@@ -301,21 +548,32 @@ public final class PluginLoader {
                     return false;
                 }
             }
-            pluginInf.put(simpleMain(mainClass), inf);
+        }
+        return true;
+    }
+
+    /**
+     * Creates the class loader for the plugin jar and instantiates the main class.
+     * The Canary.inf has to be registered before, the plugin itself is not registered.
+     * Called on the loader threads during startup.
+     *
+     * @param pluginJar
+     * @param inf
+     *
+     * @return the new {@link Plugin}; {@code null} on failure
+     */
+    private final Plugin instantiate(String pluginJar, PropertiesFile inf) {
+        try {
             CanaryClassLoader ploader = new CanaryClassLoader(new File(inf.getString("jarPath")).toURI().toURL(), getClass().getClassLoader());
-            Class<?> c = ploader.loadClass(mainClass);
+            Class<?> c = ploader.loadClass(inf.getString("main-class"));
             Plugin plugin = (Plugin) c.newInstance();
-            plugin.setPriority(pluginPriorities.getInt(name, 0));
-            synchronized (lock) {
-                this.plugins.put(name, plugin);
-            }
+            plugin.setPriority(pluginPriorities.getInt(inf.getString("name"), 0));
+            return plugin;
         }
         catch (Throwable ex) {
             log.error("Exception while loading plugin '" + pluginJar + "'", ex);
-            return false;
+            return null;
         }
-
-        return true;
     }
 
     private final boolean load(File file) {
@@ -324,19 +582,10 @@ public final class PluginLoader {
                 return false;
             }
 
-            PropertiesFile inf = new PropertiesFile(file.getAbsolutePath(), "Canary.inf");
-            // Get the main class, or use the plugin name as class
-            if (!inf.containsKey("main-class")) {
-                log.error("Failed to read main-class for '" + file.getName() + "' in Canary.inf Please specify a main-class entry in Canary.inf");
+            PropertiesFile inf = openInf(file);
+            if (inf == null) {
                 return false;
             }
-
-            if (!inf.containsKey("name")) {
-                inf.setString("name", simpleMain(inf.getString("main-class")));
-            }
-            inf.setString("jarPath", "plugins/".concat(file.getName()));
-            inf.setString("jarName", file.getName().replace(".jar", ""));
-
             return load(file.getName(), inf);
         }
         catch (Throwable ex) {
@@ -345,6 +594,30 @@ public final class PluginLoader {
         }
     }
 
+    /**
+     * Opens the Canary.inf of a plugin jar that is about to be loaded
+     *
+     * @param file
+     *         the jar file
+     *
+     * @return the Canary.inf with name, jarName and jarPath set; {@code null} if it has no main-class
+     */
+    private final PropertiesFile openInf(File file) {
+        PropertiesFile inf = new PropertiesFile(file.getAbsolutePath(), "Canary.inf");
+        // Get the main class, or use the plugin name as class
+        if (!inf.containsKey("main-class")) {
+            log.error("Failed to read main-class for '" + file.getName() + "' in Canary.inf Please specify a main-class entry in Canary.inf");
+            return null;
+        }
+
+        if (!inf.containsKey("name")) {
+            inf.setString("name", simpleMain(inf.getString("main-class")));
+        }
+        inf.setString("jarPath", "plugins/".concat(file.getName()));
+        inf.setString("jarName", file.getName().replace(".jar", ""));
+        return inf;
+    }
+
     private final String simpleMain(String main) {
         int last = main.lastIndexOf('.');
         return main.substring(last != -1 ? last + 1 : 0, main.length());
@@ -569,6 +842,8 @@ public final class PluginLoader {
      * {@link Runtime#addShutdownHook(java.lang.Thread)})
      */
     public void disableAllPlugins(Logger log) {
+        // Let the queued async handlers finish while their plugins are still enabled, later hooks run synchronously
+        Canary.hooks().shutdownAsync();
         for (Plugin plugin : this.getPlugins()) {
             disablePlugin(plugin, log);
         }
@@ -636,6 +911,238 @@ public final class PluginLoader {
         return test;
     }
 
+    /**
+     * Reloads the specified plugin and all plugins depending on it without stalling the server.
+     * <p/>
+     * Every affected plugin is reloaded exactly once. The new Canary.inf files are read and the classes of the
+     * new jars are loaded on a separate thread while the old instances keep running.
+     * On the next server tick the old instances are disabled and the new ones are created and enabled in dependency order.
+     * If staging fails, the old instances are left untouched.
+     *
+     * @param name
+     *         the name of the {@link Plugin}
+     *
+     * @return {@code true} if the reload was staged; {@code false} if the plugin doesn't exist or another reload is pending
+     */
+    public boolean reloadPluginStaged(String name) {
+        Plugin plugin = this.getPlugin(name);
+        if (plugin == null) {
+            log.warn("Could not reload " + name + ". It doesn't exist.");
+            return false;
+        }
+        if (!stagedReloadPending.compareAndSet(false, true)) {
+            log.warn("Could not reload " + name + ". Another reload is still pending.");
+            return false;
+        }
+
+        final List<StagedPlugin> affected = getAffectedPlugins(plugin);
+        Thread stager = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (!stage(affected)) {
+                    stagedReloadPending.set(false);
+                    return;
+                }
+                ServerTaskManager.addTask(new ServerTask(reloadTaskOwner, 0) {
+                    @Override
+                    public void run() {
+                        try {
+                            swap(affected);
+                        }
+                        finally {
+                            stagedReloadPending.set(false);
+                        }
+                    }
+                });
+            }
+        }, "Canary Plugin Reload");
+        stager.setDaemon(true);
+        stager.start();
+        return true;
+    }
+
+    /**
+     * Collects the plugin and everything depending on it, directly or not.
+     *
+     * @param root
+     *         the plugin to be reloaded
+     *
+     * @return the affected plugins, every plugin after the plugins it depends on
+     */
+    private List<StagedPlugin> getAffectedPlugins(Plugin root) {
+        LinkedHashMap<String, Plugin> found = new LinkedHashMap<String, Plugin>();
+        LinkedList<Plugin> queue = new LinkedList<Plugin>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Plugin current = queue.removeFirst();
+            if (found.containsKey(current.getName())) {
+                continue;
+            }
+            found.put(current.getName(), current);
+            for (String dependent : current.getDependents()) {
+                Plugin plugin = getPlugin(dependent);
+                if (plugin != null) {
+                    queue.add(plugin);
+                }
+            }
+        }
+        List<StagedPlugin> sorted = new ArrayList<StagedPlugin>(found.size());
+        HashSet<String> visited = new HashSet<String>();
+        for (Plugin plugin : found.values()) {
+            sortAffected(plugin, found, visited, sorted);
+        }
+        return sorted;
+    }
+
+    private void sortAffected(Plugin plugin, Map<String, Plugin> affected, Set<String> visited, List<StagedPlugin> sorted) {
+        if (!visited.add(plugin.getName())) {
+            return;
+        }
+        if (plugin.getCanaryInf().containsKey("dependencies")) {
+            for (String dep : plugin.getCanaryInf().getStringArray("dependencies", "[,;]+")) {
+                Plugin dependency = affected.get(dep.trim());
+                if (dependency != null) {
+                    sortAffected(dependency, affected, visited, sorted);
+                }
+            }
+        }
+        sorted.add(new StagedPlugin(plugin));
+    }
+
+    /**
+     * Reads the new Canary.inf files and loads the new classes. Runs off the server thread.
+     *
+     * @param affected
+     *         the plugins to stage, in dependency order
+     *
+     * @return {@code true} if all plugins were staged
+     */
+    private boolean stage(List<StagedPlugin> affected) {
+        HashMap<String, CanaryClassLoader> loaders = new HashMap<String, CanaryClassLoader>();
+        for (StagedPlugin staged : affected) {
+            try {
+                File jar = new File(staged.jarPath);
+                PropertiesFile inf = new PropertiesFile(jar.getAbsolutePath(), "Canary.inf");
+                if (!inf.containsKey("main-class")) {
+                    throw new PluginException("Failed to read main-class for '" + jar.getName() + "' in Canary.inf");
+                }
+                if (!inf.containsKey("name")) {
+                    inf.setString("name", simpleMain(inf.getString("main-class")));
+                }
+                if (!staged.name.equals(inf.getString("name"))) {
+                    throw new PluginException("The plugin in '" + jar.getName() + "' was renamed to " + inf.getString("name"));
+                }
+                inf.setString("jarPath", staged.jarPath);
+                inf.setString("jarName", staged.jarName);
+
+                // Resolve against the staged loaders of reloaded dependencies, not the ones about to be closed
+                ArrayList<CanaryClassLoader> dependencies = new ArrayList<CanaryClassLoader>();
+                if (inf.containsKey("dependencies")) {
+                    for (String dep : inf.getStringArray("dependencies", "[,;]+")) {
+                        if (loaders.containsKey(dep.trim())) {
+                            dependencies.add(loaders.get(dep.trim()));
+                        }
+                    }
+                }
+                staged.loader = new CanaryClassLoader(jar.toURI().toURL(), getClass().getClassLoader(), dependencies.toArray(new CanaryClassLoader[dependencies.size()]));
+                loaders.put(staged.name, staged.loader);
+                preload(staged.loader, jar);
+                staged.mainClass = staged.loader.loadClass(inf.getString("main-class"));
+                staged.inf = inf;
+            }
+            catch (Throwable thrown) {
+                log.error("Could not reload " + affected.get(0).name + ", staging " + staged.name + " failed. The running version is kept.", thrown);
+                for (CanaryClassLoader loader : loaders.values()) {
+                    loader.close();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads all classes of a plugin jar, so they do not have to be loaded on the server thread later
+     *
+     * @param loader
+     *         the plugin's loader
+     * @param jar
+     *         the plugin jar
+     *
+     * @throws IOException
+     *         if the jar can't be read
+     */
+    private void preload(CanaryClassLoader loader, File jar) throws IOException {
+        JarFile file = new JarFile(jar);
+        try {
+            Enumeration<JarEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement().getName();
+                if (!entry.endsWith(".class")) {
+                    continue;
+                }
+                try {
+                    loader.loadClass(entry.substring(0, entry.length() - 6).replace('/', '.'));
+                }
+                catch (Throwable thrown) {
+                    // Classes for missing optional dependencies won't resolve, they fail when used as they would without preloading
+                }
+            }
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Replaces the old instances by the staged ones. Runs on the server thread between two ticks.
+     *
+     * @param affected
+     *         the staged plugins, in dependency order
+     */
+    private void swap(List<StagedPlugin> affected) {
+        for (StagedPlugin staged : affected) {
+            if (getPlugin(staged.name) != staged.old) {
+                log.warn("Could not reload " + affected.get(0).name + ", " + staged.name + " was changed while the reload was staged.");
+                for (StagedPlugin discard : affected) {
+                    discard.loader.close();
+                }
+                return;
+            }
+        }
+        // Dependents first
+        for (int i = affected.size() - 1; i >= 0; i--) {
+            disablePlugin(affected.get(i).old);
+        }
+        synchronized (lock) {
+            for (StagedPlugin staged : affected) {
+                plugins.remove(staged.name);
+                ((CanaryClassLoader) staged.old.getClass().getClassLoader()).close(); // close loader
+                /* Remove INF reference */
+                pluginInf.remove(staged.old.getClass().getSimpleName());
+            }
+        }
+        int enabled = 0;
+        for (StagedPlugin staged : affected) {
+            staged.old.markClosed();
+            pluginInf.put(simpleMain(staged.inf.getString("main-class")), staged.inf);
+            try {
+                Plugin plugin = (Plugin) staged.mainClass.newInstance();
+                plugin.setPriority(pluginPriorities.getInt(staged.name, 0));
+                synchronized (lock) {
+                    this.plugins.put(staged.name, plugin);
+                }
+                if (enablePlugin(plugin)) {
+                    enabled++;
+                }
+            }
+            catch (Throwable thrown) {
+                log.error("Could not reload " + staged.name, thrown);
+            }
+        }
+        log.info(String.format("Reloaded %s, %d of %d affected plugins are enabled", affected.get(0).name, enabled, affected.size()));
+    }
+
     /**
      * Get the Plugin with specified name.
      *
@@ -738,6 +1245,24 @@ public final class PluginLoader {
         return pluginInf.get(main_class_name);
     }
 
+    /** A plugin being reloaded by {@link #reloadPluginStaged(String)} */
+    private static final class StagedPlugin {
+        private final Plugin old;
+        private final String name;
+        private final String jarPath;
+        private final String jarName;
+        private PropertiesFile inf;
+        private CanaryClassLoader loader;
+        private Class<?> mainClass;
+
+        StagedPlugin(Plugin old) {
+            this.old = old;
+            this.name = old.getName();
+            this.jarPath = old.getJarPath();
+            this.jarName = old.getCanaryInf().getString("jarName");
+        }
+    }
+
     /**
      * A node used in solving the dependency tree.
      *
@@ -749,10 +1274,10 @@ public final class PluginLoader {
         private String name;
         private String jar;
         public List<DependencyNode> edges;
-        private PropertiesFile inf;
+        private PluginIndex.Entry inf;
         private boolean isInvalid = false;
 
-        DependencyNode(String name, String jar, PropertiesFile inf) {
+        DependencyNode(String name, String jar, PluginIndex.Entry inf) {
             this.name = name;
             this.jar = jar;
             this.edges = new ArrayList<DependencyNode>();
@@ -767,7 +1292,7 @@ public final class PluginLoader {
             return this.jar;
         }
 
-        public PropertiesFile getInf() {
+        public PluginIndex.Entry getEntry() {
             return this.inf;
         }
 
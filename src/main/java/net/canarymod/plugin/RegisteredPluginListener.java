@@ -3,6 +3,11 @@ package net.canarymod.plugin;
 import net.canarymod.hook.CancelableHook;
 import net.canarymod.hook.Dispatcher;
 import net.canarymod.hook.Hook;
+import net.canarymod.hook.HookTiming;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Container for registered plugin listeners
@@ -15,12 +20,19 @@ public class RegisteredPluginListener {
     private Priority methodPriority;
     private int basePriority;
     private Dispatcher executor;
+    private Method method;
+    private final ConcurrentHashMap<Class<? extends Hook>, HookTiming> timings = new ConcurrentHashMap<Class<? extends Hook>, HookTiming>();
 
     public RegisteredPluginListener(PluginListener l, Plugin plugin, Dispatcher executor, Priority priority) {
+        this(l, plugin, executor, priority, null);
+    }
+
+    public RegisteredPluginListener(PluginListener l, Plugin plugin, Dispatcher executor, Priority priority, Method method) {
         this.listener = l;
         this.plugin = plugin;
         this.basePriority = plugin.getPriority();
         this.executor = executor;
+        this.method = method;
         methodPriority = priority;
     }
 
@@ -52,7 +64,56 @@ public class RegisteredPluginListener {
         executor.execute(listener, hook);
     }
 
+    /**
+     * Checks if this listener handles hooks off the calling thread
+     *
+     * @return {@code true} if asynchronous; {@code false} if not
+     *
+     * @see net.canarymod.hook.HookHandler#async()
+     */
+    public boolean isAsync() {
+        return executor.async;
+    }
+
     public Priority getMethodPriority() {
         return methodPriority;
     }
+
+    /**
+     * Gets the handler method this listener dispatches to
+     *
+     * @return the handler {@link Method}; may be {@code null} if unknown
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the timing record for the given hook class, creating it if needed
+     *
+     * @param hookCls
+     *         the {@link Hook} class
+     *
+     * @return the {@link HookTiming}
+     */
+    public HookTiming getTiming(Class<? extends Hook> hookCls) {
+        HookTiming timing = timings.get(hookCls);
+        if (timing == null) {
+            HookTiming created = new HookTiming(this, hookCls);
+            timing = timings.putIfAbsent(hookCls, created);
+            if (timing == null) {
+                timing = created;
+            }
+        }
+        return timing;
+    }
+
+    /**
+     * Gets all timing records of this listener
+     *
+     * @return the {@link HookTiming}s
+     */
+    public Collection<HookTiming> getTimings() {
+        return timings.values();
+    }
 }
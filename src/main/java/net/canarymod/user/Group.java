@@ -1,10 +1,17 @@
 package net.canarymod.user;
 
 import net.canarymod.chat.Colors;
+import net.canarymod.permissionsystem.EffectivePermissions;
 import net.canarymod.permissionsystem.PermissionProvider;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a player group
@@ -13,6 +20,9 @@ import java.util.List;
  */
 public class Group {
 
+    /** Incremented whenever a parent, child or name of any group changes */
+    private static final AtomicInteger hierarchyVersion = new AtomicInteger();
+
     /** ID for retrieving permissions from the database */
     private int id;
 
@@ -31,6 +41,9 @@ public class Group {
     /** The permission provider for querying permissions etc. */
     private PermissionProvider permissions;
 
+    /** This group's and its parents' permissions merged, created with the first permission check */
+    private EffectivePermissions effectivePermissions;
+
     /** List of groups this group inherits/has control over */
     private List<Group> childGroups = new ArrayList<Group>();
 
@@ -43,6 +56,9 @@ public class Group {
     /** Is true if it's the default group */
     private boolean defaultGroup = false;
 
+    /** Parents and children of this group, computed with the first hierarchy check after a change */
+    private Hierarchy hierarchy;
+
     /**
      * Check if this group can ignore restrictions
      *
@@ -81,18 +97,32 @@ public class Group {
      * @return {@code true} if has control over
      */
     public boolean hasControlOver(Group g) {
-        if (isAdministratorGroup() || canIgnorerestrictions()) {
-            return true;
-        }
-        if (this.name.equals(g.name)) {
-            return true;
-        }
-        for (Group gr : g.childsToList()) {
-            if (gr.name.equals(this.name)) {
-                return true;
-            }
-        }
-        return false;
+        return inheritsFrom(g) || isAdministratorGroup() || canIgnorerestrictions();
+    }
+
+    /**
+     * Check if this group is the given group or one of its children (or children of children etc etc),
+     * compared by name.
+     *
+     * @param g
+     *         the group to check
+     *
+     * @return {@code true} if the given group is this group or one of its parents
+     */
+    public boolean inheritsFrom(Group g) {
+        return inheritsFrom(g.name);
+    }
+
+    /**
+     * Check if this group or one of its parents has the given name
+     *
+     * @param name
+     *         the name of the group to check
+     *
+     * @return {@code true} if this group or one of its parents has the given name
+     */
+    public boolean inheritsFrom(String name) {
+        return getHierarchy().lineage.contains(name);
     }
 
     /**
@@ -106,19 +136,12 @@ public class Group {
         // NOTE: to whoever comes by and thinks, hey a permission check hook is missing:
         // Permission check hooks are fired in all MessageReceivers.
         // Doing it here too would fire a hook for the same request twice.
-        if (permissions.pathExists(permission)) {
-            return permissions.queryPermission(permission);
+        EffectivePermissions effective = effectivePermissions;
+        if (effective == null) {
+            effective = new EffectivePermissions(null, this); // Keeps itself up to date with the group chain
+            effectivePermissions = effective;
         }
-        // if(permissions.queryPermission(permission)) {
-        // return true;
-        // }
-
-        for (Group g : parentsToList()) {
-            if (g.permissions.pathExists(permission)) {
-                return g.permissions.queryPermission(permission);
-            }
-        }
-        return false;
+        return effective.hasPermission(permission);
     }
 
     /**
@@ -127,10 +150,7 @@ public class Group {
      * @return the list of children groups
      */
     public List<Group> childsToList() {
-        List<Group> list = new ArrayList<Group>();
-
-        walkChilds(list, this);
-        return list;
+        return new ArrayList<Group>(Arrays.asList(getHierarchy().childs));
     }
 
     /**
@@ -139,29 +159,26 @@ public class Group {
      * @return the list of parent groups
      */
     public List<Group> parentsToList() {
-        List<Group> parents = new ArrayList<Group>();
-        if (this.parent == null || this.parent == this) {
-            return parents;
-        }
-        if (!parents.contains(this.parent)) {
-            parents.add(this.parent);
-        }
-        walkParents(parents, this.parent);
-        return parents;
+        return new ArrayList<Group>(Arrays.asList(getHierarchy().parents));
     }
 
-    private void walkParents(List<Group> list, Group group) {
-        if (group.parent == null) {
-            return; // Found topmost group
+    private Hierarchy getHierarchy() {
+        int version = hierarchyVersion.get();
+        Hierarchy current = hierarchy;
+        if (current == null || current.version != version) {
+            current = new Hierarchy(this, version);
+            hierarchy = current;
         }
-        list.add(group.parent);
-        walkParents(list, group.parent);
+        return current;
     }
 
-    private void walkChilds(List<Group> list, Group group) {
+    private static void walkChilds(List<Group> list, Set<Group> seen, Group group) {
+        if (!seen.add(group)) {
+            return; // Broken hierarchy with a loop
+        }
         list.add(group);
         for (Group g : group.childGroups) {
-            walkChilds(list, g);
+            walkChilds(list, seen, g);
         }
     }
 
@@ -207,6 +224,7 @@ public class Group {
 
     public void setName(String name) {
         this.name = name;
+        hierarchyVersion.incrementAndGet();
     }
 
     public int getId() {
@@ -241,20 +259,24 @@ public class Group {
             group.addChild(this);
         }
         parent = group;
+        hierarchyVersion.incrementAndGet();
     }
 
     public void addChild(Group g) {
         childGroups.add(g);
+        hierarchyVersion.incrementAndGet();
     }
 
     public void detachChild(Group g) {
         childGroups.remove(g);
+        hierarchyVersion.incrementAndGet();
     }
 
     /**
      * Return am live list of children.
      * Modify this list only if you know what you're doing.
      * For changing group inheritance use setParent();
+     * the cached parents and children of groups are not updated when this list is modified directly.
      *
      * @return
      */
@@ -286,4 +308,31 @@ public class Group {
     public boolean isGlobal() {
         return this.worldName == null;
     }
+
+    /** The parents and children of a group at one version of the hierarchy */
+    private static final class Hierarchy {
+        private final int version;
+        private final Group[] parents; // Closest first
+        private final Group[] childs; // The group itself first, then its children depth first
+        private final Set<String> lineage; // Names of the group and its parents
+
+        private Hierarchy(Group group, int version) {
+            this.version = version;
+            Set<Group> seen = Collections.newSetFromMap(new IdentityHashMap<Group, Boolean>());
+            ArrayList<Group> list = new ArrayList<Group>();
+            lineage = new HashSet<String>();
+            lineage.add(group.name);
+            seen.add(group);
+            for (Group g = group.parent; g != null && seen.add(g); g = g.parent) {
+                list.add(g);
+                lineage.add(g.name);
+            }
+            parents = list.toArray(new Group[list.size()]);
+
+            list.clear();
+            seen.clear();
+            walkChilds(list, seen, group);
+            childs = list.toArray(new Group[list.size()]);
+        }
+    }
 }
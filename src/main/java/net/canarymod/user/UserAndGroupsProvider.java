@@ -7,6 +7,7 @@ import net.canarymod.backbone.BackboneGroups;
 import net.canarymod.backbone.BackboneUsers;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +21,7 @@ import net.canarymod.ToolBox;
  */
 public class UserAndGroupsProvider {
     private List<Group> groups;
+    private volatile Map<String, Group> groupIndex = new HashMap<String, Group>(); // Replaced, not modified, on every change to groups
     private Map<String, String[]> playerData;
     private BackboneGroups backboneGroups;
     private BackboneUsers backboneUsers;
@@ -52,6 +54,7 @@ public class UserAndGroupsProvider {
             groups.add(g);
         }
         this.groups = groups;
+        indexGroups();
 
         // find default group
         for (Group g : groups) {
@@ -65,6 +68,17 @@ public class UserAndGroupsProvider {
         }
     }
 
+    /** Rebuilds the name index, the first group with a name wins like in a scan of the list */
+    private void indexGroups() {
+        HashMap<String, Group> index = new HashMap<String, Group>();
+        for (Group g : groups) {
+            if (!index.containsKey(g.getName())) {
+                index.put(g.getName(), g);
+            }
+        }
+        groupIndex = index;
+    }
+
     private void initPlayers() {
         playerData = new BackboneUsers().loadUsers();
         if (playerData.size() == 0) {
@@ -86,6 +100,7 @@ public class UserAndGroupsProvider {
             backboneGroups.addGroup(g);
         }
         groups.add(g);
+        indexGroups();
     }
 
     /**
@@ -108,6 +123,7 @@ public class UserAndGroupsProvider {
             // Now we can safely remove the group
             backboneGroups.removeGroup(g);
             groups.remove(g);
+            indexGroups();
         }
         catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -126,6 +142,7 @@ public class UserAndGroupsProvider {
         groups.remove(group);
         backboneGroups.renameGroup(group, newName);
         groups.add(group);
+        indexGroups();
         for (Group g : groups) {
             updateGroup(g, true);
         }
@@ -139,12 +156,7 @@ public class UserAndGroupsProvider {
      * @return
      */
     public boolean groupExists(String name) {
-        for (Group g : groups) {
-            if (g.getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        return groupIndex.containsKey(name);
     }
 
     /**
@@ -194,12 +206,8 @@ public class UserAndGroupsProvider {
         if (name == null || name.isEmpty()) {
             return defaultGroup;
         }
-        for (Group g : groups) {
-            if (g.getName().equals(name)) {
-                return g;
-            }
-        }
-        return defaultGroup;
+        Group g = groupIndex.get(name);
+        return g != null ? g : defaultGroup;
     }
 
     /**